@@ -0,0 +1,42 @@
+package com.pelmenstar.projktSens.jserver
+
+import com.pelmenstar.projktSens.jserver.repo.DbServerWeatherRepository
+import com.pelmenstar.projktSens.serverProtocol.ChunkedRequestHandler
+import com.pelmenstar.projktSens.serverProtocol.Commands
+import com.pelmenstar.projktSens.serverProtocol.Errors
+import com.pelmenstar.projktSens.serverProtocol.Request
+import com.pelmenstar.projktSens.serverProtocol.Response
+
+/**
+ * Answers [Commands.GET_DAY_REPORT] and [Commands.GET_DAY_RANGE_REPORT] in chunks: entries of the report
+ * are sent by [chunkSize] as they are read from [weatherRepo], response is [com.pelmenstar.projktSens.weather.models.ReportStats]
+ * of the report.
+ */
+class ChunkedReportHandler(
+    private val weatherRepo: DbServerWeatherRepository,
+    private val chunkSize: Int = DEFAULT_CHUNK_SIZE
+) : ChunkedRequestHandler {
+    override suspend fun handle(request: Request, emitChunk: suspend (chunk: Any) -> Unit): Response {
+        return when (request.command) {
+            Commands.GET_DAY_REPORT -> {
+                val arg = request.argument as? Request.Argument.Integer
+                    ?: return Response.error(Errors.INVALID_ARGUMENTS)
+
+                Response.okOrEmpty(weatherRepo.getDayReportChunked(arg.value, chunkSize, emitChunk))
+            }
+            Commands.GET_DAY_RANGE_REPORT -> {
+                val arg = request.argument as? Request.Argument.DateRange
+                    ?: return Response.error(Errors.INVALID_ARGUMENTS)
+
+                Response.okOrEmpty(
+                    weatherRepo.getDayRangeReportChunked(arg.start, arg.endInclusive, chunkSize, emitChunk)
+                )
+            }
+            else -> Response.error(Errors.INVALID_COMMAND)
+        }
+    }
+
+    companion object {
+        const val DEFAULT_CHUNK_SIZE = 64
+    }
+}
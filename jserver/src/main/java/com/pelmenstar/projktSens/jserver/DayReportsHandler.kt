@@ -0,0 +1,32 @@
+package com.pelmenstar.projktSens.jserver
+
+import com.pelmenstar.projktSens.jserver.repo.DbServerWeatherRepository
+import com.pelmenstar.projktSens.serverProtocol.Commands
+import com.pelmenstar.projktSens.serverProtocol.Errors
+import com.pelmenstar.projktSens.serverProtocol.Request
+import com.pelmenstar.projktSens.serverProtocol.RequestHandler
+import com.pelmenstar.projktSens.serverProtocol.Response
+
+/**
+ * Answers [Commands.GET_DAY_REPORTS] with day reports read from [weatherRepo],
+ * other commands are passed to [handler]
+ */
+class DayReportsHandler(
+    private val weatherRepo: DbServerWeatherRepository,
+    private val handler: RequestHandler
+) : RequestHandler {
+    override suspend fun handle(request: Request): Response {
+        if (request.command != Commands.GET_DAY_REPORTS) {
+            return handler.handle(request)
+        }
+
+        val arg = request.argument as? Request.Argument.DateRange
+            ?: return Response.error(Errors.INVALID_ARGUMENTS)
+
+        return try {
+            Response.okOrEmpty(weatherRepo.getDayReports(arg.start, arg.endInclusive))
+        } catch (e: Exception) {
+            Response.error(e)
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.pelmenstar.projktSens.jserver
+
+import com.pelmenstar.projktSens.jserver.repo.DbServerWeatherRepository
+import com.pelmenstar.projktSens.serverProtocol.Commands
+import com.pelmenstar.projktSens.serverProtocol.Errors
+import com.pelmenstar.projktSens.serverProtocol.Request
+import com.pelmenstar.projktSens.serverProtocol.RequestHandler
+import com.pelmenstar.projktSens.serverProtocol.Response
+
+/**
+ * Answers [Commands.GET_DAY_REPORT] and [Commands.GET_DAY_RANGE_REPORT] requests, that have [Request.parameters]
+ * other than [Request.ALL_PARAMETERS], with reports computed only on the requested parameters.
+ * Other requests are passed to [handler]
+ */
+class ProjectedReportHandler(
+    private val weatherRepo: DbServerWeatherRepository,
+    private val handler: RequestHandler
+) : RequestHandler {
+    override suspend fun handle(request: Request): Response {
+        val parameters = request.parameters
+        if (parameters == Request.ALL_PARAMETERS) {
+            return handler.handle(request)
+        }
+
+        return when (request.command) {
+            Commands.GET_DAY_REPORT -> {
+                val arg = request.argument as? Request.Argument.Integer
+                    ?: return Response.error(Errors.INVALID_ARGUMENTS)
+
+                handleReport { weatherRepo.getDayReport(arg.value, parameters) }
+            }
+            Commands.GET_DAY_RANGE_REPORT -> {
+                val arg = request.argument as? Request.Argument.DateRange
+                    ?: return Response.error(Errors.INVALID_ARGUMENTS)
+
+                handleReport { weatherRepo.getDayRangeReport(arg.start, arg.endInclusive, parameters) }
+            }
+            else -> handler.handle(request)
+        }
+    }
+
+    private inline fun handleReport(getReport: () -> Any?): Response {
+        return try {
+            Response.okOrEmpty(getReport())
+        } catch (e: Exception) {
+            Response.error(e)
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.pelmenstar.projktSens.jserver
+
+import com.pelmenstar.projktSens.serverProtocol.ChunkedRequestHandler
+import com.pelmenstar.projktSens.serverProtocol.Errors
+import com.pelmenstar.projktSens.serverProtocol.Request
+import com.pelmenstar.projktSens.serverProtocol.RequestHandler
+import com.pelmenstar.projktSens.serverProtocol.Response
+import java.net.InetAddress
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.math.ceil
+import kotlin.math.min
+
+/**
+ * Admission control of the repo server. Request is rejected with [Errors.RATE_LIMITED] and retry-after hint, if:
+ * - client with the same remote address has run out of tokens. Every client has a bucket of [burst] tokens,
+ *   that is refilled by [tokensPerSecond]. Request costs [HEAVY_REQUEST_COST] tokens if it's heavy scan
+ *   (see [RequestScheduler.PRIORITY_CLASS_HEAVY]) and 1 token otherwise;
+ * - server already handles [maxConcurrentRequests] requests.
+ *
+ * Handlers should be wrapped per connection, because remote address is known only there.
+ */
+class RateLimiter(
+    private val tokensPerSecond: Double = DEFAULT_TOKENS_PER_SECOND,
+    private val burst: Double = DEFAULT_BURST,
+    private val maxConcurrentRequests: Int = DEFAULT_MAX_CONCURRENT_REQUESTS,
+    private val currentTimeMillis: () -> Long = System::currentTimeMillis
+) {
+    private class Bucket(var tokens: Double, var lastRefillTime: Long)
+
+    private val buckets = HashMap<InetAddress, Bucket>()
+    private val concurrentRequests = AtomicInteger()
+
+    init {
+        require(tokensPerSecond > 0) { "tokensPerSecond" }
+        require(burst >= HEAVY_REQUEST_COST) { "burst" }
+        require(maxConcurrentRequests > 0) { "maxConcurrentRequests" }
+    }
+
+    /**
+     * Returns [RequestHandler] that handles requests of client with given [address] by [handler]
+     * if they're admitted
+     */
+    fun wrap(address: InetAddress, handler: RequestHandler): RequestHandler {
+        return RequestHandler { request ->
+            admit(address, request) { handler.handle(request) }
+        }
+    }
+
+    /**
+     * Returns [ChunkedRequestHandler] that handles requests of client with given [address] by [handler]
+     * if they're admitted
+     */
+    fun wrap(address: InetAddress, handler: ChunkedRequestHandler): ChunkedRequestHandler {
+        return ChunkedRequestHandler { request, emitChunk ->
+            admit(address, request) { handler.handle(request, emitChunk) }
+        }
+    }
+
+    private inline fun admit(address: InetAddress, request: Request, handle: () -> Response): Response {
+        val retryAfter = tryTakeTokens(address, getCost(request.command))
+        if (retryAfter > 0) {
+            return Response.rateLimited(retryAfter)
+        }
+
+        if (concurrentRequests.incrementAndGet() > maxConcurrentRequests) {
+            concurrentRequests.decrementAndGet()
+
+            return Response.rateLimited(BUSY_RETRY_AFTER_MILLIS)
+        }
+
+        try {
+            return handle()
+        } finally {
+            concurrentRequests.decrementAndGet()
+        }
+    }
+
+    /**
+     * Takes [cost] tokens from the bucket of given [address].
+     * Returns 0 if tokens are taken, otherwise how many milliseconds it takes to refill the bucket enough
+     */
+    private fun tryTakeTokens(address: InetAddress, cost: Int): Int {
+        val now = currentTimeMillis()
+
+        synchronized(buckets) {
+            if (buckets.size >= MAX_BUCKETS) {
+                removeFullBuckets(now)
+            }
+
+            val bucket = buckets.getOrPut(address) { Bucket(burst, now) }
+            refill(bucket, now)
+
+            if (bucket.tokens >= cost) {
+                bucket.tokens -= cost
+
+                return 0
+            }
+
+            return ceil((cost - bucket.tokens) * 1000 / tokensPerSecond).toInt()
+        }
+    }
+
+    private fun refill(bucket: Bucket, now: Long) {
+        val elapsed = now - bucket.lastRefillTime
+        if (elapsed > 0) {
+            bucket.tokens = min(burst, bucket.tokens + elapsed * tokensPerSecond / 1000)
+            bucket.lastRefillTime = now
+        }
+    }
+
+    // buckets, that are full, are the same as new ones, so they can be removed
+    private fun removeFullBuckets(now: Long) {
+        val iterator = buckets.values.iterator()
+
+        while (iterator.hasNext()) {
+            val bucket = iterator.next()
+            refill(bucket, now)
+
+            if (bucket.tokens >= burst) {
+                iterator.remove()
+            }
+        }
+    }
+
+    companion object {
+        const val DEFAULT_TOKENS_PER_SECOND = 5.0
+        const val DEFAULT_BURST = 20.0
+        const val DEFAULT_MAX_CONCURRENT_REQUESTS = 16
+
+        const val HEAVY_REQUEST_COST = 4
+
+        private const val BUSY_RETRY_AFTER_MILLIS = 100
+        private const val MAX_BUCKETS = 256
+
+        private fun getCost(command: Int): Int {
+            return if (RequestScheduler.getPriorityClass(command) == RequestScheduler.PRIORITY_CLASS_HEAVY) {
+                HEAVY_REQUEST_COST
+            } else {
+                1
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.pelmenstar.projktSens.jserver
+
+import com.pelmenstar.projktSens.serverProtocol.ChunkedRequestHandler
+import com.pelmenstar.projktSens.serverProtocol.Commands
+import com.pelmenstar.projktSens.serverProtocol.RequestHandler
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+
+/**
+ * Schedules handling of requests by priority class of their commands (see [getPriorityClass]):
+ * - cheap lookups ([PRIORITY_CLASS_CHEAP]) are handled immediately;
+ * - queries ([PRIORITY_CLASS_QUERY]) are handled by at most [maxQueries] at once;
+ * - heavy scans ([PRIORITY_CLASS_HEAVY]) are handled by at most [maxHeavyQueries] at once.
+ *
+ * Classes don't share the limits, so cheap lookups and queries never wait for heavy scans,
+ * even if a lot of heavy requests are queued.
+ */
+class RequestScheduler(
+    maxQueries: Int = DEFAULT_MAX_QUERIES,
+    maxHeavyQueries: Int = DEFAULT_MAX_HEAVY_QUERIES
+) {
+    private val queries = Semaphore(maxQueries)
+    private val heavyQueries = Semaphore(maxHeavyQueries)
+
+    /**
+     * Runs [block], that handles request with given [command], when there's free slot for its priority class
+     */
+    suspend fun <T> schedule(command: Int, block: suspend () -> T): T {
+        return when (getPriorityClass(command)) {
+            PRIORITY_CLASS_QUERY -> queries.withPermit { block() }
+            PRIORITY_CLASS_HEAVY -> heavyQueries.withPermit { block() }
+            else -> block()
+        }
+    }
+
+    /**
+     * Returns [RequestHandler] that handles requests by [handler] in this scheduler
+     */
+    fun wrap(handler: RequestHandler): RequestHandler {
+        return RequestHandler { request ->
+            schedule(request.command) { handler.handle(request) }
+        }
+    }
+
+    /**
+     * Returns [ChunkedRequestHandler] that handles requests by [handler] in this scheduler
+     */
+    fun wrap(handler: ChunkedRequestHandler): ChunkedRequestHandler {
+        return ChunkedRequestHandler { request, emitChunk ->
+            schedule(request.command) { handler.handle(request, emitChunk) }
+        }
+    }
+
+    companion object {
+        const val PRIORITY_CLASS_CHEAP = 0
+        const val PRIORITY_CLASS_QUERY = 1
+        const val PRIORITY_CLASS_HEAVY = 2
+
+        const val DEFAULT_MAX_QUERIES = 2
+        const val DEFAULT_MAX_HEAVY_QUERIES = 1
+
+        fun getPriorityClass(command: Int): Int {
+            return when (command) {
+                Commands.GET_DAY_RANGE_REPORT, Commands.GET_SERIES, Commands.GET_DAY_REPORTS -> PRIORITY_CLASS_HEAVY
+                Commands.GET_DAY_REPORT, Commands.GET_WEATHER_SINCE -> PRIORITY_CLASS_QUERY
+                else -> PRIORITY_CLASS_CHEAP
+            }
+        }
+    }
+}
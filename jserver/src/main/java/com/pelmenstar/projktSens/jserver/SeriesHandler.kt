@@ -0,0 +1,37 @@
+package com.pelmenstar.projktSens.jserver
+
+import com.pelmenstar.projktSens.jserver.repo.DbServerWeatherRepository
+import com.pelmenstar.projktSens.serverProtocol.Commands
+import com.pelmenstar.projktSens.serverProtocol.Errors
+import com.pelmenstar.projktSens.serverProtocol.Request
+import com.pelmenstar.projktSens.serverProtocol.RequestHandler
+import com.pelmenstar.projktSens.serverProtocol.Response
+import com.pelmenstar.projktSens.weather.models.WeatherSeries
+
+/**
+ * Answers [Commands.GET_SERIES] with weather aggregated to buckets, that is read from [weatherRepo],
+ * other commands are passed to [handler]
+ */
+class SeriesHandler(
+    private val weatherRepo: DbServerWeatherRepository,
+    private val handler: RequestHandler
+) : RequestHandler {
+    override suspend fun handle(request: Request): Response {
+        if (request.command != Commands.GET_SERIES) {
+            return handler.handle(request)
+        }
+
+        val arg = request.argument as? Request.Argument.BucketedDateRange
+            ?: return Response.error(Errors.INVALID_ARGUMENTS)
+
+        if (!WeatherSeries.isValidBucketSeconds(arg.bucketSeconds)) {
+            return Response.error(Errors.INVALID_ARGUMENTS)
+        }
+
+        return try {
+            Response.okOrEmpty(weatherRepo.getSeries(arg.start, arg.endInclusive, arg.bucketSeconds))
+        } catch (e: Exception) {
+            Response.error(e)
+        }
+    }
+}
@@ -2,28 +2,44 @@ package com.pelmenstar.projktSens.jserver
 
 import com.pelmenstar.projktSens.jserver.logging.Logger
 import com.pelmenstar.projktSens.jserver.logging.LoggerConfig
+import com.pelmenstar.projktSens.serverProtocol.BeaconSender
 import com.pelmenstar.projktSens.serverProtocol.ProtoConfig
+import com.pelmenstar.projktSens.serverProtocol.PushBroadcaster
+import com.pelmenstar.projktSens.serverProtocol.ServerBeacon
+import com.pelmenstar.projktSens.weather.models.WeatherInfo
 import com.pelmenstar.projktSens.weather.models.WeatherInfoProvider
 import com.pelmenstar.projktSens.weather.models.WeatherRepository
 import kotlinx.coroutines.*
 import java.util.concurrent.atomic.AtomicLong
 
 /**
- * Requests weather in [WeatherInfoProvider] and puts it to default [WeatherRepository]
+ * Requests weather in [WeatherInfoProvider] and puts it to default [WeatherRepository].
+ * Weather is written through [WriteBehindQueue], so slow writes don't delay requesting of weather.
+ * If [beaconSender] is specified, server address and the latest weather are announced by it on every tick
  */
 class WeatherMonitor(
     private val protoConfig: ProtoConfig,
-    loggerConfig: LoggerConfig,
+    private val loggerConfig: LoggerConfig,
     private val dataProvider: WeatherInfoProvider,
     private val weatherRepo: WeatherRepository,
+    private val beaconSender: BeaconSender? = null
 ) {
     private val scope = CoroutineScope(Dispatchers.Default)
 
     private var job: Job? = null
+    private var writeQueue: WriteBehindQueue? = null
     private val nextWeatherRequestTime = AtomicLong()
 
+    @Volatile
+    private var lastWeather: WeatherInfo? = null
+
     private val log = Logger("WeatherMonitor", loggerConfig)
 
+    /**
+     * Broadcasts every [WeatherInfo] right after it's written to the repository
+     */
+    val storedWeather = PushBroadcaster(WeatherInfo.SERIALIZER)
+
     /**
      * Returns epoch millis when next weather will be requested
      */
@@ -44,24 +60,34 @@ class WeatherMonitor(
             return
         }
 
+        val queue = WriteBehindQueue(weatherRepo, loggerConfig, onStored = storedWeather::broadcast)
+        writeQueue = queue
+
         job = scope.launch {
             val interval = protoConfig.weatherChannelReceiveInterval.toLong()
 
             while (isActive) {
                 try {
-                    nextWeatherRequestTime.set(System.currentTimeMillis() + interval)
+                    val nextTime = System.currentTimeMillis() + interval
+                    nextWeatherRequestTime.set(nextTime)
 
                     if (!BuildConfig.DEBUG) {
                         // additional try-block 'cause if exception occurs here,
                         // coroutine won't be delayed
                         try {
-                            weatherRepo.put(dataProvider.getWeather())
+                            val weather = dataProvider.getWeather()
+                            queue.put(weather)
+
+                            lastWeather = weather
                         } catch (e: Exception) {
                             log error e
                         }
                     }
 
-                    delay(interval)
+                    sendBeacon()
+
+                    // time spent on the tick is subtracted, so that weather is requested with the same interval
+                    delay(nextTime - System.currentTimeMillis())
                 } catch (e: Exception) {
                     log error e
                 }
@@ -69,11 +95,30 @@ class WeatherMonitor(
         }
     }
 
+    private suspend fun sendBeacon() {
+        val sender = beaconSender ?: return
+
+        try {
+            val beacon = ServerBeacon.create(protoConfig.socketAddress, lastWeather, WeatherInfo.SERIALIZER)
+
+            withContext(Dispatchers.IO) {
+                sender.send(beacon)
+            }
+        } catch (e: Exception) {
+            log error e
+        }
+    }
+
     /**
-     * Stops monitor
+     * Stops monitor. Weather, that isn't written yet, is still written to the repository in background
      */
     fun stop() {
         job?.cancel()
         job = null
+
+        writeQueue?.close()
+        writeQueue = null
+
+        beaconSender?.close()
     }
 }
\ No newline at end of file
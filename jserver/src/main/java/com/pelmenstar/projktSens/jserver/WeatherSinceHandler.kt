@@ -0,0 +1,37 @@
+package com.pelmenstar.projktSens.jserver
+
+import com.pelmenstar.projktSens.jserver.repo.DbServerWeatherRepository
+import com.pelmenstar.projktSens.serverProtocol.Commands
+import com.pelmenstar.projktSens.serverProtocol.Errors
+import com.pelmenstar.projktSens.serverProtocol.Request
+import com.pelmenstar.projktSens.serverProtocol.RequestHandler
+import com.pelmenstar.projktSens.serverProtocol.Response
+
+/**
+ * Answers [Commands.GET_WEATHER_SINCE] with page of at most [pageSize] records read from [weatherRepo],
+ * other commands are passed to [handler]
+ */
+class WeatherSinceHandler(
+    private val weatherRepo: DbServerWeatherRepository,
+    private val handler: RequestHandler,
+    private val pageSize: Int = DEFAULT_PAGE_SIZE
+) : RequestHandler {
+    override suspend fun handle(request: Request): Response {
+        if (request.command != Commands.GET_WEATHER_SINCE) {
+            return handler.handle(request)
+        }
+
+        val arg = request.argument as? Request.Argument.LongInteger
+            ?: return Response.error(Errors.INVALID_ARGUMENTS)
+
+        return try {
+            Response.okOrEmpty(weatherRepo.getWeatherSince(arg.value, pageSize))
+        } catch (e: Exception) {
+            Response.error(e)
+        }
+    }
+
+    companion object {
+        const val DEFAULT_PAGE_SIZE = 1024
+    }
+}
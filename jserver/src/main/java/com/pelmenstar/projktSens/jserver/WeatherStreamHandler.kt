@@ -0,0 +1,35 @@
+package com.pelmenstar.projktSens.jserver
+
+import com.pelmenstar.projktSens.serverProtocol.Commands
+import com.pelmenstar.projktSens.serverProtocol.Errors
+import com.pelmenstar.projktSens.serverProtocol.Request
+import com.pelmenstar.projktSens.serverProtocol.Response
+import com.pelmenstar.projktSens.serverProtocol.StreamHandler
+import com.pelmenstar.projktSens.weather.models.WeatherRepository
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flowOf
+
+/**
+ * Answers [Commands.SUBSCRIBE_WEATHER]: pushes last weather in [weatherRepo] and then every weather
+ * stored by [weatherMonitor]
+ */
+class WeatherStreamHandler(
+    private val weatherMonitor: WeatherMonitor,
+    private val weatherRepo: WeatherRepository
+) : StreamHandler {
+    override fun openStream(request: Request): Flow<Response> {
+        if (request.command != Commands.SUBSCRIBE_WEATHER) {
+            return flowOf(Response.error(Errors.INVALID_COMMAND))
+        }
+
+        return weatherMonitor.storedWeather.subscribe {
+            val lastWeather = try {
+                Response.okOrEmpty(weatherRepo.getLastWeather())
+            } catch (e: Exception) {
+                Response.error(e)
+            }
+
+            emit(lastWeather)
+        }
+    }
+}
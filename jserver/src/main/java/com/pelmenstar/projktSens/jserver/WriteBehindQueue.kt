@@ -0,0 +1,101 @@
+package com.pelmenstar.projktSens.jserver
+
+import com.pelmenstar.projktSens.jserver.logging.Logger
+import com.pelmenstar.projktSens.jserver.logging.LoggerConfig
+import com.pelmenstar.projktSens.weather.models.WeatherInfo
+import com.pelmenstar.projktSens.weather.models.WeatherRepository
+import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.channels.Channel
+
+/**
+ * Bounded queue between weather sampling and [WeatherRepository], so that slow writes don't delay sampling.
+ * Values are written by [WeatherRepository.putMany] in batches of at most [maxBatchSize] values,
+ * [onStored] is invoked for each value after its batch is written.
+ * Values, that are put within [window] milliseconds after the first value of the batch, are written with it,
+ * so that they're committed by one transaction instead of separate write per value.
+ *
+ * When the queue is full, values are handled according to [overflow]:
+ * - [BufferOverflow.DROP_OLDEST] — the oldest value in the queue is dropped
+ * - [BufferOverflow.DROP_LATEST] — the value being put is dropped
+ * - [BufferOverflow.SUSPEND] — [put] suspends until there's space in the queue
+ */
+class WriteBehindQueue(
+    private val repo: WeatherRepository,
+    loggerConfig: LoggerConfig,
+    capacity: Int = DEFAULT_CAPACITY,
+    overflow: BufferOverflow = BufferOverflow.DROP_OLDEST,
+    private val maxBatchSize: Int = DEFAULT_MAX_BATCH_SIZE,
+    private val window: Long = DEFAULT_WINDOW,
+    private val onStored: (WeatherInfo) -> Unit = {}
+) {
+    private val queue = Channel<WeatherInfo>(capacity, overflow)
+    private val scope = CoroutineScope(Dispatchers.IO + CoroutineName("WriteBehindQueue"))
+    private val drainJob: Job
+
+    private val log = Logger("WriteBehindQueue", loggerConfig)
+
+    init {
+        require(capacity > 0) { "capacity" }
+        require(maxBatchSize > 0) { "maxBatchSize" }
+        require(window >= 0) { "window" }
+
+        drainJob = scope.launch { drain() }
+    }
+
+    /**
+     * Enqueues [weather] to be written. Suspends only if [BufferOverflow.SUSPEND] policy is used and the queue is full
+     */
+    suspend fun put(weather: WeatherInfo) {
+        queue.send(weather)
+    }
+
+    /**
+     * Stops accepting new values. Values, that are already in the queue, are still written
+     */
+    fun close() {
+        queue.close()
+    }
+
+    /**
+     * Suspends until all the values are written after [close]
+     */
+    suspend fun join() {
+        drainJob.join()
+    }
+
+    private suspend fun drain() {
+        val batch = ArrayList<WeatherInfo>()
+
+        for (first in queue) {
+            batch.add(first)
+
+            if (window > 0) {
+                delay(window)
+            }
+
+            while (batch.size < maxBatchSize) {
+                val next = queue.tryReceive().getOrNull() ?: break
+                batch.add(next)
+            }
+
+            try {
+                repo.putMany(batch.toTypedArray())
+
+                for (weather in batch) {
+                    onStored(weather)
+                }
+            } catch (e: Exception) {
+                log.error("failed to write ${batch.size} values", e)
+            }
+
+            batch.clear()
+        }
+    }
+
+    companion object {
+        const val DEFAULT_CAPACITY = 1024
+        const val DEFAULT_MAX_BATCH_SIZE = 128
+        const val DEFAULT_WINDOW: Long = 20
+    }
+}
@@ -5,6 +5,8 @@ import com.pelmenstar.projktSens.jserver.*
 import com.pelmenstar.projktSens.jserver.logging.AndroidLogDelegate
 import com.pelmenstar.projktSens.jserver.logging.LogLevel
 import com.pelmenstar.projktSens.jserver.logging.LoggerConfig
+import com.pelmenstar.projktSens.serverProtocol.BeaconSender
+import com.pelmenstar.projktSens.serverProtocol.Capabilities
 import com.pelmenstar.projktSens.serverProtocol.ContractType
 import com.pelmenstar.projktSens.serverProtocol.ProtoConfig
 import com.pelmenstar.projktSens.shared.time.ShortDateRange
@@ -19,6 +21,10 @@ open class AppModule(private val context: Context) {
     private val host by lazy { DeviceInetUtils.getInetAddress(context)!! }
     private val weatherRepo by lazy {
         object: WeatherRepository {
+            // data is random on every request, so it's never the same
+            override val dataVersion: Long
+                get() = System.nanoTime()
+
             override suspend fun putMany(values: Array<WeatherInfo>) {
             }
 
@@ -47,6 +53,9 @@ open class AppModule(private val context: Context) {
         }
     }
     private val weatherProvider by lazy { SensorWeatherProvider() }
+    private val requestScheduler by lazy { RequestScheduler() }
+    private val rateLimiter by lazy { RateLimiter() }
+    private val beaconSender by lazy { BeaconSender() }
     private val loggerConfig by lazy {
         LoggerConfig(AndroidLogDelegate, minLogLevel = LogLevel.DEBUG)
     }
@@ -73,6 +82,27 @@ open class AppModule(private val context: Context) {
     @Provides
     open fun loggerConfig(): LoggerConfig = loggerConfig
 
+    @Provides
+    open fun requestScheduler(): RequestScheduler = requestScheduler
+
+    @Provides
+    open fun rateLimiter(): RateLimiter = rateLimiter
+
+    @Provides
+    open fun beaconSender(): BeaconSender = beaconSender
+
+    /**
+     * Capabilities, that the server announces in answer to HELLO.
+     * Only features of the protocol layer are served: the server has no stream, chunked or versioned handlers
+     */
+    @Provides
+    open fun serverCapabilities(): Capabilities {
+        return Capabilities.current(
+            AppPreferences.of(context).serverContract,
+            Capabilities.FEATURE_KEEP_CONNECTION or Capabilities.FEATURE_COMPACT_VALUES or Capabilities.FEATURE_PROJECTION
+        )
+    }
+
     @Provides
     fun server(): RepoServer {
         return RepoServer(protoConfig(), loggerConfig(), weatherRepository())
@@ -84,7 +114,8 @@ open class AppModule(private val context: Context) {
             protoConfig(),
             loggerConfig(),
             weatherProvider(),
-            weatherRepository()
+            weatherRepository(),
+            beaconSender()
         )
     }
 }
\ No newline at end of file
@@ -0,0 +1,318 @@
+package com.pelmenstar.projktSens.jserver.repo
+
+import android.database.Cursor
+import android.database.sqlite.SQLiteDatabase
+import android.database.sqlite.SQLiteStatement
+import com.pelmenstar.projktSens.shared.Median
+import com.pelmenstar.projktSens.shared.time.ShortDate
+import com.pelmenstar.projktSens.shared.time.ShortDateTime
+import com.pelmenstar.projktSens.shared.time.TimeConstants
+import com.pelmenstar.projktSens.weather.models.*
+
+/**
+ * Maintains `daily_rollup` table, where every row contains aggregates of weather values of one day:
+ * count and min (with its time), max (with its time) and sum of each parameter.
+ * [DayRangeReport] is computed from the rows of the days in range, so it costs O(days) instead of O(values).
+ *
+ * Values are in [ValueUnit.CELSIUS] and [ValueUnit.MM_OF_MERCURY] as in `weather` table,
+ * dates are epoch days and times are epoch seconds.
+ */
+internal class DailyRollup(private val db: SQLiteDatabase) {
+    private class ParameterAggregate {
+        var min = 0f
+        var minTime = 0L
+        var max = 0f
+        var maxTime = 0L
+        var sum = 0.0
+
+        fun reset(time: Long, value: Float) {
+            min = value
+            minTime = time
+            max = value
+            maxTime = time
+            sum = value.toDouble()
+        }
+
+        fun add(time: Long, value: Float) {
+            if (value < min) {
+                min = value
+                minTime = time
+            }
+
+            if (value > max) {
+                max = value
+                maxTime = time
+            }
+
+            sum += value
+        }
+
+        fun add(min: Float, minTime: Long, max: Float, maxTime: Long, sum: Double) {
+            if (min < this.min) {
+                this.min = min
+                this.minTime = minTime
+            }
+
+            if (max > this.max) {
+                this.max = max
+                this.maxTime = maxTime
+            }
+
+            this.sum += sum
+        }
+    }
+
+    // statements aren't thread-safe, they're used under lock of the rollup
+    private val createDayStatement = db.compileStatement(CREATE_DAY)
+    private val updateDayStatement = db.compileStatement(UPDATE_DAY)
+    private val replaceDayStatement = db.compileStatement(REPLACE_DAY)
+
+    /**
+     * Adds value to aggregates of its day. Should be called in the same transaction as the value is inserted
+     */
+    fun add(epochSecond: Long, temp: Float, hum: Float, press: Float) {
+        val epochDay = Math.floorDiv(epochSecond, TimeConstants.SECONDS_IN_DAY.toLong())
+
+        synchronized(this) {
+            // aggregates of new day are initialized by the value with zero count and sum,
+            // so that the update statement is the same for new and existing days
+            bindValue(createDayStatement, epochDay, epochSecond, temp, hum, press)
+            createDayStatement.executeInsert()
+
+            bindValue(updateDayStatement, epochDay, epochSecond, temp, hum, press)
+            updateDayStatement.executeUpdateDelete()
+        }
+    }
+
+    /**
+     * Recomputes aggregates of days in range between [startEpochDay] and [endEpochDay] (inclusive)
+     * from `weather` table. Should be called in transaction
+     */
+    fun rebuild(startEpochDay: Long, endEpochDay: Long) {
+        val secondsInDay = TimeConstants.SECONDS_IN_DAY.toLong()
+        val startEpoch = startEpochDay * secondsInDay
+        val endEpoch = (endEpochDay + 1) * secondsInDay - 1
+
+        synchronized(this) {
+            db.execSQL("DELETE FROM daily_rollup WHERE date BETWEEN $startEpochDay AND $endEpochDay")
+
+            val sql = "SELECT datetime_epoch,temperature,humidity,pressure FROM weather WHERE datetime_epoch BETWEEN $startEpoch AND $endEpoch ORDER BY datetime_epoch ASC"
+
+            db.rawQueryWithFactory(null, sql, null, null, null).use { c ->
+                val aggregates = Array(3) { ParameterAggregate() }
+                var currentDay = 0L
+                var count = 0L
+
+                while (c.moveToNext()) {
+                    val time = c.getLong(0)
+                    val day = Math.floorDiv(time, secondsInDay)
+
+                    if (count > 0 && day != currentDay) {
+                        writeDay(currentDay, count, aggregates)
+                        count = 0
+                    }
+
+                    for (i in 0 until 3) {
+                        val value = c.getFloat(i + 1)
+
+                        if (count == 0L) {
+                            aggregates[i].reset(time, value)
+                        } else {
+                            aggregates[i].add(time, value)
+                        }
+                    }
+
+                    currentDay = day
+                    count++
+                }
+
+                if (count > 0) {
+                    writeDay(currentDay, count, aggregates)
+                }
+            }
+        }
+    }
+
+    private fun writeDay(epochDay: Long, count: Long, aggregates: Array<ParameterAggregate>) {
+        val statement = replaceDayStatement
+
+        statement.bindLong(1, epochDay)
+        statement.bindLong(2, count)
+
+        for (i in 0 until 3) {
+            val aggregate = aggregates[i]
+            val index = 3 + i * 5
+
+            statement.bindDouble(index, aggregate.min.toDouble())
+            statement.bindLong(index + 1, aggregate.minTime)
+            statement.bindDouble(index + 2, aggregate.max.toDouble())
+            statement.bindLong(index + 3, aggregate.maxTime)
+            statement.bindDouble(index + 4, aggregate.sum)
+        }
+
+        statement.executeInsert()
+    }
+
+    /**
+     * Creates report on days in range between [startEpochDay] and [endEpochDay] (inclusive) with given [parameters]
+     * or returns null if there's no data in the range.
+     *
+     * Min, max and average are the same as computed on all values, but median of a parameter is approximated
+     * by median of average values of the days, as values themselves aren't read
+     */
+    fun createReport(startEpochDay: Long, endEpochDay: Long, parameters: Int): DayRangeReport? {
+        val sql = "SELECT * FROM daily_rollup WHERE date BETWEEN $startEpochDay AND $endEpochDay ORDER BY date ASC"
+
+        return db.rawQueryWithFactory(null, sql, null, null, null).use { c ->
+            val daysCount = c.count
+            if (daysCount == 0) {
+                return@use null
+            }
+
+            val entries = arrayOfNulls<DayRangeReport.Entry>(daysCount)
+            val aggregates = Array(3) { ParameterAggregate() }
+            val dayAverages = Array(3) { FloatArray(daysCount) }
+            val dayValues = FloatArray(6)
+
+            var totalCount = 0L
+            var firstDay = 0L
+
+            for (dayIndex in 0 until daysCount) {
+                c.moveToNext()
+
+                val day = c.getLong(COLUMN_DATE)
+                val count = c.getLong(COLUMN_COUNT)
+
+                if (dayIndex == 0) {
+                    firstDay = day
+                }
+
+                for (i in 0 until 3) {
+                    if (!WeatherParameters.contains(parameters, PARAMETERS[i])) {
+                        dayValues[i * 2] = 0f
+                        dayValues[i * 2 + 1] = 0f
+
+                        continue
+                    }
+
+                    addDay(c, i, dayIndex, count, aggregates[i], dayAverages[i], dayValues)
+                }
+
+                totalCount += count
+
+                entries[dayIndex] = DayRangeReport.Entry(
+                    ShortDate.ofEpochDay(day.toInt()),
+                    dayValues[0], dayValues[1],
+                    dayValues[2], dayValues[3],
+                    dayValues[4], dayValues[5]
+                )
+            }
+
+            val firstDateTime = ShortDateTime.ofEpochSecond(firstDay * TimeConstants.SECONDS_IN_DAY)
+            val stats = Array(3) { i ->
+                if (WeatherParameters.contains(parameters, PARAMETERS[i])) {
+                    buildStats(aggregates[i], totalCount, dayAverages[i])
+                } else {
+                    ParameterStats.zero(firstDateTime)
+                }
+            }
+
+            @Suppress("UNCHECKED_CAST")
+            DayRangeReport(
+                entries as Array<DayRangeReport.Entry>,
+                ReportStats(ValueUnitsPacked.CELSIUS_MM_OF_MERCURY, parameters, stats[0], stats[1], stats[2])
+            )
+        }
+    }
+
+    private fun addDay(
+        c: Cursor,
+        parameterIndex: Int,
+        dayIndex: Int,
+        count: Long,
+        aggregate: ParameterAggregate,
+        dayAverages: FloatArray,
+        dayValues: FloatArray
+    ) {
+        val column = 2 + parameterIndex * 5
+
+        val min = c.getFloat(column)
+        val minTime = c.getLong(column + 1)
+        val max = c.getFloat(column + 2)
+        val maxTime = c.getLong(column + 3)
+        val sum = c.getDouble(column + 4)
+
+        if (dayIndex == 0) {
+            aggregate.reset(minTime, min)
+            aggregate.max = max
+            aggregate.maxTime = maxTime
+            aggregate.sum = sum
+        } else {
+            aggregate.add(min, minTime, max, maxTime, sum)
+        }
+
+        dayAverages[dayIndex] = (sum / count).toFloat()
+
+        dayValues[parameterIndex * 2] = min
+        dayValues[parameterIndex * 2 + 1] = max
+    }
+
+    private fun buildStats(aggregate: ParameterAggregate, totalCount: Long, dayAverages: FloatArray): ParameterStats {
+        return ParameterStats(
+            ValueWithDate(ShortDateTime.ofEpochSecond(aggregate.minTime), aggregate.min),
+            ValueWithDate(ShortDateTime.ofEpochSecond(aggregate.maxTime), aggregate.max),
+            (aggregate.sum / totalCount).toFloat(),
+            Median.compute(dayAverages)
+        )
+    }
+
+    companion object {
+        const val CREATE_TABLE =
+            "CREATE TABLE daily_rollup (date INTEGER PRIMARY KEY,count INTEGER," +
+                    "temperature_min FLOAT,temperature_min_time INTEGER,temperature_max FLOAT,temperature_max_time INTEGER,temperature_sum DOUBLE," +
+                    "humidity_min FLOAT,humidity_min_time INTEGER,humidity_max FLOAT,humidity_max_time INTEGER,humidity_sum DOUBLE," +
+                    "pressure_min FLOAT,pressure_min_time INTEGER,pressure_max FLOAT,pressure_max_time INTEGER,pressure_sum DOUBLE)"
+
+        private const val COLUMN_DATE = 0
+        private const val COLUMN_COUNT = 1
+
+        private val PARAMETERS = intArrayOf(
+            WeatherParameters.TEMPERATURE,
+            WeatherParameters.HUMIDITY,
+            WeatherParameters.PRESSURE
+        )
+
+        // ?1 - epoch day, ?2 - epoch second, ?3 - temperature, ?4 - humidity, ?5 - pressure
+        private const val CREATE_DAY =
+            "INSERT OR IGNORE INTO daily_rollup VALUES (?1,0,?3,?2,?3,?2,0,?4,?2,?4,?2,0,?5,?2,?5,?2,0)"
+
+        // all the expressions use values of the row before update
+        private const val UPDATE_DAY =
+            "UPDATE daily_rollup SET count=count+1," +
+                    "temperature_min_time=CASE WHEN ?3<temperature_min THEN ?2 ELSE temperature_min_time END,temperature_min=min(temperature_min,?3)," +
+                    "temperature_max_time=CASE WHEN ?3>temperature_max THEN ?2 ELSE temperature_max_time END,temperature_max=max(temperature_max,?3)," +
+                    "temperature_sum=temperature_sum+?3," +
+                    "humidity_min_time=CASE WHEN ?4<humidity_min THEN ?2 ELSE humidity_min_time END,humidity_min=min(humidity_min,?4)," +
+                    "humidity_max_time=CASE WHEN ?4>humidity_max THEN ?2 ELSE humidity_max_time END,humidity_max=max(humidity_max,?4)," +
+                    "humidity_sum=humidity_sum+?4," +
+                    "pressure_min_time=CASE WHEN ?5<pressure_min THEN ?2 ELSE pressure_min_time END,pressure_min=min(pressure_min,?5)," +
+                    "pressure_max_time=CASE WHEN ?5>pressure_max THEN ?2 ELSE pressure_max_time END,pressure_max=max(pressure_max,?5)," +
+                    "pressure_sum=pressure_sum+?5 " +
+                    "WHERE date=?1"
+
+        private const val REPLACE_DAY =
+            "INSERT OR REPLACE INTO daily_rollup VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)"
+
+        private fun bindValue(
+            statement: SQLiteStatement,
+            epochDay: Long, epochSecond: Long,
+            temp: Float, hum: Float, press: Float
+        ) {
+            statement.bindLong(1, epochDay)
+            statement.bindLong(2, epochSecond)
+            statement.bindDouble(3, temp.toDouble())
+            statement.bindDouble(4, hum.toDouble())
+            statement.bindDouble(5, press.toDouble())
+        }
+    }
+}
@@ -7,19 +7,61 @@ import android.database.Cursor
 import android.database.sqlite.SQLiteDatabase
 import android.database.sqlite.SQLiteOpenHelper
 import androidx.core.database.sqlite.transaction
+import com.pelmenstar.projktSens.jserver.logging.Logger
+import com.pelmenstar.projktSens.jserver.logging.LoggerConfig
 import com.pelmenstar.projktSens.shared.serialization.ValidationException
 import com.pelmenstar.projktSens.shared.time.*
 import com.pelmenstar.projktSens.weather.models.*
+import kotlinx.coroutines.*
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.StampedLock
 
 /**
- * Weather repository implementation that stores data in database
+ * Weather repository implementation that stores data in database.
+ *
+ * Table is keyed by time (`datetime_epoch INTEGER PRIMARY KEY` is alias of rowid), so range queries, min/max of time
+ * and the last weather are lookups in B-tree instead of full scan.
+ * Range reports are computed from aggregates of days, maintained by [DailyRollup] on every put.
+ * Databases of previous versions are migrated in background by [migrateLegacyTable] and [rebuildDailyRollup].
+ * Until records are moved from the legacy table, they're read from both tables, so reports are always complete
  */
 class DbServerWeatherRepository private constructor(private val db: SQLiteDatabase) :
     WeatherRepository {
+    private val version = AtomicLong(System.currentTimeMillis())
+
+    // compiled once and reused for every record, SQLiteStatement isn't thread-safe, so it's used under its lock
+    private val insertStatement = db.compileStatement(INSERT_WEATHER)
+
+    private val rollup = DailyRollup(db)
+
+    // until the rollup is rebuilt after upgrade, range reports are computed on values
+    @Volatile
+    private var isRollupReady = !hasTable(ROLLUP_REBUILD_MARKER)
+
+    // reports on records, that aren't moved yet, would be incomplete, but can't be distinguished from complete ones
+    // by caches of clients, so the legacy table is read too until it's dropped
+    @Volatile
+    private var isLegacyTablePending = hasTable(LEGACY_TABLE)
+
+    // queries, that read the legacy table, hold read lock until their cursor is closed, so the table isn't dropped
+    // under them. Stamps aren't bound to thread, so the lock can be held while chunks are sent
+    private val legacyTableLock = StampedLock()
+
+    override val dataVersion: Long
+        get() = version.get()
+
     override suspend fun clear() {
-        db.compileStatement("DELETE FROM weather").use { statement ->
-            statement.executeUpdateDelete()
+        db.transaction {
+            execSQL("DELETE FROM weather")
+            execSQL("DELETE FROM daily_rollup")
+
+            // otherwise migration would bring old records back. The table is dropped by migration, so it's checked in the transaction
+            if (hasTable(LEGACY_TABLE)) {
+                execSQL("DELETE FROM $LEGACY_TABLE")
+            }
         }
+
+        version.incrementAndGet()
     }
 
     override suspend fun putMany(values: Array<WeatherInfo>) {
@@ -28,10 +70,16 @@ class DbServerWeatherRepository private constructor(private val db: SQLiteDataba
                 putBlocking(weather)
             }
         }
+
+        version.incrementAndGet()
     }
 
     override suspend fun put(weather: WeatherInfo) {
-        putBlocking(weather)
+        db.transaction {
+            putBlocking(weather)
+        }
+
+        version.incrementAndGet()
     }
 
     private fun putBlocking(weather: WeatherInfo) {
@@ -46,20 +94,19 @@ class DbServerWeatherRepository private constructor(private val db: SQLiteDataba
             ValueUnit.MM_OF_MERCURY
         )
 
-        val sql = buildString {
-            append("INSERT INTO weather (datetime_epoch,temperature,humidity,pressure) VALUES (")
-            append(ShortDateTime.toEpochSecond(weather.dateTime))
-            append(',')
-            append(temp)
-            append(',')
-            append(weather.humidity)
-            append(',')
-            append(press)
-            append(')')
-        }
+        val statement = insertStatement
+        val epochSecond = ShortDateTime.toEpochSecond(weather.dateTime)
+
+        synchronized(statement) {
+            statement.bindLong(1, epochSecond)
+            statement.bindDouble(2, temp.toDouble())
+            statement.bindDouble(3, weather.humidity.toDouble())
+            statement.bindDouble(4, press.toDouble())
 
-        db.compileStatement(sql).use { statement ->
-            statement.executeInsert()
+            // -1 means that the record is already stored, it shouldn't be counted twice
+            if (statement.executeInsert() != -1L) {
+                rollup.add(epochSecond, temp, weather.humidity, press)
+            }
         }
     }
 
@@ -68,9 +115,9 @@ class DbServerWeatherRepository private constructor(private val db: SQLiteDataba
             throw ValidationException.invalidValue("date", date)
         }
 
-        return query(createDayQuery(date)) { c ->
+        return queryWeather({ source -> createDayQuery(source, date) }) { c ->
             if (c.count == 0) {
-                return@query null
+                return@queryWeather null
             }
 
             DayReport.create(CursorWeatherPropertyIterable(c))
@@ -78,22 +125,215 @@ class DbServerWeatherRepository private constructor(private val db: SQLiteDataba
     }
 
     override suspend fun getDayRangeReport(@ShortDateInt start: Int, @ShortDateInt end: Int): DayRangeReport? {
-        val sql = createDayRangeQuery(start, end)
+        if (isRollupReady) {
+            return createRollupReport(start, end, WeatherParameters.ALL)
+        }
 
-        return query(sql) { c ->
+        return queryWeather({ source -> createDayRangeQuery(source, start, end) }) { c ->
             if (c.count == 0) {
-                return@query null
+                return@queryWeather null
             }
 
             DayRangeReport.create(CursorWeatherPropertyIterable(c))
         }
     }
 
+    /**
+     * Computes the same report as [getDayReport], but only with given [parameters] (see [WeatherParameters]).
+     * Columns of other parameters aren't read from the database
+     */
+    suspend fun getDayReport(@ShortDateInt date: Int, parameters: Int): DayReport? {
+        if (!ShortDate.isValid(date)) {
+            throw ValidationException.invalidValue("date", date)
+        }
+
+        return queryWeather({ source -> createDayQuery(source, date, parameters) }) { c ->
+            if (c.count == 0) {
+                return@queryWeather null
+            }
+
+            DayReport.create(CursorWeatherPropertyIterable(c), parameters)
+        }
+    }
+
+    /**
+     * Computes the same report as [getDayRangeReport], but only with given [parameters] (see [WeatherParameters]).
+     * Columns of other parameters aren't read from the database
+     */
+    suspend fun getDayRangeReport(@ShortDateInt start: Int, @ShortDateInt end: Int, parameters: Int): DayRangeReport? {
+        if (isRollupReady) {
+            return createRollupReport(start, end, parameters)
+        }
+
+        return queryWeather({ source -> createDayRangeQuery(source, start, end, parameters) }) { c ->
+            if (c.count == 0) {
+                return@queryWeather null
+            }
+
+            DayRangeReport.create(CursorWeatherPropertyIterable(c), parameters)
+        }
+    }
+
+    /**
+     * Computes the same report as [getDayReport], but entries are sent through [onChunk] by [chunkSize]
+     * while the cursor is read, so they aren't held in memory all together.
+     * Returns stats of the report or null if there's no data for given [date]
+     */
+    suspend fun getDayReportChunked(
+        @ShortDateInt date: Int,
+        chunkSize: Int,
+        onChunk: suspend (DayReport.EntryChunk) -> Unit
+    ): ReportStats? {
+        if (!ShortDate.isValid(date)) {
+            throw ValidationException.invalidValue("date", date)
+        }
+
+        return queryWeather({ source -> createDayQuery(source, date) }) { c ->
+            if (c.count == 0) {
+                return@queryWeather null
+            }
+
+            val builder = DayReport.Builder(c.count)
+
+            while (c.moveToNext()) {
+                addCurrentRow(c, builder::add)
+
+                if (builder.pendingEntriesCount == chunkSize) {
+                    onChunk(DayReport.EntryChunk(builder.takeEntries()))
+                }
+            }
+
+            if (builder.pendingEntriesCount > 0) {
+                onChunk(DayReport.EntryChunk(builder.takeEntries()))
+            }
+
+            builder.buildStats()
+        }
+    }
+
+    /**
+     * Computes the same report as [getDayRangeReport], but entries are sent through [onChunk] by [chunkSize]
+     * while the cursor is read, so they aren't held in memory all together.
+     * Returns stats of the report or null if there's no data in given range
+     */
+    suspend fun getDayRangeReportChunked(
+        @ShortDateInt start: Int,
+        @ShortDateInt end: Int,
+        chunkSize: Int,
+        onChunk: suspend (DayRangeReport.EntryChunk) -> Unit
+    ): ReportStats? {
+        if (isRollupReady) {
+            val report = createRollupReport(start, end, WeatherParameters.ALL) ?: return null
+            val entries = report.entries
+
+            for (chunkStart in entries.indices step chunkSize) {
+                val chunkEnd = minOf(chunkStart + chunkSize, entries.size)
+
+                onChunk(DayRangeReport.EntryChunk(entries.copyOfRange(chunkStart, chunkEnd)))
+            }
+
+            return report.stats
+        }
+
+        return queryWeather({ source -> createDayRangeQuery(source, start, end) }) { c ->
+            if (c.count == 0) {
+                return@queryWeather null
+            }
+
+            val builder = DayRangeReport.Builder(c.count)
+
+            while (c.moveToNext()) {
+                addCurrentRow(c, builder::add)
+
+                if (builder.pendingEntriesCount == chunkSize) {
+                    onChunk(DayRangeReport.EntryChunk(builder.takeEntries()))
+                }
+            }
+
+            builder.finishDay()
+            onChunk(DayRangeReport.EntryChunk(builder.takeEntries()))
+
+            builder.buildStats()
+        }
+    }
+
+    /**
+     * Returns page of at most [maxCount] records stored strictly after [epochSecond] in ascending order of time
+     * or null if there are no such records
+     */
+    suspend fun getWeatherSince(epochSecond: Long, maxCount: Int): WeatherInfoPage? {
+        require(maxCount > 0) { "maxCount" }
+
+        // one more record is requested to know whether there are more records after the page
+        val sql = { source: String ->
+            "SELECT datetime_epoch,temperature,humidity,pressure FROM $source WHERE datetime_epoch > $epochSecond ORDER BY datetime_epoch ASC LIMIT ${maxCount + 1}"
+        }
+
+        return queryWeather(sql) { c ->
+            val count = c.count
+            if (count == 0) {
+                return@queryWeather null
+            }
+
+            val pageCount = minOf(count, maxCount)
+            val builder = WeatherInfoPage.Builder(ValueUnitsPacked.CELSIUS_MM_OF_MERCURY, pageCount)
+
+            while (builder.size() < pageCount && c.moveToNext()) {
+                builder.add(c.getLong(0), c.getFloat(1), c.getFloat(2), c.getFloat(3))
+            }
+
+            builder.build(count > maxCount)
+        }
+    }
+
+    /**
+     * Returns day reports of all the days in range between [start] and [end] (inclusive)
+     * or null if there's no data in the range.
+     * Reports are built in one pass over the cursor ordered by time, instead of query per day
+     */
+    suspend fun getDayReports(@ShortDateInt start: Int, @ShortDateInt end: Int): DayReportList? {
+        return queryWeather({ source -> createDayRangeQuery(source, start, end) }) { c ->
+            if (c.count == 0) {
+                return@queryWeather null
+            }
+
+            DayReportList.create(CursorWeatherPropertyIterable(c))
+        }
+    }
+
+    /**
+     * Returns weather in range between [start] and [end] (inclusive) aggregated to buckets of [bucketSeconds] seconds
+     * or null if there's no data in the range.
+     * Buckets are computed in one pass over the cursor, only the current bucket is kept in memory
+     */
+    suspend fun getSeries(@ShortDateInt start: Int, @ShortDateInt end: Int, bucketSeconds: Int): WeatherSeries? {
+        if (!WeatherSeries.isValidBucketSeconds(bucketSeconds)) {
+            throw ValidationException.invalidValue("bucketSeconds", bucketSeconds)
+        }
+
+        val startEpoch = ShortDateTime.startOfDayToEpochSecond(start)
+        val endEpoch = ShortDateTime.endOfDayToEpochSecond(end)
+        return queryWeather({ source -> dateRangeQuery(source, startEpoch, endEpoch, WeatherParameters.ALL) }) { c ->
+            if (c.count == 0) {
+                return@queryWeather null
+            }
+
+            val expectedPoints = minOf(c.count.toLong(), (endEpoch - startEpoch) / bucketSeconds + 1).toInt()
+            val builder = WeatherSeries.Builder(ValueUnitsPacked.CELSIUS_MM_OF_MERCURY, bucketSeconds, expectedPoints)
+
+            while (c.moveToNext()) {
+                builder.add(c.getLong(0), c.getFloat(1), c.getFloat(2), c.getFloat(3))
+            }
+
+            builder.build()
+        }
+    }
+
     override suspend fun getAvailableDateRange(): ShortDateRange? {
-        return query(QUERY_AVAILABLE_DATE_RANGE) { c ->
+        return queryWeather(::availableDateRangeQuery) { c ->
             c.moveToPosition(0)
             if (c.isNull(0) || c.isNull(1)) {
-                return@query null
+                return@queryWeather null
             }
 
             val minDate = ShortDate.ofEpochSecond(c.getLong(0))
@@ -104,9 +344,13 @@ class DbServerWeatherRepository private constructor(private val db: SQLiteDataba
     }
 
     override suspend fun getLastWeather(): WeatherInfo? {
-        return query(QUERY_LAST_WEATHER) { c ->
+        val sql = { source: String ->
+            "SELECT datetime_epoch,temperature,humidity,pressure FROM $source ORDER BY datetime_epoch DESC LIMIT 1"
+        }
+
+        return queryWeather(sql) { c ->
             if (c.count == 0) {
-                return@query null
+                return@queryWeather null
             }
 
             c.moveToPosition(0)
@@ -120,6 +364,185 @@ class DbServerWeatherRepository private constructor(private val db: SQLiteDataba
         }
     }
 
+    /**
+     * Runs query, that is built by [sql] on table or subquery, from which records should be read, and passes its cursor to [block].
+     * Until migration is finished, the legacy table isn't dropped while the cursor is open
+     */
+    private inline fun <T> queryWeather(sql: (source: String) -> String, block: (c: Cursor) -> T): T {
+        if (!isLegacyTablePending) {
+            return query(sql("weather"), block)
+        }
+
+        val stamp = legacyTableLock.readLock()
+
+        try {
+            // the table might be dropped while the lock was awaited
+            return query(sql(if (isLegacyTablePending) WEATHER_WITH_LEGACY else "weather"), block)
+        } finally {
+            legacyTableLock.unlockRead(stamp)
+        }
+    }
+
+    private fun availableDateRangeQuery(source: String): String {
+        // min and max are in separate subqueries, because SQLite optimizes only single min() or max() to B-tree lookup
+        return "SELECT (SELECT min(datetime_epoch) FROM $source), (SELECT max(datetime_epoch) FROM $source)"
+    }
+
+    private fun createDayQuery(source: String, @ShortDateInt date: Int, parameters: Int = WeatherParameters.ALL): String {
+        val dayEpoch = ShortDate.toEpochDay(date).toLong()
+        val startDateTime = dayEpoch * TimeConstants.SECONDS_IN_DAY
+        val endDateTime = startDateTime + (TimeConstants.SECONDS_IN_DAY - 1)
+
+        return dateRangeQuery(source, startDateTime, endDateTime, parameters)
+    }
+
+    private fun createDayRangeQuery(source: String, start: Int, end: Int, parameters: Int = WeatherParameters.ALL): String {
+        val startDateTime = ShortDateTime.startOfDayToEpochSecond(start)
+        val endDateTime = ShortDateTime.endOfDayToEpochSecond(end)
+
+        return dateRangeQuery(source, startDateTime, endDateTime, parameters)
+    }
+
+    // records are in ascending order of time. It costs nothing for the table, as they're ordered by its key
+    private fun dateRangeQuery(source: String, startEpoch: Long, endEpoch: Long, parameters: Int): String {
+        return buildString {
+            append("SELECT datetime_epoch,")
+
+            // columns of parameters, that aren't requested, are replaced with constant, so that indices of columns are the same
+            appendColumn(parameters, WeatherParameters.TEMPERATURE, "temperature")
+            append(',')
+            appendColumn(parameters, WeatherParameters.HUMIDITY, "humidity")
+            append(',')
+            appendColumn(parameters, WeatherParameters.PRESSURE, "pressure")
+
+            append(" FROM ")
+            append(source)
+            append(" WHERE datetime_epoch BETWEEN ")
+            append(startEpoch)
+            append(" AND ")
+            append(endEpoch)
+            append(" ORDER BY datetime_epoch ASC")
+        }
+    }
+
+    private fun createRollupReport(@ShortDateInt start: Int, @ShortDateInt end: Int, parameters: Int): DayRangeReport? {
+        if (!ShortDate.isValid(start)) {
+            throw ValidationException.invalidValue("start", start)
+        }
+
+        if (!ShortDate.isValid(end)) {
+            throw ValidationException.invalidValue("end", end)
+        }
+
+        return rollup.createReport(
+            ShortDate.toEpochDay(start).toLong(),
+            ShortDate.toEpochDay(end).toLong(),
+            parameters
+        )
+    }
+
+    /**
+     * Recomputes aggregates in `daily_rollup` from all the stored records, if the database was upgraded
+     * from a version without the rollup. Days are recomputed by batches, each batch is a separate transaction.
+     * Until it's finished, range reports are computed on records
+     */
+    suspend fun rebuildDailyRollup() {
+        if (!hasTable(ROLLUP_REBUILD_MARKER)) {
+            return
+        }
+
+        val secondsInDay = TimeConstants.SECONDS_IN_DAY.toLong()
+
+        val epochRange = queryWeather(::availableDateRangeQuery) { c ->
+            c.moveToPosition(0)
+
+            if (c.isNull(0) || c.isNull(1)) null else LongArray(2) { c.getLong(it) }
+        }
+
+        if (epochRange != null) {
+            var day = Math.floorDiv(epochRange[0], secondsInDay)
+            val lastDay = Math.floorDiv(epochRange[1], secondsInDay)
+
+            while (day <= lastDay) {
+                val batchEnd = minOf(day + ROLLUP_REBUILD_BATCH_DAYS - 1, lastDay)
+
+                db.transaction {
+                    rollup.rebuild(day, batchEnd)
+                }
+
+                day = batchEnd + 1
+
+                // let other queries run between batches
+                delay(MIGRATION_BATCH_DELAY)
+            }
+        }
+
+        db.execSQL("DROP TABLE $ROLLUP_REBUILD_MARKER")
+
+        isRollupReady = true
+        version.incrementAndGet()
+    }
+
+    private fun hasTable(name: String): Boolean {
+        return query("SELECT name FROM sqlite_master WHERE type='table' AND name='$name'") { c -> c.count > 0 }
+    }
+
+    /**
+     * Moves records from table of the first version of the schema to the current one by batches.
+     * Each batch is a separate transaction, so other queries aren't blocked for a long time.
+     * Until migration is finished, records are read from both tables
+     */
+    suspend fun migrateLegacyTable() {
+        if (!hasTable(LEGACY_TABLE)) {
+            isLegacyTablePending = false
+            return
+        }
+
+        db.compileStatement(MIGRATE_BATCH).use { insertStatement ->
+            db.compileStatement(DELETE_MIGRATED_BATCH).use { deleteStatement ->
+                while (true) {
+                    var movedCount = 0
+
+                    db.transaction {
+                        insertStatement.executeInsert()
+                        movedCount = deleteStatement.executeUpdateDelete()
+                    }
+
+                    if (movedCount == 0) {
+                        break
+                    }
+
+                    version.incrementAndGet()
+
+                    // let other queries run between batches
+                    delay(MIGRATION_BATCH_DELAY)
+                }
+            }
+        }
+
+        // waits for queries, that read the legacy table. Queries started after that read only the new table,
+        // which already contains all the records
+        val stamp = legacyTableLock.writeLock()
+
+        try {
+            isLegacyTablePending = false
+            db.execSQL("DROP TABLE $LEGACY_TABLE")
+        } finally {
+            legacyTableLock.unlockWrite(stamp)
+        }
+    }
+
+    private inline fun addCurrentRow(
+        c: Cursor,
+        add: (dateTime: Long, units: Int, temp: Float, hum: Float, press: Float) -> Unit
+    ) {
+        add(
+            ShortDateTime.ofEpochSecond(c.getLong(0)),
+            ValueUnitsPacked.CELSIUS_MM_OF_MERCURY,
+            c.getFloat(1), c.getFloat(2), c.getFloat(3)
+        )
+    }
+
     private inline fun<T> query(sql: String, block: (c: Cursor) -> T): T {
         val cursor = db.rawQueryWithFactory(null, sql, null, null, null)
 
@@ -127,12 +550,26 @@ class DbServerWeatherRepository private constructor(private val db: SQLiteDataba
     }
 
     private class OpenHelper(context: Context, name: String?) :
-        SQLiteOpenHelper(context, name, null, 1) {
+        SQLiteOpenHelper(context, name, null, DB_VERSION) {
         override fun onCreate(db: SQLiteDatabase) {
-            db.execSQL("CREATE TABLE weather (datetime_epoch BIGINT,temperature FLOAT,humidity FLOAT,pressure FLOAT)")
+            db.execSQL(CREATE_TABLE)
+            db.execSQL(DailyRollup.CREATE_TABLE)
         }
 
-        override fun onUpgrade(db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {}
+        override fun onUpgrade(db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
+            if (oldVersion < 2) {
+                // copying all the data here would block opening of the database,
+                // so old table is only renamed and data is moved later by migrateLegacyTable()
+                db.execSQL("ALTER TABLE weather RENAME TO $LEGACY_TABLE")
+                db.execSQL(CREATE_TABLE)
+            }
+
+            if (oldVersion < 3) {
+                // aggregates of the existing records are computed later by rebuildDailyRollup()
+                db.execSQL(DailyRollup.CREATE_TABLE)
+                db.execSQL("CREATE TABLE $ROLLUP_REBUILD_MARKER (unused INTEGER)")
+            }
+        }
     }
 
     private class CursorWeatherPropertyIterable(private val cursor: Cursor) :
@@ -151,15 +588,68 @@ class DbServerWeatherRepository private constructor(private val db: SQLiteDataba
 
     companion object {
         private const val FILE_DB_NAME = "data"
+        private const val DB_VERSION = 3
+
+        // weather can't be taken twice at the same second, the same time means the same record
+        private const val INSERT_WEATHER =
+            "INSERT OR IGNORE INTO weather (datetime_epoch,temperature,humidity,pressure) VALUES (?,?,?,?)"
+
+        private const val CREATE_TABLE =
+            "CREATE TABLE weather (datetime_epoch INTEGER PRIMARY KEY,temperature FLOAT,humidity FLOAT,pressure FLOAT)"
+
+        /**
+         * Table of the first version of the schema, which has no key
+         */
+        private const val LEGACY_TABLE = "weather_v1"
+
+        // record of the legacy table, that has the same time as one of the new table, is ignored by migration
+        private const val WEATHER_WITH_LEGACY =
+            "(SELECT datetime_epoch,temperature,humidity,pressure FROM weather UNION ALL " +
+                    "SELECT datetime_epoch,temperature,humidity,pressure FROM $LEGACY_TABLE " +
+                    "WHERE datetime_epoch NOT IN (SELECT datetime_epoch FROM weather))"
+
+        private const val MIGRATION_BATCH_SIZE = 1000
+        private const val MIGRATION_BATCH_DELAY: Long = 10
+
+        private const val LEGACY_BATCH_ROWIDS =
+            "SELECT rowid FROM $LEGACY_TABLE ORDER BY rowid LIMIT $MIGRATION_BATCH_SIZE"
+
+        // values put after the migration is started are newer, so they're preferred
+        private const val MIGRATE_BATCH =
+            "INSERT OR IGNORE INTO weather (datetime_epoch,temperature,humidity,pressure) " +
+                    "SELECT datetime_epoch,temperature,humidity,pressure FROM $LEGACY_TABLE " +
+                    "WHERE rowid IN ($LEGACY_BATCH_ROWIDS)"
+
+        private const val DELETE_MIGRATED_BATCH =
+            "DELETE FROM $LEGACY_TABLE WHERE rowid IN ($LEGACY_BATCH_ROWIDS)"
+
+        /**
+         * Table, that exists only until aggregates of records, stored before `daily_rollup` was created, are computed
+         */
+        private const val ROLLUP_REBUILD_MARKER = "daily_rollup_rebuild"
+        private const val ROLLUP_REBUILD_BATCH_DAYS = 30
+
+        private val migrationScope = CoroutineScope(Dispatchers.IO + CoroutineName("DbServerWeatherRepository"))
+
+        /**
+         * Opens repository stored in file. Migration errors are logged with given [loggerConfig]
+         */
+        fun file(context: Context, loggerConfig: LoggerConfig): DbServerWeatherRepository {
+            val repo = createDbRepo(context, FILE_DB_NAME)
+            val log = Logger("DbServerWeatherRepository", loggerConfig)
+
+            migrationScope.launch {
+                try {
+                    // rollup is rebuilt after migration, as migrated records aren't added to it
+                    repo.migrateLegacyTable()
+                    repo.rebuildDailyRollup()
+                } catch (e: Exception) {
+                    // records that aren't moved stay in legacy table and are read from it, they're moved on the next start
+                    log.error("Migration failed", e)
+                }
+            }
 
-        private const val QUERY_AVAILABLE_DATE_RANGE =
-            "SELECT min(datetime_epoch), max(datetime_epoch) FROM weather"
-
-        private const val QUERY_LAST_WEATHER =
-            "SELECT datetime_epoch,temperature,humidity,pressure FROM weather ORDER BY datetime_epoch ASC LIMIT 1"
-
-        fun file(context: Context): DbServerWeatherRepository {
-            return createDbRepo(context, FILE_DB_NAME)
+            return repo
         }
 
         fun inMemory(context: Context): DbServerWeatherRepository {
@@ -170,23 +660,8 @@ class DbServerWeatherRepository private constructor(private val db: SQLiteDataba
             return DbServerWeatherRepository(OpenHelper(context, fileName).writableDatabase)
         }
 
-        private fun createDayQuery(@ShortDateInt date: Int): String {
-            val dayEpoch = ShortDate.toEpochDay(date).toLong()
-            val startDateTime = dayEpoch * TimeConstants.SECONDS_IN_DAY
-            val endDateTime = startDateTime + (TimeConstants.SECONDS_IN_DAY - 1)
-
-            return dateRangeQuery(startDateTime, endDateTime)
-        }
-
-        private fun createDayRangeQuery(start: Int, end: Int): String {
-            val startDateTime = ShortDateTime.startOfDayToEpochSecond(start)
-            val endDateTime = ShortDateTime.endOfDayToEpochSecond(end)
-
-            return dateRangeQuery(startDateTime, endDateTime)
-        }
-
-        private fun dateRangeQuery(startEpoch: Long, endEpoch: Long): String {
-            return "SELECT datetime_epoch,temperature,humidity,pressure FROM weather WHERE datetime_epoch BETWEEN $startEpoch AND $endEpoch"
+        private fun StringBuilder.appendColumn(parameters: Int, parameter: Int, column: String) {
+            append(if (WeatherParameters.contains(parameters, parameter)) column else "0")
         }
     }
 }
\ No newline at end of file
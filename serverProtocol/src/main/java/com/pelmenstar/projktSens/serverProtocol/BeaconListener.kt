@@ -0,0 +1,67 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+import com.pelmenstar.projktSens.shared.serialization.Serializable
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.isActive
+import java.net.DatagramPacket
+import java.net.InetSocketAddress
+import java.net.MulticastSocket
+import java.net.SocketTimeoutException
+
+/**
+ * Receives [ServerBeacon]s sent by [BeaconSender] to [group]. No connection to the server is needed,
+ * so it's suitable for passive displays of the latest weather and to find servers without probing addresses
+ */
+class BeaconListener(
+    private val group: InetSocketAddress = BeaconSender.defaultGroup()
+) {
+    /**
+     * Returns flow of received beacons. Datagrams, that aren't beacons, are skipped.
+     * Socket is opened when the flow collection starts and closed when it's completed or cancelled
+     */
+    fun listen(): Flow<ServerBeacon> {
+        return flow {
+            val groupAddress = group.address
+
+            MulticastSocket(group.port).use { socket ->
+                // receive() can't be cancelled, so timeout is needed to check whether the flow is cancelled
+                socket.soTimeout = RECEIVE_TIMEOUT
+
+                if (groupAddress.isMulticastAddress) {
+                    @Suppress("DEPRECATION")
+                    socket.joinGroup(groupAddress)
+                }
+
+                val buffer = ByteArray(ServerBeacon.MAX_SIZE)
+                val packet = DatagramPacket(buffer, buffer.size)
+
+                while (currentCoroutineContext().isActive) {
+                    try {
+                        packet.setData(buffer, 0, buffer.size)
+                        socket.receive(packet)
+                    } catch (e: SocketTimeoutException) {
+                        continue
+                    }
+
+                    val beacon = try {
+                        Serializable.ofByteArray(buffer.copyOf(packet.length), ServerBeacon.SERIALIZER)
+                    } catch (e: Exception) {
+                        null
+                    }
+
+                    if (beacon != null) {
+                        emit(beacon)
+                    }
+                }
+            }
+        }.flowOn(Dispatchers.IO)
+    }
+
+    companion object {
+        private const val RECEIVE_TIMEOUT = 500
+    }
+}
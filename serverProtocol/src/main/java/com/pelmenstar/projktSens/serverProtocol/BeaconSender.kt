@@ -0,0 +1,53 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+import com.pelmenstar.projktSens.shared.serialization.Serializable
+import java.io.Closeable
+import java.net.DatagramPacket
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.MulticastSocket
+
+/**
+ * Sends [ServerBeacon]s to [group]. Socket is opened on the first [send] and after [close] it's opened again
+ * on the next [send], so the sender can be reused after server is restarted.
+ * [group] may be not multicast address, then beacons are sent only to the one host
+ */
+class BeaconSender(
+    private val group: InetSocketAddress = defaultGroup()
+) : Closeable {
+    private var socket: MulticastSocket? = null
+
+    /**
+     * Sends [beacon] to the group. Blocks until datagram is sent
+     */
+    fun send(beacon: ServerBeacon) {
+        val data = Serializable.toByteArray(beacon, ServerBeacon.SERIALIZER)
+
+        synchronized(this) {
+            val s = socket ?: MulticastSocket().also {
+                // beacon is useful only in local network
+                it.timeToLive = 1
+
+                socket = it
+            }
+
+            s.send(DatagramPacket(data, data.size, group))
+        }
+    }
+
+    override fun close() {
+        synchronized(this) {
+            socket?.close()
+            socket = null
+        }
+    }
+
+    companion object {
+        fun defaultGroup(): InetSocketAddress {
+            return InetSocketAddress(
+                InetAddress.getByName(ServerBeacon.DEFAULT_GROUP_ADDRESS),
+                ServerBeacon.DEFAULT_GROUP_PORT
+            )
+        }
+    }
+}
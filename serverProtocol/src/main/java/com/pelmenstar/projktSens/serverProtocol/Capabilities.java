@@ -0,0 +1,238 @@
+package com.pelmenstar.projktSens.serverProtocol;
+
+import com.pelmenstar.projktSens.shared.AppendableToStringBuilder;
+import com.pelmenstar.projktSens.shared.serialization.ObjectSerializer;
+import com.pelmenstar.projktSens.shared.serialization.Serializable;
+import com.pelmenstar.projktSens.shared.serialization.ValidationException;
+import com.pelmenstar.projktSens.shared.serialization.ValueReader;
+import com.pelmenstar.projktSens.shared.serialization.ValueWriter;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Describes what peer of the protocol supports. Server answers {@link Commands#HELLO} with its capabilities,
+ * client intersects them with its own ({@link #intersect(Capabilities)}) and uses the result for the server.
+ * Server, that doesn't know {@link Commands#HELLO}, is considered to have {@link #legacy(int)} capabilities.
+ * Instances of this class can be serialized in format described below: <br/>
+ * - protocolVersion | 4 bytes <br/>
+ * - contractTypes | 4 bytes <br/>
+ * - features | 4 bytes <br/>
+ * - maxBatchSize | 4 bytes <br/>
+ */
+public final class Capabilities extends AppendableToStringBuilder {
+    /**
+     * Version of the protocol described by this module. Peer, that doesn't support {@link Commands#HELLO}, has version 0
+     */
+    public static final int PROTOCOL_VERSION = 1;
+
+    /**
+     * Peer can read and write values by compact serializers (see {@link RequestBatch#FLAG_COMPACT_VALUES})
+     */
+    public static final int FEATURE_COMPACT_VALUES = 1;
+
+    /**
+     * Peer can send and receive chunked responses (see {@link RequestBatch#FLAG_CHUNKED_RESPONSE})
+     */
+    public static final int FEATURE_CHUNKED_RESPONSES = 1 << 1;
+
+    /**
+     * Peer supports push subscriptions (see {@link Commands#isStreaming(int)})
+     */
+    public static final int FEATURE_PUSH_SUBSCRIPTIONS = 1 << 2;
+
+    /**
+     * Peer supports conditional requests (see {@link Request#getIfDataVersionDiffers()})
+     */
+    public static final int FEATURE_DATA_VERSIONS = 1 << 3;
+
+    /**
+     * Peer can read batch flags and keeps connection open after batch with {@link RequestBatch#FLAG_KEEP_CONNECTION}.
+     * Batch flags can't be sent to peer without this feature, it rejects the batch
+     */
+    public static final int FEATURE_KEEP_CONNECTION = 1 << 4;
+
+    /**
+     * Peer can read masks of weather parameters of requests (see {@link Request#getParameters()}).
+     * Mask can't be sent to peer without this feature, it rejects the whole batch
+     */
+    public static final int FEATURE_PROJECTION = 1 << 5;
+
+    /**
+     * Peer supports {@link Commands#GET_WEATHER_SINCE}.
+     * Its argument can't be sent to peer without this feature, it rejects the whole batch
+     */
+    public static final int FEATURE_WEATHER_SINCE = 1 << 6;
+
+    /**
+     * Peer supports {@link Commands#GET_SERIES}.
+     * Its argument can't be sent to peer without this feature, it rejects the whole batch
+     */
+    public static final int FEATURE_SERIES = 1 << 7;
+
+    public static final int ALL_FEATURES =
+            FEATURE_COMPACT_VALUES | FEATURE_CHUNKED_RESPONSES | FEATURE_PUSH_SUBSCRIPTIONS | FEATURE_DATA_VERSIONS |
+            FEATURE_KEEP_CONNECTION | FEATURE_PROJECTION | FEATURE_WEATHER_SINCE | FEATURE_SERIES;
+
+    /**
+     * Max count of requests in one batch, that can be written in the first version of request format
+     */
+    public static final int LEGACY_MAX_BATCH_SIZE = 127;
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1024;
+
+    @NotNull
+    public static final ObjectSerializer<Capabilities> SERIALIZER;
+
+    public final int protocolVersion;
+
+    /**
+     * Mask of supported contract types, bit {@code 1 << type} is set if {@link ContractType} {@code type} is supported
+     */
+    public final int contractTypes;
+
+    /**
+     * Mask of supported {@code FEATURE_*} constants
+     */
+    public final int features;
+
+    public final int maxBatchSize;
+
+    static {
+        SERIALIZER = new Serializer();
+
+        // not necessary but can affect performance
+        Serializable.registerSerializer(Capabilities.class, SERIALIZER);
+    }
+
+    public Capabilities(int protocolVersion, int contractTypes, int features, int maxBatchSize) {
+        if (protocolVersion < 0) {
+            throw ValidationException.invalidValue("protocolVersion", protocolVersion);
+        }
+
+        if (maxBatchSize <= 0) {
+            throw ValidationException.invalidValue("maxBatchSize", maxBatchSize);
+        }
+
+        this.protocolVersion = protocolVersion;
+        this.contractTypes = contractTypes;
+        this.features = features;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Returns capabilities of current version of the protocol, where only given {@code contractType} is supported
+     */
+    @NotNull
+    public static Capabilities current(int contractType) {
+        return current(contractType, ALL_FEATURES);
+    }
+
+    /**
+     * Returns capabilities of current version of the protocol, where only given {@code contractType}
+     * and given {@code features} are supported. Peer should announce only features it actually serves
+     */
+    @NotNull
+    public static Capabilities current(int contractType, int features) {
+        return new Capabilities(PROTOCOL_VERSION, contractTypeBit(contractType), features, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Returns capabilities of peer, that doesn't support {@link Commands#HELLO} and uses given {@code contractType}.
+     * Nothing except the contract is assumed to be supported
+     */
+    @NotNull
+    public static Capabilities legacy(int contractType) {
+        return new Capabilities(0, contractTypeBit(contractType), 0, LEGACY_MAX_BATCH_SIZE);
+    }
+
+    public static int contractTypeBit(int contractType) {
+        if (!ContractType.isValid(contractType)) {
+            throw new IllegalArgumentException("contractType");
+        }
+
+        return 1 << contractType;
+    }
+
+    public boolean supportsContractType(int contractType) {
+        return ContractType.isValid(contractType) && (contractTypes & (1 << contractType)) != 0;
+    }
+
+    public boolean hasFeature(int feature) {
+        return (features & feature) == feature;
+    }
+
+    /**
+     * Returns capabilities, that are supported by both this and {@code other} peer
+     */
+    @NotNull
+    public Capabilities intersect(@NotNull Capabilities other) {
+        return new Capabilities(
+                Math.min(protocolVersion, other.protocolVersion),
+                contractTypes & other.contractTypes,
+                features & other.features,
+                Math.min(maxBatchSize, other.maxBatchSize)
+        );
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (other == null || getClass() != other.getClass()) return false;
+
+        Capabilities o = (Capabilities) other;
+
+        return protocolVersion == o.protocolVersion &&
+                contractTypes == o.contractTypes &&
+                features == o.features &&
+                maxBatchSize == o.maxBatchSize;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = protocolVersion;
+        result = 31 * result + contractTypes;
+        result = 31 * result + features;
+        result = 31 * result + maxBatchSize;
+
+        return result;
+    }
+
+    @Override
+    public void append(@NotNull StringBuilder sb) {
+        sb.append("{protocolVersion=");
+        sb.append(protocolVersion);
+        sb.append(", contractTypes=");
+        sb.append(contractTypes);
+        sb.append(", features=");
+        sb.append(features);
+        sb.append(", maxBatchSize=");
+        sb.append(maxBatchSize);
+        sb.append('}');
+    }
+
+    private static final class Serializer implements ObjectSerializer<Capabilities> {
+        @Override
+        public int getSerializedObjectSize(@NotNull Capabilities value) {
+            return 16;
+        }
+
+        @Override
+        public void writeObject(@NotNull Capabilities value, @NotNull ValueWriter writer) {
+            writer.int32(value.protocolVersion);
+            writer.int32(value.contractTypes);
+            writer.int32(value.features);
+            writer.int32(value.maxBatchSize);
+        }
+
+        @NotNull
+        @Override
+        public Capabilities readObject(@NotNull ValueReader reader) throws ValidationException {
+            int protocolVersion = reader.int32();
+            int contractTypes = reader.int32();
+            int features = reader.int32();
+            int maxBatchSize = reader.int32();
+
+            return new Capabilities(protocolVersion, contractTypes, features, maxBatchSize);
+        }
+    }
+}
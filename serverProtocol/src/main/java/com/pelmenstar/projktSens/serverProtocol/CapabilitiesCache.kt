@@ -0,0 +1,67 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+import java.net.InetSocketAddress
+
+/**
+ * Keeps capabilities negotiated with servers (see [Commands.HELLO]), so that negotiation happens only once per address.
+ * Shared between all the clients and [ProjktSensServerChecker]
+ */
+internal object CapabilitiesCache {
+    private const val MAX_SIZE = 64
+
+    private val entries = LinkedHashMap<InetSocketAddress, Capabilities>()
+
+    fun get(address: InetSocketAddress): Capabilities? {
+        return synchronized(entries) { entries[address] }
+    }
+
+    fun put(address: InetSocketAddress, capabilities: Capabilities) {
+        synchronized(entries) {
+            entries[address] = capabilities
+
+            // addresses are usually the same, so simple limit is enough to not grow forever
+            if (entries.size > MAX_SIZE) {
+                val iterator = entries.keys.iterator()
+                iterator.next()
+                iterator.remove()
+            }
+        }
+    }
+
+    fun remove(address: InetSocketAddress) {
+        synchronized(entries) {
+            entries.remove(address)
+        }
+    }
+
+    /**
+     * Returns capabilities supported by both client using [contract] and server, that answered [Commands.HELLO]
+     * with [response]. If server doesn't support the command, its capabilities are [Capabilities.legacy].
+     * Returns null if server failed to answer, so nothing is known about it
+     */
+    fun negotiate(contract: Contract, response: Response): Capabilities? {
+        val contractType = contractTypeOf(contract)
+
+        return when (response) {
+            is Response.Ok<*> -> Capabilities.current(contractType).intersect(response.value as Capabilities)
+            is Response.Error -> if (response.error == Errors.INVALID_COMMAND) Capabilities.legacy(contractType) else null
+            else -> Capabilities.legacy(contractType)
+        }
+    }
+
+    /**
+     * Returns contract, by which batch to the server, that doesn't support batch flags or capabilities of which
+     * aren't known yet, should be written. Such a batch has no flags, so that server, that doesn't know them, can read it
+     */
+    fun probeContract(contract: Contract): Contract {
+        return if (contract === CompactContract) RawContract else contract
+    }
+
+    private fun contractTypeOf(contract: Contract): Int {
+        return when (contract) {
+            MultiplexedContract -> ContractType.MULTIPLEXED
+            CompactContract -> ContractType.COMPACT
+            else -> ContractType.RAW
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+/**
+ * Value of chunked response, that is returned by [Client.requestChunked]
+ */
+sealed class ChunkedValue<out C : Any, out F : Any> {
+    class Chunk<out C : Any>(val value: C) : ChunkedValue<C, Nothing>()
+
+    /**
+     * The last value of chunked response. [value] is null if server answered with empty response
+     */
+    class Final<out F : Any>(val value: F?) : ChunkedValue<Nothing, F>()
+}
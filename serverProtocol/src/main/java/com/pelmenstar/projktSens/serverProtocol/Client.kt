@@ -1,20 +1,42 @@
 package com.pelmenstar.projktSens.serverProtocol
 
-import android.os.Build
-import androidx.annotation.RequiresApi
-import com.pelmenstar.projktSens.shared.connectSuspend
-import com.pelmenstar.projktSens.shared.io.Input
-import com.pelmenstar.projktSens.shared.io.Output
-import java.io.IOException
-import java.net.Socket
-import java.nio.channels.AsynchronousSocketChannel
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.awaitCancellation
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.launch
+import java.net.InetSocketAddress
+import kotlin.math.max
 
 /**
- * Represents client for repo-server
+ * Represents client for repo-server.
+ * Connections to the server are shared between all the clients and reused (see [ConnectionPool])
+ *
+ * If [cache] is specified, values of responses are taken from it when possible and mutable ones
+ * expire after [ProtoConfig.weatherChannelReceiveInterval].
+ *
+ * Concurrent single requests (see [requestRawResponse]) that are equal and sent to the same server
+ * share one network call, even if they're made by different clients, as long as the clients use the same contract and cache.
+ *
+ * Requests rejected with [Errors.RATE_LIMITED] are repeated with backoff, see [requestMultipleFromServer].
+ *
+ * Capabilities of the server are negotiated once per address by [getCapabilities] before the first batch is sent.
+ * Batches larger than [Capabilities.maxBatchSize] are split. Batch flags are sent only if server supports
+ * [Capabilities.FEATURE_KEEP_CONNECTION], otherwise batches are written in the first version of the format and
+ * every batch uses its own connection. Values are asked to be compact only if server supports
+ * [Capabilities.FEATURE_COMPACT_VALUES]. Data versions of requests are sent only if it supports
+ * [Capabilities.FEATURE_DATA_VERSIONS], otherwise the requests are sent unconditionally, and masks of parameters
+ * are sent only if it supports [Capabilities.FEATURE_PROJECTION], otherwise full reports are requested.
+ * Requests of commands, that server doesn't support (see [requiredFeature]), aren't sent
+ * and are answered with [Errors.INVALID_COMMAND].
  */
-class Client(config: ProtoConfig, private val forceBlocking: Boolean = false) {
+class Client(config: ProtoConfig, forceBlocking: Boolean = false, private val cache: ResponseCache? = null) {
     private val contract = config.contract
     private val address = config.socketAddress
+    private val cacheTimeToLive = config.weatherChannelReceiveInterval
+    private val pool = if (forceBlocking) ConnectionPool.BLOCKING else ConnectionPool.ASYNC
 
     suspend inline fun <T : Any> request(command: Int, responseValueClass: Class<T>): T? {
         return request(Request(command), responseValueClass)
@@ -48,7 +70,8 @@ class Client(config: ProtoConfig, private val forceBlocking: Boolean = false) {
     private fun handleRawResponse(response: Response): Any? {
         return when(response) {
             Response.Empty -> null
-            is Response.Error -> throw ServerException(response.error)
+            Response.NotModified -> throw IllegalStateException("Unexpected NotModified response")
+            is Response.Error -> throw ServerException(response.error, response.retryAfterMillis)
             is Response.Ok<*> -> response.value
         }
     }
@@ -68,44 +91,446 @@ class Client(config: ProtoConfig, private val forceBlocking: Boolean = false) {
         requests: Array<Request>,
         valueClasses: Array<Class<*>>
     ): Array<Response> {
-        return if(Build.VERSION.SDK_INT >= 26 && !forceBlocking) {
-            requestMultipleRawAsync(requests, valueClasses)
-        } else {
-            requestMultipleRawBlocking(requests, valueClasses)
+        val cache = cache ?: return requestMultipleFromServer(requests, valueClasses)
+
+        val responses = arrayOfNulls<Response>(requests.size)
+        var missCount = 0
+
+        for (i in requests.indices) {
+            val value = cache.get(address, requests[i])
+
+            if (value != null && valueClasses[i].isInstance(value)) {
+                responses[i] = Response.ok(value)
+            } else {
+                missCount++
+            }
+        }
+
+        if (missCount > 0) {
+            val missIndices = IntArray(missCount)
+            var missIndex = 0
+
+            for (i in responses.indices) {
+                if (responses[i] == null) {
+                    missIndices[missIndex++] = i
+                }
+            }
+
+            // expired values with known data version are revalidated instead of being transferred again.
+            // If request already has the version, it's sent as is and NotModified is returned to the caller
+            val fetched = requestMultipleFromServer(
+                Array(missCount) {
+                    val request = requests[missIndices[it]]
+
+                    if (request.ifDataVersionDiffers == Request.NO_DATA_VERSION) {
+                        request.withDataVersion(cache.getDataVersion(address, request))
+                    } else {
+                        request
+                    }
+                },
+                Array(missCount) { valueClasses[missIndices[it]] }
+            )
+
+            var evictedCount = 0
+
+            for ((i, response) in fetched.withIndex()) {
+                val index = missIndices[i]
+
+                when (response) {
+                    Response.NotModified -> {
+                        if (requests[index].ifDataVersionDiffers != Request.NO_DATA_VERSION) {
+                            responses[index] = response
+                            continue
+                        }
+
+                        val value = cache.revalidate(address, requests[index], cacheTimeToLive)
+
+                        if (value != null) {
+                            responses[index] = Response.ok(value)
+                        } else {
+                            missIndices[evictedCount++] = index
+                        }
+                    }
+                    is Response.Ok<*> -> {
+                        responses[index] = response
+                        cache.put(address, requests[index], response.value, cacheTimeToLive, response.dataVersion)
+                    }
+                    else -> responses[index] = response
+                }
+            }
+
+            // value was evicted between sending the request and receiving NotModified, so it's requested unconditionally
+            if (evictedCount > 0) {
+                val refetched = requestMultipleFromServer(
+                    Array(evictedCount) { requests[missIndices[it]] },
+                    Array(evictedCount) { valueClasses[missIndices[it]] }
+                )
+
+                for ((i, response) in refetched.withIndex()) {
+                    val index = missIndices[i]
+                    responses[index] = response
+
+                    if (response is Response.Ok<*>) {
+                        cache.put(address, requests[index], response.value, cacheTimeToLive, response.dataVersion)
+                    }
+                }
+            }
         }
+
+        @Suppress("UNCHECKED_CAST")
+        return responses as Array<Response>
     }
 
-    @RequiresApi(26)
-    private suspend fun requestMultipleRawAsync(
+    /**
+     * Sends [requests] to the server. Requests rejected with [Errors.RATE_LIMITED] are repeated
+     * after the greater of server's retry-after hint and exponential backoff, at most [MAX_RATE_LIMITED_RETRIES] times.
+     * If server asks to wait longer than [MAX_RATE_LIMITED_DELAY_MILLIS], the error is returned as is.
+     */
+    private suspend fun requestMultipleFromServer(
         requests: Array<Request>,
         valueClasses: Array<Class<*>>
     ): Array<Response> {
-        return AsynchronousSocketChannel.open().use { channel ->
-            channel.connectSuspend(address, 5000)
+        val responses = sendRequests(requests, valueClasses)
+
+        for (attempt in 0 until MAX_RATE_LIMITED_RETRIES) {
+            var limitedCount = 0
+            var retryAfter = 0
+
+            for (response in responses) {
+                if (response is Response.Error && response.error == Errors.RATE_LIMITED) {
+                    limitedCount++
+                    retryAfter = max(retryAfter, response.retryAfterMillis)
+                }
+            }
+
+            if (limitedCount == 0 || retryAfter > MAX_RATE_LIMITED_DELAY_MILLIS) {
+                break
+            }
 
-            val input = Input.of(channel)
-            val output = Output.of(channel)
+            delay(max(retryAfter.toLong(), RATE_LIMITED_BACKOFF_MILLIS shl attempt))
 
-            contract.writeRequests(requests, output)
+            val limitedIndices = IntArray(limitedCount)
+            var limitedIndex = 0
 
-            contract.readResponses(input, valueClasses)
+            for ((i, response) in responses.withIndex()) {
+                if (response is Response.Error && response.error == Errors.RATE_LIMITED) {
+                    limitedIndices[limitedIndex++] = i
+                }
+            }
+
+            val retried = sendRequests(
+                Array(limitedCount) { requests[limitedIndices[it]] },
+                Array(limitedCount) { valueClasses[limitedIndices[it]] }
+            )
+
+            for ((i, response) in retried.withIndex()) {
+                responses[limitedIndices[i]] = response
+            }
         }
+
+        return responses
     }
 
-    private suspend fun requestMultipleRawBlocking(
+    private suspend fun sendRequests(
         requests: Array<Request>,
         valueClasses: Array<Class<*>>
     ): Array<Response> {
-        return Socket().use { socket ->
-            socket.connect(address, 5000)
+        // server of multiplexed contract isn't of the first version, so there's nothing to negotiate before the batch
+        val capabilities = if (contract === MultiplexedContract) CapabilitiesCache.get(address) else getCapabilities()
+
+        if (capabilities == null) {
+            return sendSupportedRequests(requests, valueClasses, null)
+        }
+
+        var supportedCount = 0
+        for (request in requests) {
+            if (capabilities.hasFeature(requiredFeature(request.command))) {
+                supportedCount++
+            }
+        }
+
+        if (supportedCount == requests.size) {
+            return sendSupportedRequests(requests, valueClasses, capabilities)
+        }
+
+        // server can't read arguments of commands, that it doesn't support, and would reject the whole batch,
+        // so such requests aren't sent and are answered here
+        val responses = arrayOfNulls<Response>(requests.size)
+        val supportedIndices = IntArray(supportedCount)
+        var supportedIndex = 0
+
+        for ((i, request) in requests.withIndex()) {
+            if (capabilities.hasFeature(requiredFeature(request.command))) {
+                supportedIndices[supportedIndex++] = i
+            } else {
+                responses[i] = Response.error(Errors.INVALID_COMMAND)
+            }
+        }
+
+        if (supportedCount > 0) {
+            val supportedResponses = sendSupportedRequests(
+                Array(supportedCount) { requests[supportedIndices[it]] },
+                Array(supportedCount) { valueClasses[supportedIndices[it]] },
+                capabilities
+            )
+
+            for ((i, response) in supportedResponses.withIndex()) {
+                responses[supportedIndices[i]] = response
+            }
+        }
+
+        @Suppress("UNCHECKED_CAST")
+        return responses as Array<Response>
+    }
+
+    private suspend fun sendSupportedRequests(
+        requests: Array<Request>,
+        valueClasses: Array<Class<*>>,
+        capabilities: Capabilities?
+    ): Array<Response> {
+        val maxBatchSize = capabilities?.maxBatchSize ?: Int.MAX_VALUE
+
+        if (requests.size <= maxBatchSize) {
+            return sendBatch(requests, valueClasses, capabilities)
+        }
 
-            val input = Input.of(socket)
-            val output = Output.of(socket)
+        val responses = arrayOfNulls<Response>(requests.size)
 
-            contract.writeRequests(requests, output)
+        for (start in requests.indices step maxBatchSize) {
+            val end = minOf(start + maxBatchSize, requests.size)
+            val batchResponses = sendBatch(
+                requests.copyOfRange(start, end),
+                valueClasses.copyOfRange(start, end),
+                capabilities
+            )
 
-            contract.readResponses(input, valueClasses)
+            batchResponses.copyInto(responses, start)
         }
+
+        @Suppress("UNCHECKED_CAST")
+        return responses as Array<Response>
+    }
+
+    private suspend fun sendBatch(
+        requests: Array<Request>,
+        valueClasses: Array<Class<*>>,
+        capabilities: Capabilities?
+    ): Array<Response> {
+        val batch = readableRequests(requests, capabilities)
+
+        if (contract === MultiplexedContract) {
+            return pool.requestMultiplexed(address, batch, valueClasses)
+        }
+
+        // server, that doesn't support batch flags, can't read them and closes connection after the responses
+        if (capabilities == null || !capabilities.hasFeature(Capabilities.FEATURE_KEEP_CONNECTION)) {
+            val probeContract = CapabilitiesCache.probeContract(contract)
+
+            return pool.useOnce(address) { connection ->
+                probeContract.writeRequests(batch, connection.output)
+
+                probeContract.readResponses(connection.input, valueClasses)
+            }
+        }
+
+        val batchContract = batchContract(capabilities)
+
+        return pool.use(address) { connection ->
+            batchContract.writeRequests(batch, connection.output, RequestBatch.FLAG_KEEP_CONNECTION)
+
+            batchContract.readResponses(connection.input, valueClasses)
+        }
+    }
+
+    /**
+     * Returns feature, without which server can't read request with given [command], or 0 if every server can read it
+     */
+    private fun requiredFeature(command: Int): Int {
+        return when (command) {
+            Commands.GET_WEATHER_SINCE -> Capabilities.FEATURE_WEATHER_SINCE
+            Commands.GET_SERIES -> Capabilities.FEATURE_SERIES
+            else -> 0
+        }
+    }
+
+    /**
+     * Returns contract, by which batch to the server with given [capabilities] is written.
+     * Compact values are asked only if server can write them, otherwise the batch is the same, but without the flag
+     */
+    private fun batchContract(capabilities: Capabilities): Contract {
+        if (contract === CompactContract && !capabilities.hasFeature(Capabilities.FEATURE_COMPACT_VALUES)) {
+            return RawContract
+        }
+
+        return contract
+    }
+
+    /**
+     * Returns [requests] without parts, that server with given [capabilities] can't read and would reject
+     * the whole batch because of: data versions are dropped without [Capabilities.FEATURE_DATA_VERSIONS]
+     * and masks of parameters are dropped without [Capabilities.FEATURE_PROJECTION]
+     */
+    private fun readableRequests(requests: Array<Request>, capabilities: Capabilities?): Array<Request> {
+        if (capabilities == null) {
+            return requests
+        }
+
+        val keepDataVersions = capabilities.hasFeature(Capabilities.FEATURE_DATA_VERSIONS)
+        val keepParameters = capabilities.hasFeature(Capabilities.FEATURE_PROJECTION)
+
+        if (keepDataVersions && keepParameters) {
+            return requests
+        }
+
+        return Array(requests.size) { i ->
+            var request = requests[i]
+
+            if (!keepDataVersions && request.ifDataVersionDiffers != Request.NO_DATA_VERSION) {
+                request = request.withDataVersion(Request.NO_DATA_VERSION)
+            }
+
+            if (!keepParameters && request.parameters != Request.ALL_PARAMETERS) {
+                request = request.withParameters(Request.ALL_PARAMETERS)
+            }
+
+            request
+        }
+    }
+
+    /**
+     * Sends streaming [request] (see [Commands.isStreaming]) and emits every value the server pushes in response.
+     * The stream uses its own connection, which is closed when the flow collection is completed or cancelled.
+     *
+     * @throws ServerException with [Errors.INVALID_COMMAND] if server doesn't support
+     * [Capabilities.FEATURE_PUSH_SUBSCRIPTIONS], nothing is sent in that case
+     */
+    fun <T : Any> stream(request: Request, valueClass: Class<T>): Flow<T?> {
+        return flow {
+            val capabilities = requireFeature(Capabilities.FEATURE_PUSH_SUBSCRIPTIONS)
+            val streamContract = batchContract(capabilities)
+            val requests = readableRequests(arrayOf(request), capabilities)
+            val connection = pool.connect(address)
+
+            coroutineScope {
+                // Closing the connection interrupts read, which might wait for next value very long.
+                launch(start = CoroutineStart.UNDISPATCHED) {
+                    try {
+                        awaitCancellation()
+                    } finally {
+                        connection.close()
+                    }
+                }
+
+                streamContract.writeRequests(requests, connection.output)
+
+                while (true) {
+                    emit(handleRawResponseCast<T>(streamContract.readStreamValue(connection.input, valueClass)))
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends [request] with [RequestBatch.FLAG_CHUNKED_RESPONSE] and emits chunks of the response value as soon as they
+     * arrive. The last emitted value is [ChunkedValue.Final], which contains the rest of the response.
+     *
+     * @throws ServerException if server answered with error. Error is [Errors.INVALID_COMMAND] if server doesn't support
+     * [Capabilities.FEATURE_CHUNKED_RESPONSES], nothing is sent in that case
+     */
+    fun <C : Any, F : Any> requestChunked(
+        request: Request,
+        chunkClass: Class<C>,
+        finalValueClass: Class<F>
+    ): Flow<ChunkedValue<C, F>> {
+        return flow {
+            val capabilities = requireFeature(Capabilities.FEATURE_CHUNKED_RESPONSES)
+            val chunkedContract = batchContract(capabilities)
+            val requests = readableRequests(arrayOf(request), capabilities)
+            var hasChunks = false
+
+            pool.use(address, canRetry = { !hasChunks }) { connection ->
+                chunkedContract.writeRequests(
+                    requests,
+                    connection.output,
+                    RequestBatch.FLAG_KEEP_CONNECTION or RequestBatch.FLAG_CHUNKED_RESPONSE
+                )
+
+                while (true) {
+                    when (val part = chunkedContract.readResponsePart(connection.input, chunkClass, finalValueClass)) {
+                        is ResponsePart.Chunk -> {
+                            hasChunks = true
+
+                            emit(ChunkedValue.Chunk(chunkClass.cast(part.value)))
+                        }
+                        is ResponsePart.Final -> {
+                            emit(ChunkedValue.Final(handleRawResponseCast<F>(part.response)))
+                            break
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns capabilities supported by both this client and the server. They're negotiated by [Commands.HELLO]
+     * once per address and shared by all the clients.
+     *
+     * @throws ServerException if server failed to answer
+     */
+    suspend fun getCapabilities(): Capabilities {
+        CapabilitiesCache.get(address)?.let { return it }
+
+        val response = inFlightRequests.run(inFlightKey(HELLO_REQUEST, Capabilities::class.java)) {
+            requestHello()
+        }
+        val capabilities = CapabilitiesCache.negotiate(contract, response)
+            ?: throw ServerException((response as Response.Error).error, response.retryAfterMillis)
+
+        CapabilitiesCache.put(address, capabilities)
+
+        return capabilities
+    }
+
+    /**
+     * Returns capabilities of the server, if it supports given [feature], otherwise throws [ServerException]
+     * with [Errors.INVALID_COMMAND], as server, that doesn't support the feature, would answer
+     */
+    private suspend fun requireFeature(feature: Int): Capabilities {
+        val capabilities = getCapabilities()
+
+        if (!capabilities.hasFeature(feature)) {
+            throw ServerException(Errors.INVALID_COMMAND)
+        }
+
+        return capabilities
+    }
+
+    // HELLO is sent before anything is known about the server, so it's written without batch flags
+    // and the connection isn't reused, as server of the first version closes it after the response
+    private suspend fun requestHello(): Response {
+        val requests = arrayOf(HELLO_REQUEST)
+        val valueClasses = arrayOf<Class<*>>(Capabilities::class.java)
+
+        if (contract === MultiplexedContract) {
+            return pool.requestMultiplexed(address, requests, valueClasses)[0]
+        }
+
+        val probeContract = CapabilitiesCache.probeContract(contract)
+
+        return pool.useOnce(address) { connection ->
+            probeContract.writeRequests(requests, connection.output)
+
+            probeContract.readResponses(connection.input, valueClasses)[0]
+        }
+    }
+
+    /**
+     * Forgets capabilities negotiated with the server, so they're negotiated again on the next [getCapabilities].
+     * Should be called when server might have been updated
+     */
+    fun forgetCapabilities() {
+        CapabilitiesCache.remove(address)
     }
 
     suspend inline fun <reified T : Any> requestRawResponse(command: Int): Response {
@@ -129,6 +554,55 @@ class Client(config: ProtoConfig, private val forceBlocking: Boolean = false) {
     }
 
     suspend fun requestRawResponse(request: Request, responseValueClass: Class<*>): Response {
-        return requestMultipleRaw(arrayOf(request), arrayOf(responseValueClass))[0]
+        return inFlightRequests.run(inFlightKey(request, responseValueClass)) {
+            requestMultipleRaw(arrayOf(request), arrayOf(responseValueClass))[0]
+        }
+    }
+
+    // response is read by the contract and might be taken from or put to the cache,
+    // so only clients with the same ones can share it
+    private fun inFlightKey(request: Request, valueClass: Class<*>): InFlightKey {
+        return InFlightKey(address, contract, cache, request, valueClass)
+    }
+
+    private class InFlightKey(
+        val address: InetSocketAddress,
+        val contract: Contract,
+        val cache: ResponseCache?,
+        val request: Request,
+        val valueClass: Class<*>
+    ) {
+        override fun equals(other: Any?): Boolean {
+            if (this === other) return true
+            if (other == null || javaClass != other.javaClass) return false
+
+            other as InFlightKey
+
+            return address == other.address &&
+                    contract === other.contract &&
+                    cache === other.cache &&
+                    request == other.request &&
+                    valueClass == other.valueClass
+        }
+
+        override fun hashCode(): Int {
+            var result = address.hashCode()
+            result = 31 * result + System.identityHashCode(contract)
+            result = 31 * result + System.identityHashCode(cache)
+            result = 31 * result + request.hashCode()
+            result = 31 * result + valueClass.hashCode()
+
+            return result
+        }
+    }
+
+    companion object {
+        private const val MAX_RATE_LIMITED_RETRIES = 3
+        private const val RATE_LIMITED_BACKOFF_MILLIS = 250L
+        private const val MAX_RATE_LIMITED_DELAY_MILLIS = 5000
+
+        private val HELLO_REQUEST = Request(Commands.HELLO)
+
+        private val inFlightRequests = SingleFlight<InFlightKey, Response>()
     }
 }
\ No newline at end of file
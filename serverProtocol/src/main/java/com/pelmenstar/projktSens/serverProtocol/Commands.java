@@ -33,7 +33,44 @@ public final class Commands {
 
     public static final int GET_MAGIC_NUMBER = 6;
 
-    private static final int MAX_COMMAND = GET_MAGIC_NUMBER;
+    /**
+     * Makes repo-server to open response stream, where last weather is pushed at first
+     * and then every new weather, as soon as it's stored.
+     * This command should be sent as the only request in the batch.
+     */
+    public static final int SUBSCRIBE_WEATHER = 7;
+
+    /**
+     * Makes repo-server to return page of weather records stored after given epoch second
+     * (argument is {@link Request.Argument.LongInteger}).
+     * Response is {@code WeatherInfoPage}, next page should be requested after its last epoch second if it has more records.
+     * It lets client keep its own copy of the data in sync by pulling only new records.
+     */
+    public static final int GET_WEATHER_SINCE = 8;
+
+    /**
+     * Makes repo-server to return weather in given date range aggregated to buckets of given width
+     * (argument is {@link Request.Argument.BucketedDateRange}).
+     * Response is {@code WeatherSeries}, it has at most one point per bucket whatever the sampling rate is,
+     * so it's suitable for charts.
+     */
+    public static final int GET_SERIES = 9;
+
+    /**
+     * Makes repo-server to return day reports of all the days in given date range
+     * (argument is {@link Request.Argument.DateRange}).
+     * Response is {@code DayReportList}, days without data have no report.
+     * It lets client prefetch a week or month of detailed reports in one round trip.
+     */
+    public static final int GET_DAY_REPORTS = 10;
+
+    /**
+     * Makes repo-server to return what it supports, response is {@link Capabilities}.
+     * Server, that doesn't know this command, answers with {@link Errors#INVALID_COMMAND}.
+     */
+    public static final int HELLO = 11;
+
+    private static final int MAX_COMMAND = HELLO;
 
     private static final @NotNull String @NotNull [] COMMAND_NAMES = new String[]{
             "GET_DAY_REPORT",
@@ -41,9 +78,32 @@ public final class Commands {
             "GET_AVAILABLE_DATE_RANGE",
             "GET_LAST_WEATHER",
             "GET_NEXT_WEATHER_TIME",
-            "GET_MAGIC_NUMBER"
+            "GET_MAGIC_NUMBER",
+            "SUBSCRIBE_WEATHER",
+            "GET_WEATHER_SINCE",
+            "GET_SERIES",
+            "GET_DAY_REPORTS",
+            "HELLO"
     };
 
+    /**
+     * Determines whether response on {@code command} is a stream of values rather than single value
+     */
+    public static boolean isStreaming(int command) {
+        return command == SUBSCRIBE_WEATHER;
+    }
+
+    /**
+     * Determines whether response on {@code command} depends only on data of weather repository,
+     * so it's the same until the data is changed (see {@link Request#getIfDataVersionDiffers()})
+     */
+    public static boolean isDataDependent(int command) {
+        return (command >= GET_DAY_REPORT && command <= GET_LAST_WEATHER) ||
+                command == GET_WEATHER_SINCE ||
+                command == GET_SERIES ||
+                command == GET_DAY_REPORTS;
+    }
+
     public static int fromString(@NotNull String commandName) {
         for (int i = 0; i < COMMAND_NAMES.length; i++) {
             if (COMMAND_NAMES[i].equalsIgnoreCase(commandName)) {
@@ -0,0 +1,44 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+import com.pelmenstar.projktSens.shared.io.Input
+import com.pelmenstar.projktSens.shared.io.Output
+
+/**
+ * The same as [RawContract], but client asks server to write response values by compact serializers
+ * (see [RequestBatch.FLAG_COMPACT_VALUES]). Large reports become several times smaller, but values are quantized.
+ *
+ * If server doesn't support compact values, it answers with raw ones, which are read as well.
+ */
+object CompactContract : Contract {
+    override suspend fun writeRequests(requests: Array<Request>, output: Output, flags: Int) {
+        RawContract.writeRequests(requests, output, flags or RequestBatch.FLAG_COMPACT_VALUES)
+    }
+
+    override suspend fun readRequestBatch(input: Input): RequestBatch {
+        return RawContract.readRequestBatch(input)
+    }
+
+    override suspend fun writeResponses(responses: Array<Response>, output: Output) {
+        RawContract.writeResponses(responses, output)
+    }
+
+    override suspend fun writeResponses(responses: Array<Response>, output: Output, requestFlags: Int) {
+        RawContract.writeResponses(responses, output, requestFlags)
+    }
+
+    override suspend fun readResponses(input: Input, valueClasses: Array<Class<*>>): Array<Response> {
+        return RawContract.readResponses(input, valueClasses)
+    }
+
+    override suspend fun writeResponseChunk(chunk: Any, output: Output, requestFlags: Int) {
+        RawContract.writeResponseChunk(chunk, output, requestFlags)
+    }
+
+    override suspend fun readResponsePart(
+        input: Input,
+        chunkClass: Class<*>,
+        finalValueClass: Class<*>
+    ): ResponsePart {
+        return RawContract.readResponsePart(input, chunkClass, finalValueClass)
+    }
+}
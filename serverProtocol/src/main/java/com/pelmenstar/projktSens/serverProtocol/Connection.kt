@@ -0,0 +1,80 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+import androidx.annotation.RequiresApi
+import com.pelmenstar.projktSens.shared.connectSuspend
+import com.pelmenstar.projktSens.shared.io.Input
+import com.pelmenstar.projktSens.shared.io.Output
+import java.io.Closeable
+import java.net.InetSocketAddress
+import java.net.Socket
+import java.nio.channels.AsynchronousSocketChannel
+
+/**
+ * Represents opened client connection to repo-server.
+ * Hides whether connection is based on blocking [Socket] or on [AsynchronousSocketChannel].
+ */
+internal abstract class Connection : Closeable {
+    abstract val input: Input
+    abstract val output: Output
+
+    /**
+     * Epoch millis when the connection was returned to the pool last time
+     */
+    @JvmField
+    var lastUsedTime: Long = 0
+
+    abstract fun isOpen(): Boolean
+
+    private class OfSocket(private val socket: Socket) : Connection() {
+        override val input = Input.of(socket)
+        override val output = Output.of(socket)
+
+        override fun isOpen(): Boolean {
+            return !socket.isClosed && socket.isConnected &&
+                    !socket.isInputShutdown && !socket.isOutputShutdown
+        }
+
+        override fun close() {
+            socket.close()
+        }
+    }
+
+    @RequiresApi(26)
+    private class OfAsyncChannel(private val channel: AsynchronousSocketChannel) : Connection() {
+        override val input = Input.of(channel)
+        override val output = Output.of(channel)
+
+        override fun isOpen(): Boolean = channel.isOpen
+
+        override fun close() {
+            channel.close()
+        }
+    }
+
+    companion object {
+        fun openBlocking(address: InetSocketAddress, timeout: Int): Connection {
+            val socket = Socket()
+            try {
+                socket.connect(address, timeout)
+            } catch (e: Exception) {
+                socket.close()
+                throw e
+            }
+
+            return OfSocket(socket)
+        }
+
+        @RequiresApi(26)
+        suspend fun openAsync(address: InetSocketAddress, timeout: Int): Connection {
+            val channel = AsynchronousSocketChannel.open()
+            try {
+                channel.connectSuspend(address, timeout)
+            } catch (e: Exception) {
+                channel.close()
+                throw e
+            }
+
+            return OfAsyncChannel(channel)
+        }
+    }
+}
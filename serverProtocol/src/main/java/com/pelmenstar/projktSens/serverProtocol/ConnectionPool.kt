@@ -0,0 +1,222 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+import android.os.Build
+import kotlinx.coroutines.CoroutineName
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.io.IOException
+import java.net.InetSocketAddress
+
+/**
+ * Keeps long-lived connections to repo-servers, so that every request doesn't need to pay for TCP connect.
+ *
+ * Idle connections are stored per address, count of them is bounded by [MAX_IDLE_CONNECTIONS_PER_ADDRESS].
+ * Connections, that are idle for more than [IDLE_TIMEOUT_MILLIS] or closed by other side, are evicted.
+ * If request on pooled connection fails with [IOException] (for example, server has closed the connection),
+ * the request is transparently repeated on new connection.
+ *
+ * For [MultiplexedContract] there's single shared connection per address (see [MultiplexedConnection]).
+ */
+internal class ConnectionPool private constructor(private val blocking: Boolean) {
+    private val idleConnections = HashMap<InetSocketAddress, ArrayList<Connection>>()
+    private val multiplexedConnections = HashMap<InetSocketAddress, MultiplexedConnection>()
+    private val lock = Any()
+    private val multiplexedConnectMutex = Mutex()
+
+    // failure of one reader shouldn't cancel readers of other connections. Each reader is cancelled when its connection is closed
+    private val readerScope = CoroutineScope(SupervisorJob() + Dispatchers.IO + CoroutineName("ConnectionPool"))
+
+    /**
+     * Runs [block] on idle or new connection to given [address]. If [block] fails with [IOException] on pooled connection,
+     * it's repeated on new connection, but only if [canRetry] returns true
+     * (for example, when results of the first run were already exposed).
+     */
+    suspend fun <T> use(
+        address: InetSocketAddress,
+        canRetry: () -> Boolean = { true },
+        block: suspend (Connection) -> T
+    ): T {
+        val pooled = acquireIdle(address)
+        if (pooled != null) {
+            try {
+                val result = block(pooled)
+                release(address, pooled)
+
+                return result
+            } catch (e: IOException) {
+                // Connection might be closed by server while it was idle, try again on new connection
+                pooled.close()
+
+                if (!canRetry()) {
+                    throw e
+                }
+            } catch (e: Throwable) {
+                pooled.close()
+                throw e
+            }
+        }
+
+        val connection = connect(address)
+        try {
+            val result = block(connection)
+            release(address, connection)
+
+            return result
+        } catch (e: Throwable) {
+            connection.close()
+            throw e
+        }
+    }
+
+    /**
+     * Runs [block] on new connection to given [address], which is closed after that.
+     * Used for servers, that close connection after the responses are sent (see [RequestBatch.FLAG_KEEP_CONNECTION])
+     */
+    suspend fun <T> useOnce(address: InetSocketAddress, block: suspend (Connection) -> T): T {
+        return connect(address).use { block(it) }
+    }
+
+    /**
+     * Sends [requests] through shared [MultiplexedConnection] to given [address].
+     * Many callers can wait for responses on the same connection simultaneously.
+     */
+    suspend fun requestMultiplexed(
+        address: InetSocketAddress,
+        requests: Array<Request>,
+        valueClasses: Array<Class<*>>
+    ): Array<Response> {
+        val existing = synchronized(lock) {
+            multiplexedConnections[address]?.takeIf { it.isOpen() }
+        }
+
+        if (existing != null) {
+            try {
+                return existing.request(requests, valueClasses)
+            } catch (e: IOException) {
+                // Connection might be closed by server, try again on new connection
+            }
+        }
+
+        return connectMultiplexed(address).request(requests, valueClasses)
+    }
+
+    private suspend fun connectMultiplexed(address: InetSocketAddress): MultiplexedConnection {
+        // Callers, that came simultaneously, should share one new connection instead of opening their own ones
+        return multiplexedConnectMutex.withLock {
+            synchronized(lock) {
+                multiplexedConnections[address]?.takeIf { it.isOpen() }
+            } ?: MultiplexedConnection(connect(address), readerScope).also {
+                synchronized(lock) {
+                    multiplexedConnections[address] = it
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens new connection, which is not tracked by the pool
+     */
+    suspend fun connect(address: InetSocketAddress): Connection {
+        return if (!blocking && Build.VERSION.SDK_INT >= 26) {
+            Connection.openAsync(address, CONNECT_TIMEOUT)
+        } else {
+            Connection.openBlocking(address, CONNECT_TIMEOUT)
+        }
+    }
+
+    private fun acquireIdle(address: InetSocketAddress): Connection? {
+        synchronized(lock) {
+            evictExpired(System.currentTimeMillis())
+
+            val connections = idleConnections[address] ?: return null
+
+            // most recently used connection is the most likely to be still alive
+            return if (connections.isNotEmpty()) connections.removeAt(connections.size - 1) else null
+        }
+    }
+
+    private fun release(address: InetSocketAddress, connection: Connection) {
+        if (!connection.isOpen()) {
+            connection.close()
+            return
+        }
+
+        val now = System.currentTimeMillis()
+        connection.lastUsedTime = now
+
+        synchronized(lock) {
+            evictExpired(now)
+
+            val connections = idleConnections.getOrPut(address) { ArrayList(MAX_IDLE_CONNECTIONS_PER_ADDRESS) }
+            if (connections.size < MAX_IDLE_CONNECTIONS_PER_ADDRESS) {
+                connections.add(connection)
+
+                return
+            }
+        }
+
+        connection.close()
+    }
+
+    private fun evictExpired(now: Long) {
+        val iterator = idleConnections.values.iterator()
+
+        while (iterator.hasNext()) {
+            val connections = iterator.next()
+
+            connections.removeAll { connection ->
+                val expired = !connection.isOpen() || now - connection.lastUsedTime > IDLE_TIMEOUT_MILLIS
+                if (expired) {
+                    connection.close()
+                }
+
+                expired
+            }
+
+            if (connections.isEmpty()) {
+                iterator.remove()
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections
+     */
+    fun clear() {
+        synchronized(lock) {
+            for (connections in idleConnections.values) {
+                for (connection in connections) {
+                    connection.close()
+                }
+            }
+
+            idleConnections.clear()
+
+            for (connection in multiplexedConnections.values) {
+                connection.close()
+            }
+
+            multiplexedConnections.clear()
+        }
+    }
+
+    companion object {
+        private const val CONNECT_TIMEOUT = 5000
+        private const val MAX_IDLE_CONNECTIONS_PER_ADDRESS = 4
+        private const val IDLE_TIMEOUT_MILLIS = 30_000L
+
+        /**
+         * Pool of connections based on [java.net.Socket]
+         */
+        val BLOCKING = ConnectionPool(blocking = true)
+
+        /**
+         * Pool of connections based on [java.nio.channels.AsynchronousSocketChannel] if it's available,
+         * otherwise on [java.net.Socket]
+         */
+        val ASYNC = ConnectionPool(blocking = false)
+    }
+}
@@ -2,14 +2,64 @@ package com.pelmenstar.projktSens.serverProtocol
 
 import com.pelmenstar.projktSens.shared.io.Input
 import com.pelmenstar.projktSens.shared.io.Output
-import com.pelmenstar.projktSens.shared.serialization.ObjectSerializer
 
 /**
  * A contract between client and server, that describes in what way interpret byte data.
  */
 interface Contract {
-    suspend fun writeRequests(requests: Array<Request>, output: Output)
-    suspend fun readRequests(input: Input): Array<Request>
+    suspend fun writeRequests(requests: Array<Request>, output: Output) {
+        writeRequests(requests, output, 0)
+    }
+
+    /**
+     * Writes [requests] to [output] along with batch [flags] (see [RequestBatch])
+     */
+    suspend fun writeRequests(requests: Array<Request>, output: Output, flags: Int)
+
+    suspend fun readRequests(input: Input): Array<Request> {
+        return readRequestBatch(input).requests
+    }
+
+    /**
+     * Reads requests with the flags they were sent with
+     */
+    suspend fun readRequestBatch(input: Input): RequestBatch
+
     suspend fun writeResponses(responses: Array<Response>, output: Output)
+
+    /**
+     * Writes [responses] on the batch, that was sent with [requestFlags]. The flags might allow more efficient
+     * encoding of responses (see [RequestBatch.FLAG_COMPACT_VALUES])
+     */
+    suspend fun writeResponses(responses: Array<Response>, output: Output, requestFlags: Int) {
+        writeResponses(responses, output)
+    }
+
     suspend fun readResponses(input: Input, valueClasses: Array<Class<*>>): Array<Response>
-}
\ No newline at end of file
+
+    /**
+     * Writes one value of response stream, which is opened by streaming command (see [Commands.isStreaming])
+     */
+    suspend fun writeStreamValue(value: Response, output: Output) {
+        writeResponses(arrayOf(value), output)
+    }
+
+    /**
+     * Reads one value of response stream, which is opened by streaming command (see [Commands.isStreaming])
+     */
+    suspend fun readStreamValue(input: Input, valueClass: Class<*>): Response {
+        return readResponses(input, arrayOf(valueClass))[0]
+    }
+
+    /**
+     * Writes one chunk of chunked response (see [RequestBatch.FLAG_CHUNKED_RESPONSE]) on the batch,
+     * that was sent with [requestFlags]. Chunks are ended by single usual response, written by [writeResponses]
+     */
+    suspend fun writeResponseChunk(chunk: Any, output: Output, requestFlags: Int)
+
+    /**
+     * Reads next part of chunked response (see [RequestBatch.FLAG_CHUNKED_RESPONSE]): either chunk, value of which
+     * is of [chunkClass], or final response, value of which is of [finalValueClass]
+     */
+    suspend fun readResponsePart(input: Input, chunkClass: Class<*>, finalValueClass: Class<*>): ResponsePart
+}
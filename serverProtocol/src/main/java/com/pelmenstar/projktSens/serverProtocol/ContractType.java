@@ -4,19 +4,27 @@ import org.jetbrains.annotations.NotNull;
 
 public final class ContractType {
     public static final int RAW = 0;
+    public static final int MULTIPLEXED = 1;
+    public static final int COMPACT = 2;
 
     private ContractType() {
     }
 
     public static boolean isValid(int contractType) {
-        return contractType == RAW;
+        return contractType >= RAW && contractType <= COMPACT;
     }
 
     @NotNull
     public static Contract toObject(int contractType) {
-        if (contractType == RAW) {
-            return RawContract.INSTANCE;
+        switch (contractType) {
+            case RAW:
+                return RawContract.INSTANCE;
+            case MULTIPLEXED:
+                return MultiplexedContract.INSTANCE;
+            case COMPACT:
+                return CompactContract.INSTANCE;
         }
+
         throw new IllegalArgumentException("contractType");
     }
 }
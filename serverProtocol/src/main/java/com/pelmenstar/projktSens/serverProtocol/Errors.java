@@ -39,6 +39,12 @@ public final class Errors {
      */
     public static final int IO = 5;
 
+    /**
+     * Signals that client sends too many requests or server is overloaded,
+     * request should be repeated later (see {@code Response.Error.getRetryAfterMillis()})
+     */
+    public static final int RATE_LIMITED = 6;
+
     private static final @NotNull String @NotNull [] ERROR_NAMES = new String[]{
             "NONE",
             "UNKNOWN",
@@ -46,6 +52,7 @@ public final class Errors {
             "INVALID_COMMAND",
             "INTERNAL_DB_ERROR",
             "IO",
+            "RATE_LIMITED",
     };
 
     private Errors() {
@@ -0,0 +1,17 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+/**
+ * Answers [Commands.HELLO] with [capabilities] of the server, other commands are passed to [handler]
+ */
+class HelloRequestHandler(
+    private val capabilities: Capabilities,
+    private val handler: RequestHandler
+) : RequestHandler {
+    override suspend fun handle(request: Request): Response {
+        if (request.command != Commands.HELLO) {
+            return handler.handle(request)
+        }
+
+        return Response.ok(capabilities)
+    }
+}
@@ -0,0 +1,121 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+import kotlinx.coroutines.*
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.io.IOException
+
+/**
+ * Connection, which is shared between many callers using [MultiplexedContract].
+ * Each call gets its own frame id, responses are read on separate coroutine and dispatched to the caller
+ * that waits for the frame with the same id.
+ *
+ * If writing of request frame fails or is cancelled, the connection is closed and all the waiting callers fail.
+ * Responses are read in [scope] until the connection is closed.
+ */
+internal class MultiplexedConnection(private val connection: Connection, scope: CoroutineScope) {
+    private class PendingBatch(
+        @JvmField val valueClasses: Array<Class<*>>,
+        @JvmField val result: CompletableDeferred<Array<Response>>
+    )
+
+    private val pending = HashMap<Int, PendingBatch>()
+    private val lock = Any()
+    private val writeMutex = Mutex()
+
+    private var lastId = 0
+    private var closeCause: Throwable? = null
+
+    // started after it's assigned, as the reader closes the connection on failure and the job is cancelled there
+    private val readerJob = scope.launch(start = CoroutineStart.LAZY) { readResponses() }
+
+    init {
+        readerJob.start()
+    }
+
+    fun isOpen(): Boolean {
+        synchronized(lock) {
+            return closeCause == null && connection.isOpen()
+        }
+    }
+
+    suspend fun request(requests: Array<Request>, valueClasses: Array<Class<*>>): Array<Response> {
+        val result = CompletableDeferred<Array<Response>>()
+        val id: Int
+
+        synchronized(lock) {
+            val cause = closeCause
+            if (cause != null) {
+                throw IOException("Connection is closed", cause)
+            }
+
+            id = ++lastId
+            pending[id] = PendingBatch(valueClasses, result)
+        }
+
+        try {
+            writeMutex.withLock {
+                try {
+                    MultiplexedContract.writeRequestFrame(id, requests, connection.output, 0)
+                } catch (e: Throwable) {
+                    // Frame might be written partially (for example, when the caller is cancelled),
+                    // then frames of other callers can't be read, so the connection can't be used anymore
+                    close(e)
+                    throw e
+                }
+            }
+
+            return result.await()
+        } catch (e: IOException) {
+            close(e)
+            throw e
+        } finally {
+            synchronized(lock) {
+                pending.remove(id)
+            }
+        }
+    }
+
+    private suspend fun readResponses() {
+        try {
+            while (true) {
+                val frame = MultiplexedContract.readResponseFrame(connection.input) { id ->
+                    synchronized(lock) { pending[id]?.valueClasses }
+                }
+
+                val responses = frame.responses ?: continue
+                val batch = synchronized(lock) { pending.remove(frame.id) }
+
+                batch?.result?.complete(responses)
+            }
+        } catch (e: Throwable) {
+            close(e)
+        }
+    }
+
+    fun close() {
+        close(IOException("Connection is closed"))
+    }
+
+    private fun close(cause: Throwable) {
+        val batches: Array<PendingBatch>
+
+        synchronized(lock) {
+            if (closeCause != null) {
+                return
+            }
+
+            closeCause = cause
+            batches = pending.values.toTypedArray()
+            pending.clear()
+        }
+
+        connection.close()
+        readerJob.cancel()
+
+        val exception = if (cause is IOException) cause else IOException("Connection is closed", cause)
+        for (batch in batches) {
+            batch.result.completeExceptionally(exception)
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+import com.pelmenstar.projktSens.shared.buildByteArray
+import com.pelmenstar.projktSens.shared.getInt
+import com.pelmenstar.projktSens.shared.io.Input
+import com.pelmenstar.projktSens.shared.io.Output
+import com.pelmenstar.projktSens.shared.writeInt
+
+/**
+ * Contract, which frames carry id of the batch, so many batches can be in flight on one connection
+ * and responses on them can come in any order.
+ * Each frame is written in format described below: <br/>
+ * - id | 4 bytes <br/>
+ * - batch of requests or responses in [RawContract] format
+ *
+ * Methods of [Contract] read and write frames with id 0.
+ */
+object MultiplexedContract : Contract {
+    /**
+     * Frame of responses.
+     * [responses] is null if responses were skipped, because nobody waited for them
+     */
+    internal class ResponseFrame(val id: Int, val responses: Array<Response>?)
+
+    override suspend fun writeRequests(requests: Array<Request>, output: Output, flags: Int) {
+        writeRequestFrame(0, requests, output, flags)
+    }
+
+    suspend fun writeRequestFrame(id: Int, requests: Array<Request>, output: Output, flags: Int) {
+        writeId(id, output)
+        RawContract.writeRequests(requests, output, flags)
+    }
+
+    override suspend fun readRequestBatch(input: Input): RequestBatch {
+        val id = readId(input)
+        val batch = RawContract.readRequestBatch(input)
+
+        return RequestBatch(batch.requests, batch.flags, id)
+    }
+
+    override suspend fun writeResponses(responses: Array<Response>, output: Output) {
+        writeResponseFrame(0, responses, output)
+    }
+
+    override suspend fun writeResponses(responses: Array<Response>, output: Output, requestFlags: Int) {
+        writeResponseFrame(0, responses, output, requestFlags)
+    }
+
+    suspend fun writeResponseFrame(id: Int, responses: Array<Response>, output: Output, requestFlags: Int = 0) {
+        writeId(id, output)
+        RawContract.writeResponses(responses, output, requestFlags)
+    }
+
+    override suspend fun writeResponseChunk(chunk: Any, output: Output, requestFlags: Int) {
+        writeResponseChunkFrame(0, chunk, output, requestFlags)
+    }
+
+    suspend fun writeResponseChunkFrame(id: Int, chunk: Any, output: Output, requestFlags: Int) {
+        writeId(id, output)
+        RawContract.writeResponseChunk(chunk, output, requestFlags)
+    }
+
+    override suspend fun readResponsePart(
+        input: Input,
+        chunkClass: Class<*>,
+        finalValueClass: Class<*>
+    ): ResponsePart {
+        readId(input)
+
+        return RawContract.readResponsePart(input, chunkClass, finalValueClass)
+    }
+
+    override suspend fun readResponses(input: Input, valueClasses: Array<Class<*>>): Array<Response> {
+        readId(input)
+
+        return RawContract.readResponses(input, valueClasses)
+    }
+
+    /**
+     * Reads frame of responses. Value classes of the responses are resolved by id of the frame through [getValueClasses].
+     * If it returns null, responses are skipped.
+     */
+    internal suspend inline fun readResponseFrame(
+        input: Input,
+        getValueClasses: (id: Int) -> Array<Class<*>>?
+    ): ResponseFrame {
+        val id = readId(input)
+        val valueClasses = getValueClasses(id)
+
+        return if (valueClasses != null) {
+            ResponseFrame(id, RawContract.readResponses(input, valueClasses))
+        } else {
+            RawContract.skipResponses(input)
+
+            ResponseFrame(id, null)
+        }
+    }
+
+    private suspend fun writeId(id: Int, output: Output) {
+        output.write(buildByteArray(4) { writeInt(0, id) })
+    }
+
+    private suspend fun readId(input: Input): Int {
+        return input.readN(4).getInt(0)
+    }
+}
@@ -5,10 +5,20 @@ import androidx.annotation.RequiresApi
 import com.pelmenstar.projktSens.shared.connectSuspend
 import com.pelmenstar.projktSens.shared.io.Input
 import com.pelmenstar.projktSens.shared.io.Output
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import java.io.Closeable
 import java.net.InetSocketAddress
 import java.net.Socket
 import java.nio.channels.AsynchronousSocketChannel
 
+/**
+ * Checks whether server at given address is repo-server by [Commands.GET_MAGIC_NUMBER].
+ * [Commands.HELLO] is sent in the same batch, so capabilities of the server are negotiated
+ * (see [Client.getCapabilities]) without extra round trip. The requests are written without batch flags,
+ * so that server of any version can answer them
+ */
 object ProjktSensServerChecker {
     enum class Status {
         UNAVAILABLE,
@@ -16,15 +26,27 @@ object ProjktSensServerChecker {
         IS_PROJKT_SENS_SERVER
     }
 
-    private val REQUESTS = arrayOf(Request(Commands.GET_MAGIC_NUMBER))
-    private val RESPONSE_CLASSES: Array<Class<*>> = arrayOf(Long::class.java)
+    private val REQUESTS = arrayOf(Request(Commands.GET_MAGIC_NUMBER), Request(Commands.HELLO))
+    private val RESPONSE_CLASSES: Array<Class<*>> = arrayOf(Long::class.java, Capabilities::class.java)
 
-    suspend fun isProjktSensServer(contract: Contract, ip: InetSocketAddress): Status {
+    const val DEFAULT_CONNECT_TIMEOUT = 5000
+    const val DEFAULT_RESPONSE_TIMEOUT = 5000
+
+    /**
+     * Checks server at [ip]. If it isn't connected in [connectTimeout] milliseconds, it's [Status.UNAVAILABLE].
+     * If it doesn't answer in [responseTimeout] milliseconds after that, it's [Status.NOT_PROJKT_SENS_SERVER]
+     */
+    suspend fun isProjktSensServer(
+        contract: Contract,
+        ip: InetSocketAddress,
+        connectTimeout: Int = DEFAULT_CONNECT_TIMEOUT,
+        responseTimeout: Int = DEFAULT_RESPONSE_TIMEOUT
+    ): Status {
         return try {
             return if (Build.VERSION.SDK_INT >= 26) {
-                isProjktSensServerAsync(contract, ip)
+                isProjktSensServerAsync(contract, ip, connectTimeout, responseTimeout)
             } else {
-                isProjktSensServerBlocking(contract, ip)
+                isProjktSensServerBlocking(contract, ip, connectTimeout, responseTimeout)
             }
         } catch(e: Exception) {
             Status.NOT_PROJKT_SENS_SERVER
@@ -32,48 +54,97 @@ object ProjktSensServerChecker {
     }
 
     @RequiresApi(26)
-    private suspend fun isProjktSensServerAsync(contract: Contract, ip: InetSocketAddress): Status {
+    private suspend fun isProjktSensServerAsync(
+        contract: Contract,
+        ip: InetSocketAddress,
+        connectTimeout: Int,
+        responseTimeout: Int
+    ): Status {
         val channel = AsynchronousSocketChannel.open()
+
         try {
-            channel.connectSuspend(ip, 5000)
-        } catch (e: Exception) {
-            return Status.UNAVAILABLE
-        }
+            val isConnected = closeOnTimeout(channel, connectTimeout) {
+                try {
+                    channel.connectSuspend(ip)
 
-        val status = handle(contract, Input.of(channel), Output.of(channel))
-        channel.close()
+                    true
+                } catch (e: Exception) {
+                    false
+                }
+            }
 
-        return status
+            if (!isConnected) {
+                return Status.UNAVAILABLE
+            }
+
+            return closeOnTimeout(channel, responseTimeout) {
+                handle(contract, ip, Input.of(channel), Output.of(channel))
+            }
+        } finally {
+            channel.close()
+        }
     }
 
-    private suspend fun isProjktSensServerBlocking(contract: Contract, ip: InetSocketAddress): Status {
+    private suspend fun isProjktSensServerBlocking(
+        contract: Contract,
+        ip: InetSocketAddress,
+        connectTimeout: Int,
+        responseTimeout: Int
+    ): Status {
         val socket = Socket()
+
         try {
-            socket.connect(ip, 5000)
-        } catch (e: Exception) {
-            return Status.UNAVAILABLE
+            try {
+                socket.connect(ip, connectTimeout)
+            } catch (e: Exception) {
+                return Status.UNAVAILABLE
+            }
+
+            socket.soTimeout = responseTimeout
+
+            return handle(contract, ip, Input.of(socket), Output.of(socket))
+        } finally {
+            socket.close()
         }
+    }
 
-        val status = handle(contract, Input.of(socket), Output.of(socket))
-        socket.close()
+    // Pending IO on the channel can't be cancelled, but it fails when the channel is closed
+    private suspend fun <T> closeOnTimeout(channel: Closeable, timeout: Int, block: suspend () -> T): T {
+        return coroutineScope {
+            val watchdog = launch {
+                delay(timeout.toLong())
+                channel.close()
+            }
 
-        return status
+            try {
+                block()
+            } finally {
+                watchdog.cancel()
+            }
+        }
     }
 
-    private suspend fun handle(contract: Contract, input: Input, output: Output): Status {
+    private suspend fun handle(contract: Contract, ip: InetSocketAddress, input: Input, output: Output): Status {
         try {
-            contract.writeRequests(REQUESTS, output)
-            val response = contract.readResponses(input, RESPONSE_CLASSES)[0]
+            val probeContract = CapabilitiesCache.probeContract(contract)
 
-            return when (response) {
-                Response.Empty, is Response.Error -> Status.NOT_PROJKT_SENS_SERVER
+            probeContract.writeRequests(REQUESTS, output)
+            val responses = probeContract.readResponses(input, RESPONSE_CLASSES)
+
+            return when (val response = responses[0]) {
+                Response.Empty, Response.NotModified, is Response.Error -> Status.NOT_PROJKT_SENS_SERVER
                 is Response.Ok<*> -> {
                     val magicNumber = response.value as Long
 
-                    if (magicNumber == ProjktSensServer.MAGIC_NUMBER)
+                    if (magicNumber == ProjktSensServer.MAGIC_NUMBER) {
+                        CapabilitiesCache.negotiate(contract, responses[1])?.let { capabilities ->
+                            CapabilitiesCache.put(ip, capabilities)
+                        }
+
                         Status.IS_PROJKT_SENS_SERVER
-                    else
+                    } else {
                         Status.NOT_PROJKT_SENS_SERVER
+                    }
                 }
             }
         } catch (e: Exception) {
@@ -0,0 +1,73 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+import com.pelmenstar.projktSens.shared.serialization.ObjectSerializer
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.FlowCollector
+import kotlinx.coroutines.flow.flow
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Delivers values to many subscribers on server side, for example, to the streams of [Commands.SUBSCRIBE_WEATHER].
+ *
+ * Each value is serialized only once, then the same [SerializedValue] is enqueued to all the subscribers.
+ * Every subscriber has its own queue bounded by [queueCapacity]. If a subscriber is too slow and its queue is full,
+ * the oldest value in the queue is dropped, so slow subscriber never stalls [broadcast] and other subscribers.
+ */
+class PushBroadcaster<T : Any>(
+    private val serializer: ObjectSerializer<T>,
+    private val queueCapacity: Int = DEFAULT_QUEUE_CAPACITY
+) {
+    private val queues = CopyOnWriteArrayList<Channel<Response>>()
+
+    val subscriberCount: Int
+        get() = queues.size
+
+    init {
+        require(queueCapacity > 0) { "queueCapacity" }
+    }
+
+    /**
+     * Serializes [value] and enqueues it to all the current subscribers. Never suspends
+     */
+    fun broadcast(value: T) {
+        if (queues.isEmpty()) {
+            return
+        }
+
+        val response = Response.ok(SerializedValue.of(value, serializer))
+
+        for (queue in queues) {
+            queue.trySend(response)
+        }
+    }
+
+    /**
+     * Returns flow of broadcast values. Subscriber is registered when the flow collection starts
+     * and unregistered when it's completed or cancelled.
+     *
+     * [onSubscription] is invoked after the subscriber is registered, so values emitted in it
+     * can't be newer than the values broadcast after that
+     */
+    fun subscribe(onSubscription: suspend FlowCollector<Response>.() -> Unit = {}): Flow<Response> {
+        return flow {
+            val queue = Channel<Response>(queueCapacity, BufferOverflow.DROP_OLDEST)
+            queues.add(queue)
+
+            try {
+                onSubscription()
+
+                for (response in queue) {
+                    emit(response)
+                }
+            } finally {
+                queues.remove(queue)
+            }
+        }
+    }
+
+    companion object {
+        const val DEFAULT_QUEUE_CAPACITY = 8
+    }
+}
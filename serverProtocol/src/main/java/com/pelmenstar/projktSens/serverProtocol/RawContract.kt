@@ -10,42 +10,168 @@ import com.pelmenstar.projktSens.shared.serialization.ValueWriter
 
 /**
  * Writes and reads [Request], [Response] in raw non-human readable compact binary form.
+ *
+ * Requests are written in format described below: <br/>
+ * - body size | 2 bytes <br/>
+ * - requests count | 1 byte. If [HEADER_HAS_FLAGS] bit is set, first byte of body is batch flags <br/>
+ * - body
+ *
+ * Responses are written in format described below: <br/>
+ * - body size | 4 bytes <br/>
+ * - responses count | 1 byte. If [HEADER_COMPACT_VALUES] bit is set, values are written by compact serializers <br/>
+ * - body
+ *
+ * Batch, that doesn't fit in the format above (more than 127 requests or responses, or request body is larger
+ * than 32 KB), is written in the second version of the format: <br/>
+ * - marker | 2 bytes for requests, 4 bytes for responses. All bits are set, that's invalid body size for the first version <br/>
+ * - version | 1 byte, [VERSION_2] <br/>
+ * - body size | varint <br/>
+ * - for requests: flags | varint, for responses: [V2_FLAG_COMPACT_VALUES] or 0 | 1 byte <br/>
+ * - count | varint <br/>
+ * - requests or responses, the same as in the first version
+ *
+ * Both versions are always accepted, so peers, that write only the first version, are still served.
+ * Peer, that doesn't know the second version, rejects such a batch, because body size is invalid for it.
+ *
+ * Each request is written as command byte, argument type byte and the argument. If request has
+ * [Request.ifDataVersionDiffers], [ARG_TYPE_HAS_DATA_VERSION] bit of argument type is set and the version (8 bytes)
+ * follows the argument. If request has [Request.parameters] other than [Request.ALL_PARAMETERS],
+ * [ARG_TYPE_HAS_PARAMETERS] bit is set and the mask (1 byte) follows the argument, before the version.
+ *
+ * Each response is written as type byte and the value. Value of [TYPE_OK_VERSIONED] response is preceded
+ * by data version (8 bytes). Error id of [TYPE_ERROR_RETRY_AFTER] response is followed by retry-after hint (4 bytes).
+ *
+ * Compact values are written only if the request batch had [RequestBatch.FLAG_COMPACT_VALUES] and
+ * none of the responses has [SerializedValue], bytes of which are written as is
+ *
+ * Chunk of chunked response (see [RequestBatch.FLAG_CHUNKED_RESPONSE]) is written in the same format
+ * as single response, but with its own type.
  */
 object RawContract : Contract {
     private const val TYPE_EMPTY: Byte = 0
     private const val TYPE_ERROR: Byte = 1
     private const val TYPE_OK: Byte = 2
+    private const val TYPE_CHUNK: Byte = 3
+    private const val TYPE_NOT_MODIFIED: Byte = 4
+    private const val TYPE_OK_VERSIONED: Byte = 5
+    private const val TYPE_ERROR_RETRY_AFTER: Byte = 6
 
-    override suspend fun writeRequests(requests: Array<Request>, output: Output) {
+    private const val ARG_TYPE_HAS_DATA_VERSION = 0x80
+    private const val ARG_TYPE_HAS_PARAMETERS = 0x40
+    private const val ARG_TYPE_MASK = 0x3f
+
+    private const val HEADER_HAS_FLAGS = 0x80
+    private const val HEADER_COMPACT_VALUES = 0x80
+    private const val HEADER_COUNT_MASK = 0x7f
+
+    private const val VERSION_2: Byte = 2
+    private const val REQUESTS_V2_MARKER: Short = -1
+    private const val RESPONSES_V2_MARKER = -1
+    private const val V2_FLAG_COMPACT_VALUES = 1
+
+    private const val MAX_V1_COUNT = HEADER_COUNT_MASK
+    private const val MAX_REQUESTS_BODY_SIZE = 1 shl 20
+
+    /**
+     * Decoded header of responses. Responses themselves start at [offset] of [buffer]
+     */
+    private class ResponsesFrame(val buffer: ByteArray, val offset: Int, val count: Int, val compact: Boolean)
+
+    override suspend fun writeRequests(requests: Array<Request>, output: Output, flags: Int) {
         if(requests.isEmpty()) {
             throw RuntimeException("Requests are empty")
         }
-        if(requests.size > 127) {
-            throw RuntimeException("Limit of requests exceeded")
-        }
 
-        var bufferSize = requests.size * 2
+        var requestsSize = requests.size * 2
         for(request in requests) {
+            if(request.ifDataVersionDiffers != Request.NO_DATA_VERSION) {
+                requestsSize += 8
+            }
+
+            if(request.parameters != Request.ALL_PARAMETERS) {
+                requestsSize++
+            }
+
             val arg = request.argument
             if(arg != null) {
-                bufferSize += when(arg.type) {
+                requestsSize += when(arg.type) {
                     Request.Argument.TYPE_INTEGER -> 4
                     Request.Argument.TYPE_DATE_RANGE -> 8
+                    Request.Argument.TYPE_LONG_INTEGER -> 8
+                    Request.Argument.TYPE_BUCKETED_DATE_RANGE -> 12
                     else -> throw RuntimeException("Invalid arg type")
                 }
             }
         }
+
+        var bufferSize = requestsSize
+        if(flags != 0) {
+            bufferSize++
+        }
+
+        if(requests.size > MAX_V1_COUNT || bufferSize > Short.MAX_VALUE) {
+            writeRequestsV2(requests, requestsSize, output, flags)
+            return
+        }
+
         val buffer = ByteArray(bufferSize + 3)
         buffer.writeShort(0, bufferSize.toShort())
-        buffer[2] = requests.size.toByte()
         var index = 3
 
+        if(flags != 0) {
+            buffer[2] = (requests.size or HEADER_HAS_FLAGS).toByte()
+            buffer[3] = flags.toByte()
+            index++
+        } else {
+            buffer[2] = requests.size.toByte()
+        }
+
+        encodeRequests(requests, buffer, index)
+
+        output.write(buffer)
+    }
+
+    private suspend fun writeRequestsV2(requests: Array<Request>, requestsSize: Int, output: Output, flags: Int) {
+        val bodySize = ValueWriter.varIntSize(flags) + ValueWriter.varIntSize(requests.size) + requestsSize
+        if(bodySize > MAX_REQUESTS_BODY_SIZE) {
+            throw RuntimeException("Limit of requests exceeded")
+        }
+
+        val buffer = ByteArray(3 + ValueWriter.varIntSize(bodySize) + bodySize)
+        buffer.writeShort(0, REQUESTS_V2_MARKER)
+        buffer[2] = VERSION_2
+
+        val writer = ValueWriter(buffer, 3)
+        writer.varInt(bodySize)
+        writer.varInt(flags)
+        writer.varInt(requests.size)
+
+        encodeRequests(requests, buffer, writer.position())
+
+        output.write(buffer)
+    }
+
+    private fun encodeRequests(requests: Array<Request>, buffer: ByteArray, offset: Int) {
+        var index = offset
+
         for(request in requests) {
+            val dataVersion = request.ifDataVersionDiffers
+            val parameters = request.parameters
+            var flagBits = 0
+
+            if(dataVersion != Request.NO_DATA_VERSION) {
+                flagBits = ARG_TYPE_HAS_DATA_VERSION
+            }
+
+            if(parameters != Request.ALL_PARAMETERS) {
+                flagBits = flagBits or ARG_TYPE_HAS_PARAMETERS
+            }
+
             buffer[index] = request.command.toByte()
 
             val arg = request.argument
             if(arg != null) {
-                buffer[index + 1] = arg.type.toByte()
+                buffer[index + 1] = (arg.type or flagBits).toByte()
 
                 when(arg) {
                     is Request.Argument.Integer -> {
@@ -59,21 +185,50 @@ object RawContract : Contract {
 
                         index += 8
                     }
+                    is Request.Argument.LongInteger -> {
+                        buffer.writeLong(index + 2, arg.value)
+
+                        index += 8
+                    }
+                    is Request.Argument.BucketedDateRange -> {
+                        buffer.writeInt(index + 2, arg.start)
+                        buffer.writeInt(index + 6, arg.endInclusive)
+                        buffer.writeInt(index + 10, arg.bucketSeconds)
+
+                        index += 12
+                    }
                 }
             } else {
-                buffer[index + 1] = Request.Argument.TYPE_NULL.toByte()
+                buffer[index + 1] = (Request.Argument.TYPE_NULL or flagBits).toByte()
             }
 
             index += 2
-        }
 
-        output.write(buffer)
+            if((flagBits and ARG_TYPE_HAS_PARAMETERS) != 0) {
+                buffer[index] = parameters.toByte()
+                index++
+            }
+
+            if((flagBits and ARG_TYPE_HAS_DATA_VERSION) != 0) {
+                buffer.writeLong(index, dataVersion)
+                index += 8
+            }
+        }
     }
 
-    override suspend fun readRequests(input: Input): Array<Request> {
+    override suspend fun readRequestBatch(input: Input): RequestBatch {
         val header = input.readN(3)
-        val bufferSize = header.getShort(0).toInt()
-        val reqCount = header[2].toInt()
+        val rawBufferSize = header.getShort(0)
+
+        if(rawBufferSize == REQUESTS_V2_MARKER) {
+            checkVersion(header[2])
+
+            return readRequestBatchV2(input)
+        }
+
+        val bufferSize = rawBufferSize.toInt()
+        val rawCount = header[2].toInt() and 0xff
+        val reqCount = rawCount and HEADER_COUNT_MASK
 
         if(bufferSize <= 0) {
             throw RuntimeException("bufferSize <= 0")
@@ -84,10 +239,42 @@ object RawContract : Contract {
 
         val buffer = input.readN(bufferSize)
         var index = 0
+        var flags = 0
+
+        if((rawCount and HEADER_HAS_FLAGS) != 0) {
+            flags = buffer[0].toInt() and 0xff
+            index++
+        }
+
+        return RequestBatch(decodeRequests(buffer, index, reqCount), flags)
+    }
+
+    private suspend fun readRequestBatchV2(input: Input): RequestBatch {
+        val bodySize = readVarInt(input)
+        if(bodySize <= 0 || bodySize > MAX_REQUESTS_BODY_SIZE) {
+            throw RuntimeException("Invalid bodySize")
+        }
+
+        val buffer = input.readN(bodySize)
+        val reader = ValueReader(buffer)
+        val flags = reader.varInt()
+        val reqCount = reader.varInt()
 
-        return Array(reqCount) {
+        // every request takes at least 2 bytes
+        if(reqCount <= 0 || reqCount > bodySize / 2) {
+            throw RuntimeException("Invalid reqCount")
+        }
+
+        return RequestBatch(decodeRequests(buffer, reader.position(), reqCount), flags)
+    }
+
+    private fun decodeRequests(buffer: ByteArray, offset: Int, count: Int): Array<Request> {
+        var index = offset
+
+        return Array(count) {
             val command = buffer[index].toInt()
-            val argType = buffer[index + 1].toInt()
+            val rawArgType = buffer[index + 1].toInt() and 0xff
+            val argType = rawArgType and ARG_TYPE_MASK
             index += 2
 
             var arg: Request.Argument? = null
@@ -107,111 +294,330 @@ object RawContract : Contract {
 
                         Request.Argument.DateRange(start, end)
                     }
+                    Request.Argument.TYPE_LONG_INTEGER -> {
+                        val value = buffer.getLong(index)
+                        index += 8
+
+                        Request.Argument.LongInteger(value)
+                    }
+                    Request.Argument.TYPE_BUCKETED_DATE_RANGE -> {
+                        val start = buffer.getInt(index)
+                        val end = buffer.getInt(index + 4)
+                        val bucketSeconds = buffer.getInt(index + 8)
+                        index += 12
+
+                        Request.Argument.BucketedDateRange(start, end, bucketSeconds)
+                    }
                     else -> throw RuntimeException("Invalid argType")
                 }
             }
 
-            Request(command, arg)
+            var parameters = Request.ALL_PARAMETERS
+            if((rawArgType and ARG_TYPE_HAS_PARAMETERS) != 0) {
+                parameters = buffer[index].toInt()
+                index++
+            }
+
+            var dataVersion = Request.NO_DATA_VERSION
+            if((rawArgType and ARG_TYPE_HAS_DATA_VERSION) != 0) {
+                dataVersion = buffer.getLong(index)
+                index += 8
+            }
+
+            Request(command, arg, dataVersion, parameters)
         }
     }
 
-    @Suppress("UNCHECKED_CAST")
     override suspend fun writeResponses(responses: Array<Response>, output: Output) {
+        writeResponses(responses, output, 0)
+    }
+
+    override suspend fun writeResponses(responses: Array<Response>, output: Output, requestFlags: Int) {
         if(responses.isEmpty()) {
             throw RuntimeException("Responses are empty")
         }
-        if(responses.size > 127) {
-            throw RuntimeException("Limit of responses exceeded")
-        }
+
+        // bytes of pre-serialized values are written as is, they're not compact
+        val compact = (requestFlags and RequestBatch.FLAG_COMPACT_VALUES) != 0 &&
+                responses.none { it is Response.Ok<*> && it.value is SerializedValue }
+
+        // size of compact value might be expensive to compute, so it's computed once
+        val valueSizes = IntArray(responses.size)
 
         var bufferSize = responses.size
-        for(response in responses) {
+        for((i, response) in responses.withIndex()) {
             when(response) {
                 is Response.Error -> {
-                    bufferSize += 4
+                    bufferSize += if(response.retryAfterMillis != 0) 8 else 4
                 }
                 is Response.Ok<*> -> {
                     val value = response.value
-                    val serializer = Serializable.getSerializer(value.javaClass)
+                    val valueSize = if(value is SerializedValue) {
+                        value.bytes.size
+                    } else {
+                        getSerializer(value.javaClass, compact).getSerializedObjectSize(value)
+                    }
 
-                    bufferSize += serializer.getSerializedObjectSize(value)
+                    valueSizes[i] = valueSize
+                    bufferSize += valueSize
+
+                    if(response.dataVersion != Request.NO_DATA_VERSION) {
+                        bufferSize += 8
+                    }
                 }
             }
         }
 
-        val buffer = ByteArray(bufferSize + 5)
-        buffer.writeInt(0, bufferSize)
-        buffer[4] = responses.size.toByte()
+        val buffer: ByteArray
+        val index: Int
+
+        if(responses.size > MAX_V1_COUNT) {
+            val bodySize = 1 + ValueWriter.varIntSize(responses.size) + bufferSize
+
+            buffer = ByteArray(5 + ValueWriter.varIntSize(bodySize) + bodySize)
+            buffer.writeInt(0, RESPONSES_V2_MARKER)
+            buffer[4] = VERSION_2
 
-        var index = 5
-        for(response in responses) {
+            val writer = ValueWriter(buffer, 5)
+            writer.varInt(bodySize)
+            writer.int8(if(compact) V2_FLAG_COMPACT_VALUES.toByte() else 0)
+            writer.varInt(responses.size)
+
+            index = writer.position()
+        } else {
+            buffer = ByteArray(bufferSize + 5)
+            buffer.writeInt(0, bufferSize)
+            buffer[4] = if(compact) {
+                (responses.size or HEADER_COMPACT_VALUES).toByte()
+            } else {
+                responses.size.toByte()
+            }
+
+            index = 5
+        }
+
+        encodeResponses(responses, valueSizes, compact, buffer, index)
+
+        output.write(buffer)
+    }
+
+    private fun encodeResponses(
+        responses: Array<Response>,
+        valueSizes: IntArray,
+        compact: Boolean,
+        buffer: ByteArray,
+        offset: Int
+    ) {
+        var index = offset
+
+        for((i, response) in responses.withIndex()) {
             when(response) {
                 Response.Empty -> {
                     buffer[index++] = TYPE_EMPTY
                 }
+                Response.NotModified -> {
+                    buffer[index++] = TYPE_NOT_MODIFIED
+                }
                 is Response.Error -> {
-                    buffer[index++] = TYPE_ERROR
-                    buffer.writeInt(index, response.error)
+                    if(response.retryAfterMillis != 0) {
+                        buffer[index++] = TYPE_ERROR_RETRY_AFTER
+                        buffer.writeInt(index, response.error)
+                        buffer.writeInt(index + 4, response.retryAfterMillis)
 
-                    index += 4
+                        index += 8
+                    } else {
+                        buffer[index++] = TYPE_ERROR
+                        buffer.writeInt(index, response.error)
+
+                        index += 4
+                    }
                 }
                 is Response.Ok<*> -> {
                     val value = response.value
-                    val serializer = Serializable.getSerializer(value.javaClass)
-                    val objectSize = serializer.getSerializedObjectSize(value)
 
-                    buffer[index++] = TYPE_OK
+                    if(response.dataVersion != Request.NO_DATA_VERSION) {
+                        buffer[index++] = TYPE_OK_VERSIONED
+                        buffer.writeLong(index, response.dataVersion)
 
-                    serializer.writeObject(
-                        value,
-                        ValueWriter(
-                            buffer,
-                            index
+                        index += 8
+                    } else {
+                        buffer[index++] = TYPE_OK
+                    }
+
+                    if(value is SerializedValue) {
+                        value.bytes.copyInto(buffer, index)
+                    } else {
+                        getSerializer(value.javaClass, compact).writeObject(
+                            value,
+                            ValueWriter(
+                                buffer,
+                                index
+                            )
                         )
-                    )
+                    }
 
-                    index += objectSize
+                    index += valueSizes[i]
                 }
             }
         }
+    }
 
-        output.write(buffer)
+    /**
+     * Reads responses from [input] without decoding them
+     */
+    internal suspend fun skipResponses(input: Input) {
+        readResponsesFrame(input)
     }
 
     override suspend fun readResponses(
         input: Input,
         valueClasses: Array<Class<*>>
     ): Array<Response> {
+        return decodeResponses(readResponsesFrame(input), valueClasses)
+    }
+
+    override suspend fun writeResponseChunk(chunk: Any, output: Output, requestFlags: Int) {
+        val compact = (requestFlags and RequestBatch.FLAG_COMPACT_VALUES) != 0
+        val serializer = getSerializer(chunk.javaClass, compact)
+
+        val bufferSize = serializer.getSerializedObjectSize(chunk) + 1
+        val buffer = ByteArray(bufferSize + 5)
+        buffer.writeInt(0, bufferSize)
+        buffer[4] = if(compact) (1 or HEADER_COMPACT_VALUES).toByte() else 1
+        buffer[5] = TYPE_CHUNK
+
+        serializer.writeObject(chunk, ValueWriter(buffer, 6))
+
+        output.write(buffer)
+    }
+
+    override suspend fun readResponsePart(
+        input: Input,
+        chunkClass: Class<*>,
+        finalValueClass: Class<*>
+    ): ResponsePart {
+        val frame = readResponsesFrame(input)
+        val buffer = frame.buffer
+
+        if(buffer[frame.offset] == TYPE_CHUNK) {
+            if(frame.count != 1) {
+                throw RuntimeException("Invalid count of chunks")
+            }
+
+            val reader = ValueReader(buffer, frame.offset + 1)
+            val value = getSerializer(chunkClass, frame.compact).readObject(reader)
+
+            return ResponsePart.Chunk(value)
+        }
+
+        return ResponsePart.Final(decodeResponses(frame, arrayOf(finalValueClass))[0])
+    }
+
+    private suspend fun readResponsesFrame(input: Input): ResponsesFrame {
         val header = input.readN(5)
         val totalSize = header.getInt(0)
-        val responsesCount = header[4].toInt()
 
-        val buffer = input.readN(totalSize)
-        var index = 0
+        if(totalSize == RESPONSES_V2_MARKER) {
+            checkVersion(header[4])
+
+            val bodySize = readVarInt(input)
+            if(bodySize <= 0) {
+                throw RuntimeException("Invalid bodySize")
+            }
+
+            val buffer = input.readN(bodySize)
+            val compact = (buffer[0].toInt() and V2_FLAG_COMPACT_VALUES) != 0
+
+            val reader = ValueReader(buffer, 1)
+            val count = reader.varInt()
+
+            return ResponsesFrame(buffer, reader.position(), count, compact)
+        }
+
+        val rawCount = header[4].toInt() and 0xff
+        val responsesCount = rawCount and HEADER_COUNT_MASK
+        val compact = (rawCount and HEADER_COMPACT_VALUES) != 0
+
+        return ResponsesFrame(input.readN(totalSize), 0, responsesCount, compact)
+    }
+
+    private fun decodeResponses(frame: ResponsesFrame, valueClasses: Array<Class<*>>): Array<Response> {
+        val buffer = frame.buffer
+        var index = frame.offset
 
-        return Array(responsesCount) { i ->
+        return Array(frame.count) { i ->
             val type = buffer[index++]
             when(type) {
                 TYPE_EMPTY -> Response.Empty
+                TYPE_NOT_MODIFIED -> Response.NotModified
                 TYPE_ERROR -> {
                     val errorId = buffer.getInt(index)
                     index += 4
 
                     Response.error(errorId)
                 }
+                TYPE_ERROR_RETRY_AFTER -> {
+                    val errorId = buffer.getInt(index)
+                    val retryAfterMillis = buffer.getInt(index + 4)
+                    index += 8
+
+                    Response.Error(errorId, retryAfterMillis)
+                }
                 TYPE_OK -> {
-                    val serializer = Serializable.getSerializer(valueClasses[i]) as ObjectSerializer<Any>
+                    val serializer = getSerializer(valueClasses[i], frame.compact)
 
-                    val value = serializer.readObject(ValueReader(
-                        buffer,
-                        index
-                    ))
-                    index += serializer.getSerializedObjectSize(value)
+                    val reader = ValueReader(buffer, index)
+                    val value = serializer.readObject(reader)
+                    index = reader.position()
 
                     Response.ok(value)
                 }
+                TYPE_OK_VERSIONED -> {
+                    val dataVersion = buffer.getLong(index)
+                    val serializer = getSerializer(valueClasses[i], frame.compact)
+
+                    val reader = ValueReader(buffer, index + 8)
+                    val value = serializer.readObject(reader)
+                    index = reader.position()
+
+                    Response.ok(value, dataVersion)
+                }
                 else -> throw RuntimeException("Invalid response type")
             }
         }
     }
-}
\ No newline at end of file
+
+    private fun checkVersion(version: Byte) {
+        if(version != VERSION_2) {
+            throw RuntimeException("Unsupported version of the format: $version")
+        }
+    }
+
+    private suspend fun readVarInt(input: Input): Int {
+        var result = 0
+        var shift = 0
+
+        while(true) {
+            val b = input.readN(1)[0].toInt()
+            result = result or ((b and 0x7f) shl shift)
+
+            if((b and 0x80) == 0) {
+                return result
+            }
+
+            shift += 7
+            if(shift > 28) {
+                throw RuntimeException("Invalid varint")
+            }
+        }
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun getSerializer(c: Class<*>, compact: Boolean): ObjectSerializer<Any> {
+        return if(compact) {
+            Serializable.getCompactSerializer(c)
+        } else {
+            Serializable.getSerializer(c)
+        } as ObjectSerializer<Any>
+    }
+}
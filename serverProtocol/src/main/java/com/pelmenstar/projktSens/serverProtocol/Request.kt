@@ -8,11 +8,41 @@ import com.pelmenstar.projktSens.shared.time.ShortDateInt
 import com.pelmenstar.projktSens.shared.time.ShortDateRange
 
 /**
- * Contains information to make request to server
+ * Contains information to make request to server.
+ *
+ * If [ifDataVersionDiffers] is not [NO_DATA_VERSION], server is allowed to answer with [Response.NotModified]
+ * when version of its data is still the same (see [Response.Ok.dataVersion])
+ *
+ * [parameters] is mask of weather parameters (see `WeatherParameters` in weather module), that should be
+ * in the report. Parameters, that aren't in the mask, aren't computed and sent by server.
+ * Commands, that don't return reports, ignore the mask
  */
-class Request(val command: Int, val argument: Argument? = null) : AppendableToStringBuilder() {
+class Request(
+    val command: Int,
+    val argument: Argument? = null,
+    val ifDataVersionDiffers: Long = NO_DATA_VERSION,
+    val parameters: Int = ALL_PARAMETERS
+) : AppendableToStringBuilder() {
+    init {
+        require(parameters != 0 && (parameters and ALL_PARAMETERS.inv()) == 0) { "parameters" }
+    }
+
     constructor(command: Int, value: Int): this(command, Argument.Integer(value))
 
+    /**
+     * Returns the same request, but with given [ifDataVersionDiffers]
+     */
+    fun withDataVersion(version: Long): Request {
+        return Request(command, argument, version, parameters)
+    }
+
+    /**
+     * Returns the same request, but with given [parameters] mask
+     */
+    fun withParameters(parameters: Int): Request {
+        return Request(command, argument, ifDataVersionDiffers, parameters)
+    }
+
     sealed class Argument(val type: Int): AppendableToStringBuilder() {
         class Integer(val value: Int) : Argument(TYPE_INTEGER) {
             override fun equals(other: Any?): Boolean {
@@ -32,6 +62,24 @@ class Request(val command: Int, val argument: Argument? = null) : AppendableToSt
             }
         }
 
+        class LongInteger(val value: Long) : Argument(TYPE_LONG_INTEGER) {
+            override fun equals(other: Any?): Boolean {
+                return equalsPattern(other) { o ->
+                    value == o.value
+                }
+            }
+
+            override fun hashCode(): Int {
+                return value.hashCode()
+            }
+
+            override fun append(sb: StringBuilder) {
+                sb.append("{type=LONG_INTEGER, value=")
+                sb.append(value)
+                sb.append('}')
+            }
+        }
+
         class DateRange(
             @ShortDateInt val start: Int,
             @ShortDateInt val endInclusive: Int
@@ -63,16 +111,59 @@ class Request(val command: Int, val argument: Argument? = null) : AppendableToSt
             }
         }
 
+        /**
+         * Date range, that is split to buckets of [bucketSeconds] seconds
+         */
+        class BucketedDateRange(
+            @ShortDateInt val start: Int,
+            @ShortDateInt val endInclusive: Int,
+            val bucketSeconds: Int
+        ) : Argument(TYPE_BUCKETED_DATE_RANGE) {
+            init {
+                require(ShortDate.isValid(start)) { "start" }
+                require(ShortDate.isValid(endInclusive)) { "endInclusive" }
+                require(bucketSeconds > 0) { "bucketSeconds" }
+            }
+
+            override fun equals(other: Any?): Boolean {
+                return equalsPattern(other) { o ->
+                    start == o.start && endInclusive == o.endInclusive && bucketSeconds == o.bucketSeconds
+                }
+            }
+
+            override fun hashCode(): Int {
+                var result = start
+                result = 31 * result + endInclusive
+                result = 31 * result + bucketSeconds
+
+                return result
+            }
+
+            override fun append(sb: StringBuilder) {
+                sb.append("{type=BUCKETED_DATE_RANGE, value={start=")
+                ShortDate.append(start, sb)
+                sb.append(", endInclusive=")
+                ShortDate.append(endInclusive, sb)
+                sb.append(", bucketSeconds=")
+                sb.append(bucketSeconds)
+                sb.append("}}")
+            }
+        }
+
         companion object {
             const val TYPE_NULL = 0
             const val TYPE_INTEGER = 1
             const val TYPE_DATE_RANGE = 2
+            const val TYPE_LONG_INTEGER = 3
+            const val TYPE_BUCKETED_DATE_RANGE = 4
 
             fun typeToString(type: Int): String {
                 return when(type) {
                     TYPE_NULL -> "TYPE_NULL"
                     TYPE_INTEGER -> "TYPE_INTEGER"
                     TYPE_DATE_RANGE -> "TYPE_DATE_RANGE"
+                    TYPE_LONG_INTEGER -> "TYPE_LONG_INTEGER"
+                    TYPE_BUCKETED_DATE_RANGE -> "TYPE_BUCKETED_DATE_RANGE"
                     else -> throw IllegalArgumentException("type")
                 }
             }
@@ -81,7 +172,10 @@ class Request(val command: Int, val argument: Argument? = null) : AppendableToSt
 
     override fun equals(other: Any?): Boolean {
         return equalsPattern(other) { o ->
-            command == o.command && argument == o.argument
+            command == o.command &&
+                    argument == o.argument &&
+                    ifDataVersionDiffers == o.ifDataVersionDiffers &&
+                    parameters == o.parameters
         }
     }
 
@@ -91,6 +185,9 @@ class Request(val command: Int, val argument: Argument? = null) : AppendableToSt
             result = 31 * result + argument.hashCode()
         }
 
+        result = 31 * result + ifDataVersionDiffers.hashCode()
+        result = 31 * result + parameters
+
         return result
     }
 
@@ -104,7 +201,27 @@ class Request(val command: Int, val argument: Argument? = null) : AppendableToSt
             } else {
                 append("null")
             }
+            if(ifDataVersionDiffers != NO_DATA_VERSION) {
+                append("; ifDataVersionDiffers=")
+                append(ifDataVersionDiffers)
+            }
+            if(parameters != ALL_PARAMETERS) {
+                append("; parameters=")
+                append(parameters)
+            }
             append('}')
         }
     }
-}
\ No newline at end of file
+
+    companion object {
+        /**
+         * Means that data version is unknown
+         */
+        const val NO_DATA_VERSION = -1L
+
+        /**
+         * Mask of all the weather parameters, the same as `WeatherParameters.ALL`
+         */
+        const val ALL_PARAMETERS = 7
+    }
+}
@@ -0,0 +1,40 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+/**
+ * Batch of [Request]s that were sent in one message, paired with flags of the message.
+ * [id] is used by contracts that allow many batches to be in flight on one connection
+ * (see [MultiplexedContract]), otherwise it's 0
+ */
+class RequestBatch(val requests: Array<Request>, val flags: Int = 0, val id: Int = 0) {
+    /**
+     * Determines whether client asked to keep connection open after the responses are sent
+     */
+    val keepConnection: Boolean
+        get() = hasFlag(FLAG_KEEP_CONNECTION)
+
+    fun hasFlag(flag: Int): Boolean {
+        return (flags and flag) != 0
+    }
+
+    companion object {
+        /**
+         * Signals that client is going to send more batches on the same connection,
+         * so server shouldn't close it after the responses are sent.
+         */
+        const val FLAG_KEEP_CONNECTION = 1
+
+        /**
+         * Signals that client is able to read response values written by compact serializers
+         * (see [com.pelmenstar.projktSens.shared.serialization.Serializable.getCompactSerializer]).
+         * Server is free to ignore it and answer with usual values.
+         */
+        const val FLAG_COMPACT_VALUES = 2
+
+        /**
+         * Signals that client wants value of the response to be sent in chunks as soon as they are computed
+         * (see [ResponsePart]). Makes sense only for batch of single request.
+         * If server can't split the value, it answers with [Errors.INVALID_COMMAND]
+         */
+        const val FLAG_CHUNKED_RESPONSE = 4
+    }
+}
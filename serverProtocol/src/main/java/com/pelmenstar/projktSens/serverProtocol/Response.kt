@@ -19,31 +19,53 @@ sealed class Response : AppendableToStringBuilder() {
         override fun hashCode(): Int = 31
     }
 
+    /**
+     * Response on request with [Request.ifDataVersionDiffers], that means data version is still the same
+     * and the value, that client already has, is actual
+     */
+    object NotModified : Response() {
+        override fun append(sb: StringBuilder) {
+            sb.append("{NotModified}")
+        }
+
+        override fun equals(other: Any?): Boolean = other === NotModified
+        override fun hashCode(): Int = 37
+    }
+
     /**
      * Response with error.
+     * [retryAfterMillis] is a hint how long client should wait before repeating the request, or 0 if there's no hint.
      * This class has private constructor, so static methods [Companion.error] should be used
      */
-    class Error internal constructor(val error: Int) : Response() {
+    class Error internal constructor(val error: Int, val retryAfterMillis: Int = 0) : Response() {
         override fun append(sb: StringBuilder) {
             sb.append("{Error=")
             sb.append(Errors.toString(error))
+            if(retryAfterMillis != 0) {
+                sb.append(", retryAfterMillis=")
+                sb.append(retryAfterMillis)
+            }
             sb.append('}')
         }
 
         override fun equals(other: Any?): Boolean {
             return equalsPattern(other) { o ->
-                error == o.error
+                error == o.error && retryAfterMillis == o.retryAfterMillis
             }
         }
 
-        override fun hashCode(): Int = error
+        override fun hashCode(): Int = 31 * error + retryAfterMillis
     }
 
     /**
      * Response with value paired with its class.
+     * [dataVersion] is version of the data, value was computed on, or [Request.NO_DATA_VERSION] if it's unknown.
      * This class has private constructor, so static methods [Companion.ok] should be used
      */
-    class Ok<T : Any> internal constructor(val value: T) : Response() {
+    class Ok<T : Any> internal constructor(
+        val value: T,
+        val dataVersion: Long = Request.NO_DATA_VERSION
+    ) : Response() {
         override fun append(sb: StringBuilder) {
             sb.append("{ Value=")
             sb.append(value)
@@ -73,6 +95,15 @@ sealed class Response : AppendableToStringBuilder() {
             return Error(error)
         }
 
+        /**
+         * Creates error response with [Errors.RATE_LIMITED], request should be repeated after [retryAfterMillis]
+         */
+        fun rateLimited(retryAfterMillis: Int): Error {
+            require(retryAfterMillis > 0) { "retryAfterMillis" }
+
+            return Error(Errors.RATE_LIMITED, retryAfterMillis)
+        }
+
         /**
          * Creates error response
          *
@@ -91,6 +122,13 @@ sealed class Response : AppendableToStringBuilder() {
             return Ok(value)
         }
 
+        /**
+         * Creates OK response, value of which was computed on data with given [dataVersion]
+         */
+        fun <T : Any> ok(value: T, dataVersion: Long): Ok<T> {
+            return Ok(value, dataVersion)
+        }
+
         /**
          * If [value] is null, returns [Empty] response, otherwise, returns [Ok] response
          * Note that generic parameter of this method is marked as reified,
@@ -0,0 +1,182 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+import com.pelmenstar.projktSens.shared.serialization.ObjectSerializer
+import com.pelmenstar.projktSens.shared.serialization.Serializable
+import com.pelmenstar.projktSens.shared.time.ShortDate
+import java.net.InetSocketAddress
+
+/**
+ * Keeps values of responses, so that repeated requests don't need a round trip to the server.
+ *
+ * How long the value is kept depends on the request:
+ * - reports and series on dates strictly before today never expire, because past days don't change;
+ * - reports and series, that cover today or later, and the rest of commands expire after given time-to-live;
+ * - [Commands.GET_NEXT_WEATHER_TIME], [Commands.HELLO] and streaming commands (see [Commands.isStreaming]) aren't cached at all.
+ *
+ * Expired value, that has data version (see [Response.Ok.dataVersion]), isn't removed: client can send the request
+ * with [Request.ifDataVersionDiffers] and [revalidate] the value if server answers with [Response.NotModified].
+ *
+ * Memory is bounded by [maxSize], that is total serialized size of the values.
+ * If it's exceeded, least recently used values are evicted.
+ */
+class ResponseCache(
+    private val maxSize: Int,
+    private val currentTimeMillis: () -> Long = System::currentTimeMillis,
+    private val todayEpochDay: () -> Int = ShortDate::nowEpochDay
+) {
+    private class Key(val address: InetSocketAddress, val request: Request) {
+        override fun equals(other: Any?): Boolean {
+            if (this === other) return true
+            if (other == null || javaClass != other.javaClass) return false
+
+            other as Key
+
+            return address == other.address && request == other.request
+        }
+
+        override fun hashCode(): Int {
+            return 31 * address.hashCode() + request.hashCode()
+        }
+    }
+
+    private class Entry(val value: Any, val size: Int, var expiresAt: Long, val dataVersion: Long)
+
+    // access-order, so that the eldest entry is the least recently used one.
+    private val entries = LinkedHashMap<Key, Entry>(16, 0.75f, true)
+    private var totalSize = 0
+
+    /**
+     * Total serialized size of cached values
+     */
+    val size: Int
+        get() = synchronized(entries) { totalSize }
+
+    /**
+     * Returns cached value of response on [request] to server with given [address] or null if there's no such value
+     * or it's expired.
+     */
+    fun get(address: InetSocketAddress, request: Request): Any? {
+        val key = Key(address, request)
+
+        synchronized(entries) {
+            val entry = entries[key] ?: return null
+
+            if (entry.expiresAt <= currentTimeMillis()) {
+                if (entry.dataVersion == Request.NO_DATA_VERSION) {
+                    entries.remove(key)
+                    totalSize -= entry.size
+                }
+
+                return null
+            }
+
+            return entry.value
+        }
+    }
+
+    /**
+     * Returns data version of cached (even expired) value of response on [request] to server with given [address]
+     * or [Request.NO_DATA_VERSION] if there's no such value or its version is unknown.
+     */
+    fun getDataVersion(address: InetSocketAddress, request: Request): Long {
+        synchronized(entries) {
+            return entries[Key(address, request)]?.dataVersion ?: Request.NO_DATA_VERSION
+        }
+    }
+
+    /**
+     * Marks cached value of response on [request] to server with given [address] as actual for [timeToLive] milliseconds
+     * more. Should be called when server answered with [Response.NotModified].
+     * Returns the value or null if it was evicted meanwhile.
+     */
+    fun revalidate(address: InetSocketAddress, request: Request, timeToLive: Int): Any? {
+        synchronized(entries) {
+            val entry = entries[Key(address, request)] ?: return null
+
+            if (entry.expiresAt != Long.MAX_VALUE) {
+                entry.expiresAt = currentTimeMillis() + timeToLive
+            }
+
+            return entry.value
+        }
+    }
+
+    /**
+     * Caches [value] of response on [request] to server with given [address].
+     * If value isn't immutable (see [ResponseCache]), it expires in [timeToLive] milliseconds.
+     * [dataVersion] is version of the data, value was computed on (see [Response.Ok.dataVersion]).
+     */
+    fun put(
+        address: InetSocketAddress,
+        request: Request,
+        value: Any,
+        timeToLive: Int,
+        dataVersion: Long = Request.NO_DATA_VERSION
+    ) {
+        if (!isCacheable(request.command)) {
+            return
+        }
+
+        val size = getSerializer(value.javaClass).getSerializedObjectSize(value)
+        if (size > maxSize) {
+            return
+        }
+
+        val expiresAt = if (isImmutable(request)) {
+            Long.MAX_VALUE
+        } else {
+            currentTimeMillis() + timeToLive
+        }
+
+        synchronized(entries) {
+            val old = entries.put(Key(address, request), Entry(value, size, expiresAt, dataVersion))
+            if (old != null) {
+                totalSize -= old.size
+            }
+
+            totalSize += size
+
+            trimToSize()
+        }
+    }
+
+    fun clear() {
+        synchronized(entries) {
+            entries.clear()
+            totalSize = 0
+        }
+    }
+
+    private fun trimToSize() {
+        val iterator = entries.values.iterator()
+
+        while (totalSize > maxSize && iterator.hasNext()) {
+            totalSize -= iterator.next().size
+            iterator.remove()
+        }
+    }
+
+    private fun isImmutable(request: Request): Boolean {
+        val lastDate = when (request.command) {
+            Commands.GET_DAY_REPORT -> (request.argument as? Request.Argument.Integer)?.value
+            Commands.GET_DAY_RANGE_REPORT, Commands.GET_DAY_REPORTS -> (request.argument as? Request.Argument.DateRange)?.endInclusive
+            Commands.GET_SERIES -> (request.argument as? Request.Argument.BucketedDateRange)?.endInclusive
+            else -> null
+        }
+
+        return lastDate != null && ShortDate.isValid(lastDate) && ShortDate.toEpochDay(lastDate) < todayEpochDay()
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun getSerializer(c: Class<*>): ObjectSerializer<Any> {
+        return Serializable.getSerializer(c) as ObjectSerializer<Any>
+    }
+
+    companion object {
+        private fun isCacheable(command: Int): Boolean {
+            return command != Commands.GET_NEXT_WEATHER_TIME &&
+                    command != Commands.HELLO &&
+                    !Commands.isStreaming(command)
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+/**
+ * Part of chunked response (see [RequestBatch.FLAG_CHUNKED_RESPONSE]).
+ * Server sends any count of [Chunk]s, which are followed by single [Final] response.
+ */
+sealed class ResponsePart {
+    class Chunk(val value: Any) : ResponsePart()
+
+    class Final(val response: Response) : ResponsePart()
+}
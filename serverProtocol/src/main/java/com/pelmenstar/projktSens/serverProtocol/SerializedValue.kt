@@ -0,0 +1,18 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+import com.pelmenstar.projktSens.shared.serialization.ObjectSerializer
+import com.pelmenstar.projktSens.shared.serialization.Serializable
+
+/**
+ * Value that is already serialized to [bytes] by usual (not compact) serializer.
+ * When it's sent as value of [Response.Ok], contract writes [bytes] as is instead of serializing the value,
+ * so that the other side reads it as the original value. Such a value can only be written, not read.
+ * [bytes] can be shared between many responses and must not be modified.
+ */
+class SerializedValue(@JvmField val bytes: ByteArray) {
+    companion object {
+        fun <T : Any> of(value: T, serializer: ObjectSerializer<T>): SerializedValue {
+            return SerializedValue(Serializable.toByteArray(value, serializer))
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.pelmenstar.projktSens.serverProtocol;
+
+import com.pelmenstar.projktSens.shared.AppendableToStringBuilder;
+import com.pelmenstar.projktSens.shared.InetAddressUtils;
+import com.pelmenstar.projktSens.shared.serialization.ObjectSerializer;
+import com.pelmenstar.projktSens.shared.serialization.Serializable;
+import com.pelmenstar.projktSens.shared.serialization.ValidationException;
+import com.pelmenstar.projktSens.shared.serialization.ValueReader;
+import com.pelmenstar.projktSens.shared.serialization.ValueWriter;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+/**
+ * Datagram, that server periodically sends to multicast group (see {@link BeaconSender}), so that clients can find it
+ * without probing addresses and passive displays can show the latest weather without connecting to the server.
+ * Payload is already serialized value (the latest weather), as the protocol doesn't know about weather models.
+ * Instances of this class can be serialized in format described below: <br/>
+ * - magic number ({@link ProjktSensServer#MAGIC_NUMBER}) | 4 bytes <br/>
+ * - address | 4 bytes <br/>
+ * - port | 2 bytes <br/>
+ * - payload.length | 1 byte <br/>
+ * - payload | payload.length bytes <br/>
+ */
+public final class ServerBeacon extends AppendableToStringBuilder {
+    /**
+     * Administratively scoped multicast group, datagrams to it don't leave local network
+     */
+    public static final String DEFAULT_GROUP_ADDRESS = "239.255.39.36";
+    public static final int DEFAULT_GROUP_PORT = 10002;
+
+    public static final int MAX_PAYLOAD_SIZE = 255;
+
+    /**
+     * Size of serialized beacon without payload
+     */
+    public static final int HEADER_SIZE = 11;
+
+    /**
+     * Max size of serialized beacon
+     */
+    public static final int MAX_SIZE = HEADER_SIZE + MAX_PAYLOAD_SIZE;
+
+    @NotNull
+    public static final ObjectSerializer<ServerBeacon> SERIALIZER;
+
+    /**
+     * IPv4 address of the server in the format of {@link InetAddressUtils#ip(int, int, int, int)}
+     */
+    public final int address;
+    public final int port;
+
+    private final byte @NotNull [] payload;
+
+    static {
+        SERIALIZER = new Serializer();
+
+        // not necessary but can affect performance
+        Serializable.registerSerializer(ServerBeacon.class, SERIALIZER);
+    }
+
+    /**
+     * Note that {@code payload} isn't copied and shouldn't be changed after the beacon is created
+     */
+    public ServerBeacon(int address, int port, byte @NotNull [] payload) {
+        if (port < 0 || port > 0xffff) {
+            throw ValidationException.invalidValue("port", port);
+        }
+
+        if (payload.length > MAX_PAYLOAD_SIZE) {
+            throw ValidationException.invalidValue("payload length", payload.length);
+        }
+
+        this.address = address;
+        this.port = port;
+        this.payload = payload;
+    }
+
+    /**
+     * Creates beacon of server at {@code socketAddress}, which should be IPv4 address, with serialized {@code value}
+     * as payload. If {@code value} is null, payload is empty
+     */
+    @NotNull
+    public static <T> ServerBeacon create(
+            @NotNull InetSocketAddress socketAddress,
+            @Nullable T value,
+            @NotNull ObjectSerializer<T> serializer
+    ) {
+        int address = InetAddressUtils.toInt(socketAddress.getAddress());
+        if (address == InetAddressUtils.IP_ERROR) {
+            throw new IllegalArgumentException("socketAddress");
+        }
+
+        byte[] payload = value != null ? Serializable.toByteArray(value, serializer) : new byte[0];
+
+        return new ServerBeacon(address, socketAddress.getPort(), payload);
+    }
+
+    @NotNull
+    public InetSocketAddress getSocketAddress() {
+        return new InetSocketAddress(InetAddressUtils.parseInt(address), port);
+    }
+
+    public boolean hasPayload() {
+        return payload.length > 0;
+    }
+
+    /**
+     * Returns payload of the beacon deserialized by {@code serializer} or null if the beacon has no payload
+     *
+     * @throws ValidationException if payload is invalid
+     */
+    @Nullable
+    public <T> T getPayload(@NotNull ObjectSerializer<T> serializer) throws ValidationException {
+        if (payload.length == 0) {
+            return null;
+        }
+
+        return Serializable.ofByteArray(payload, serializer);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (other == null || getClass() != other.getClass()) return false;
+
+        ServerBeacon o = (ServerBeacon) other;
+
+        return address == o.address && port == o.port && Arrays.equals(payload, o.payload);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = address;
+        result = 31 * result + port;
+        result = 31 * result + Arrays.hashCode(payload);
+
+        return result;
+    }
+
+    @Override
+    public void append(@NotNull StringBuilder sb) {
+        sb.append("{address=");
+        InetAddressUtils.appendIntIpv4(address, sb);
+        sb.append(", port=");
+        sb.append(port);
+        sb.append(", payloadSize=");
+        sb.append(payload.length);
+        sb.append('}');
+    }
+
+    private static final class Serializer implements ObjectSerializer<ServerBeacon> {
+        @Override
+        public int getSerializedObjectSize(@NotNull ServerBeacon value) {
+            return HEADER_SIZE + value.payload.length;
+        }
+
+        @Override
+        public void writeObject(@NotNull ServerBeacon value, @NotNull ValueWriter writer) {
+            writer.int32((int) ProjktSensServer.MAGIC_NUMBER);
+            writer.int32(value.address);
+            writer.int16((short) value.port);
+            writer.int8((byte) value.payload.length);
+            writer.byteArray(value.payload);
+        }
+
+        @NotNull
+        @Override
+        public ServerBeacon readObject(@NotNull ValueReader reader) throws ValidationException {
+            int magic = reader.int32();
+            if (magic != (int) ProjktSensServer.MAGIC_NUMBER) {
+                throw ValidationException.invalidValue("magic number", magic);
+            }
+
+            int address = reader.int32();
+            int port = reader.int16() & 0xffff;
+            int payloadLength = reader.int8() & 0xff;
+
+            byte[] payload = payloadLength > 0 ? reader.byteArray(payloadLength) : new byte[0];
+
+            return new ServerBeacon(address, port, payload);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+import com.pelmenstar.projktSens.shared.io.Input
+import com.pelmenstar.projktSens.shared.io.Output
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.async
+import kotlinx.coroutines.cancelChildren
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.collect
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.sync.withPermit
+import java.io.IOException
+
+/**
+ * Computes [Response] on given [Request] on server side
+ */
+fun interface RequestHandler {
+    suspend fun handle(request: Request): Response
+}
+
+/**
+ * Opens response stream on streaming [Request] (see [Commands.isStreaming]) on server side
+ */
+fun interface StreamHandler {
+    fun openStream(request: Request): Flow<Response>
+}
+
+/**
+ * Computes [Response] on given [Request] on server side and sends parts of its value through [emitChunk]
+ * before the response is complete (see [RequestBatch.FLAG_CHUNKED_RESPONSE]).
+ * Returned response should contain only what wasn't sent in chunks
+ */
+fun interface ChunkedRequestHandler {
+    suspend fun handle(request: Request, emitChunk: suspend (chunk: Any) -> Unit): Response
+}
+
+/**
+ * Serves one client connection on server side: reads request batches, handles them using [handler] and writes responses.
+ * If client sends batch with [RequestBatch.FLAG_KEEP_CONNECTION], next batches are served on the same connection
+ * until client closes it.
+ *
+ * With [MultiplexedContract] connection is always kept open and batches are handled concurrently,
+ * responses are written as soon as they are ready.
+ *
+ * Batch, that consists of single streaming request, is answered by stream of values from [streamHandler].
+ * The stream lasts until client closes the connection, so no more batches are served on it
+ * (except with [MultiplexedContract]).
+ *
+ * Batch, that consists of single request and has [RequestBatch.FLAG_CHUNKED_RESPONSE], is handled by [chunkedHandler].
+ *
+ * Requests of other batches are handled concurrently, at most [maxParallelRequests] at once, so that cheap requests
+ * don't wait for heavy ones. Equal requests in the batch are handled once, responses are in the order of requests.
+ * Requests are handled in coroutine context of [serve], so blocking handlers need multi-threaded dispatcher
+ * to run in parallel.
+ */
+class ServerConnection(
+    private val contract: Contract,
+    private val streamHandler: StreamHandler? = null,
+    private val chunkedHandler: ChunkedRequestHandler? = null,
+    private val maxParallelRequests: Int = DEFAULT_MAX_PARALLEL_REQUESTS,
+    private val handler: RequestHandler
+) {
+    init {
+        require(maxParallelRequests > 0) { "maxParallelRequests" }
+    }
+
+    suspend fun serve(input: Input, output: Output) {
+        if (contract === MultiplexedContract) {
+            serveMultiplexed(input, output)
+            return
+        }
+
+        var isFirstBatch = true
+
+        while (true) {
+            val batch = try {
+                contract.readRequestBatch(input)
+            } catch (e: IOException) {
+                // client closed kept connection, that's normal end of the session.
+                if (isFirstBatch) {
+                    throw e
+                }
+
+                return
+            }
+
+            isFirstBatch = false
+
+            val stream = openStream(batch)
+            if (stream != null) {
+                try {
+                    stream.collect { contract.writeStreamValue(it, output) }
+                } catch (e: IOException) {
+                    // client closed the stream
+                }
+
+                return
+            }
+
+            val responses = if (isChunked(batch)) {
+                arrayOf(handleChunked(batch.requests[0]) { chunk ->
+                    contract.writeResponseChunk(chunk, output, batch.flags)
+                })
+            } else {
+                handleBatch(batch)
+            }
+
+            contract.writeResponses(responses, output, batch.flags)
+
+            if (!batch.keepConnection) {
+                return
+            }
+        }
+    }
+
+    private suspend fun serveMultiplexed(input: Input, output: Output) {
+        val writeMutex = Mutex()
+
+        coroutineScope {
+            while (true) {
+                val batch = try {
+                    MultiplexedContract.readRequestBatch(input)
+                } catch (e: IOException) {
+                    // client closed connection, so nobody is waiting for responses and pushed values.
+                    coroutineContext.cancelChildren()
+                    break
+                }
+
+                val stream = openStream(batch)
+
+                launch {
+                    if (stream != null) {
+                        try {
+                            stream.collect {
+                                writeMutex.withLock {
+                                    MultiplexedContract.writeResponseFrame(batch.id, arrayOf(it), output)
+                                }
+                            }
+                        } catch (e: IOException) {
+                            // client closed connection
+                        }
+                    } else if (isChunked(batch)) {
+                        try {
+                            val response = handleChunked(batch.requests[0]) { chunk ->
+                                writeMutex.withLock {
+                                    MultiplexedContract.writeResponseChunkFrame(batch.id, chunk, output, batch.flags)
+                                }
+                            }
+
+                            writeMutex.withLock {
+                                MultiplexedContract.writeResponseFrame(batch.id, arrayOf(response), output, batch.flags)
+                            }
+                        } catch (e: IOException) {
+                            // client closed connection
+                        }
+                    } else {
+                        val responses = handleBatch(batch)
+
+                        writeMutex.withLock {
+                            MultiplexedContract.writeResponseFrame(batch.id, responses, output, batch.flags)
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns stream of values, if [batch] consists of single streaming request, otherwise null
+     */
+    private fun openStream(batch: RequestBatch): Flow<Response>? {
+        val requests = batch.requests
+        val streamHandler = streamHandler
+
+        if (streamHandler == null || requests.size != 1 || !Commands.isStreaming(requests[0].command)) {
+            return null
+        }
+
+        return streamHandler.openStream(requests[0])
+    }
+
+    private fun isChunked(batch: RequestBatch): Boolean {
+        return batch.requests.size == 1 && batch.hasFlag(RequestBatch.FLAG_CHUNKED_RESPONSE)
+    }
+
+    private suspend fun handleChunked(request: Request, emitChunk: suspend (chunk: Any) -> Unit): Response {
+        val chunkedHandler = chunkedHandler
+        if (chunkedHandler == null || Commands.isStreaming(request.command)) {
+            return Response.error(Errors.INVALID_COMMAND)
+        }
+
+        return try {
+            chunkedHandler.handle(request, emitChunk)
+        } catch (e: IOException) {
+            // the connection is broken, so there's no way to send an error
+            throw e
+        } catch (e: Exception) {
+            Response.error(e)
+        }
+    }
+
+    private suspend fun handleBatch(batch: RequestBatch): Array<Response> {
+        val requests = batch.requests
+        if (requests.size == 1) {
+            return arrayOf(handleRequest(requests[0]))
+        }
+
+        // index of request in uniqueRequests for each request of the batch
+        val uniqueIndices = IntArray(requests.size)
+        val uniqueRequests = ArrayList<Request>(requests.size)
+        val indexMap = HashMap<Request, Int>(requests.size)
+
+        for ((i, request) in requests.withIndex()) {
+            uniqueIndices[i] = indexMap.getOrPut(request) {
+                uniqueRequests.add(request)
+
+                uniqueRequests.size - 1
+            }
+        }
+
+        val uniqueResponses = if (uniqueRequests.size == 1) {
+            arrayOf(handleRequest(uniqueRequests[0]))
+        } else {
+            coroutineScope {
+                val semaphore = Semaphore(maxParallelRequests)
+                val deferredResponses = Array(uniqueRequests.size) { i ->
+                    async {
+                        semaphore.withPermit { handleRequest(uniqueRequests[i]) }
+                    }
+                }
+
+                Array(deferredResponses.size) { i -> deferredResponses[i].await() }
+            }
+        }
+
+        return Array(requests.size) { i -> uniqueResponses[uniqueIndices[i]] }
+    }
+
+    private suspend fun handleRequest(request: Request): Response {
+        // Streaming request can't be answered by single response
+        if (Commands.isStreaming(request.command)) {
+            return Response.error(Errors.INVALID_COMMAND)
+        }
+
+        return try {
+            handler.handle(request)
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Response.error(e)
+        }
+    }
+
+    companion object {
+        const val DEFAULT_MAX_PARALLEL_REQUESTS = 4
+    }
+}
@@ -0,0 +1,99 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+import com.pelmenstar.projktSens.shared.InetAddressUtils
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import java.net.InetSocketAddress
+
+/**
+ * Finds repo servers in local network. Addresses are probed in parallel by [ProjktSensServerChecker],
+ * at most [maxParallelProbes] at the same time, so that scanning whole subnet takes about
+ * `256 / maxParallelProbes * (connectTimeout + responseTimeout)` milliseconds in the worst case
+ * instead of several minutes
+ */
+class ServerDiscovery(
+    private val contract: Contract,
+    private val maxParallelProbes: Int = DEFAULT_MAX_PARALLEL_PROBES,
+    private val connectTimeout: Int = DEFAULT_CONNECT_TIMEOUT,
+    private val responseTimeout: Int = DEFAULT_RESPONSE_TIMEOUT
+) {
+    init {
+        require(maxParallelProbes > 0) { "maxParallelProbes" }
+        require(connectTimeout > 0) { "connectTimeout" }
+        require(responseTimeout > 0) { "responseTimeout" }
+    }
+
+    /**
+     * Probes all the hosts of /24 subnet of [hostIp] (except [hostIp] itself) on given [port].
+     * [hostIp] is IPv4 address in the format of [InetAddressUtils.ip]
+     */
+    fun scanSubnet(hostIp: Int, port: Int): Flow<InetSocketAddress> {
+        // the last octet is in the highest byte
+        val subnet = hostIp and 0x00ffffff
+
+        val addresses = ArrayList<InetSocketAddress>(254)
+        for (host in 1..254) {
+            val ip = subnet or (host shl 24)
+
+            if (ip != hostIp) {
+                addresses.add(InetSocketAddress(InetAddressUtils.parseInt(ip), port))
+            }
+        }
+
+        return scan(addresses)
+    }
+
+    /**
+     * Probes given [addresses] and emits each one, that is a repo server, as soon as it answered.
+     * The order of emitted addresses is not specified
+     */
+    fun scan(addresses: Iterable<InetSocketAddress>): Flow<InetSocketAddress> {
+        return flow {
+            coroutineScope {
+                val servers = Channel<InetSocketAddress>(Channel.UNLIMITED)
+                val semaphore = Semaphore(maxParallelProbes)
+
+                // values can be emitted only from the collecting coroutine, so probes send them through the channel
+                launch {
+                    try {
+                        coroutineScope {
+                            for (address in addresses) {
+                                launch {
+                                    val status = semaphore.withPermit {
+                                        ProjktSensServerChecker.isProjktSensServer(
+                                            contract, address,
+                                            connectTimeout, responseTimeout
+                                        )
+                                    }
+
+                                    if (status == ProjktSensServerChecker.Status.IS_PROJKT_SENS_SERVER) {
+                                        servers.send(address)
+                                    }
+                                }
+                            }
+                        }
+                    } finally {
+                        servers.close()
+                    }
+                }
+
+                for (address in servers) {
+                    emit(address)
+                }
+            }
+        }
+    }
+
+    companion object {
+        const val DEFAULT_MAX_PARALLEL_PROBES = 64
+
+        // hosts in local network answer fast, so there's no reason to wait as long as for known server
+        const val DEFAULT_CONNECT_TIMEOUT = 500
+        const val DEFAULT_RESPONSE_TIMEOUT = 1000
+    }
+}
@@ -1,7 +1,8 @@
 package com.pelmenstar.projktSens.serverProtocol
 
 /**
- * Server exception
+ * Server exception.
+ * [retryAfterMillis] is a hint how long to wait before repeating the request, or 0 if there's no hint
  */
-class ServerException(error: Int) :
-    RuntimeException("Server returned error (${Errors.toString(error)})")
\ No newline at end of file
+class ServerException(val error: Int, val retryAfterMillis: Int = 0) :
+    RuntimeException("Server returned error (${Errors.toString(error)})")
@@ -0,0 +1,56 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.ensureActive
+import kotlin.coroutines.coroutineContext
+
+/**
+ * Coalesces concurrent calls with equal keys: the first caller runs the block, others wait for its result
+ * instead of running the block again. When the call is completed, next call with the same key runs the block again.
+ *
+ * If the caller, that runs the block, is cancelled, one of the waiting callers runs the block instead.
+ */
+internal class SingleFlight<K : Any, V> {
+    private val inFlight = HashMap<K, CompletableDeferred<V>>()
+
+    suspend fun run(key: K, block: suspend () -> V): V {
+        while (true) {
+            var isOwner = false
+            val deferred = synchronized(inFlight) {
+                inFlight.getOrPut(key) {
+                    isOwner = true
+
+                    CompletableDeferred()
+                }
+            }
+
+            if (!isOwner) {
+                try {
+                    return deferred.await()
+                } catch (e: CancellationException) {
+                    // Either this caller or the owner is cancelled. In the latter case, the call is repeated
+                    coroutineContext.ensureActive()
+                    continue
+                }
+            }
+
+            try {
+                val value = block()
+                deferred.complete(value)
+
+                return value
+            } catch (e: Throwable) {
+                deferred.completeExceptionally(e)
+
+                throw e
+            } finally {
+                synchronized(inFlight) {
+                    if (inFlight[key] === deferred) {
+                        inFlight.remove(key)
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+/**
+ * Wraps [handler] to support conditional requests on server side.
+ * Responses on data-dependent commands (see [Commands.isDataDependent]) are marked with current data version,
+ * and if request's [Request.ifDataVersionDiffers] is equal to current data version, [Response.NotModified] is returned
+ * without calling [handler].
+ *
+ * Data version is read before the request is handled, so if the data is changed meanwhile,
+ * the response is marked with older version and next conditional request just gets full response.
+ */
+class VersionedRequestHandler(
+    private val currentDataVersion: () -> Long,
+    private val handler: RequestHandler
+) : RequestHandler {
+    override suspend fun handle(request: Request): Response {
+        if (!Commands.isDataDependent(request.command)) {
+            return handler.handle(request)
+        }
+
+        val version = currentDataVersion()
+        if (request.ifDataVersionDiffers != Request.NO_DATA_VERSION && request.ifDataVersionDiffers == version) {
+            return Response.NotModified
+        }
+
+        val response = handler.handle(request)
+
+        return if (response is Response.Ok<*>) {
+            Response.ok(response.value, version)
+        } else {
+            response
+        }
+    }
+}
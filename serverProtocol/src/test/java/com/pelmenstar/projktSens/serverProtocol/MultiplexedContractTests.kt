@@ -0,0 +1,82 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+import com.pelmenstar.projktSens.serverProtocol.ProtocolTestUtil.LONG_CLASS
+import com.pelmenstar.projktSens.serverProtocol.ProtocolTestUtil.bytesOf
+import com.pelmenstar.projktSens.serverProtocol.ProtocolTestUtil.inputOf
+import kotlinx.coroutines.runBlocking
+import org.junit.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertIs
+import kotlin.test.assertNotNull
+import kotlin.test.assertNull
+
+class MultiplexedContractTests {
+    @Test
+    fun requestFrame_keepsId() {
+        val requests = arrayOf(Request(Commands.GET_LAST_WEATHER), Request(Commands.GET_DAY_REPORT, 1))
+        val flags = RequestBatch.FLAG_COMPACT_VALUES
+
+        val bytes = bytesOf {
+            MultiplexedContract.writeRequestFrame(5, requests, it, flags)
+            MultiplexedContract.writeRequestFrame(Int.MAX_VALUE, requests, it, 0)
+        }
+
+        runBlocking {
+            val input = inputOf(bytes)
+
+            val first = MultiplexedContract.readRequestBatch(input)
+            assertEquals(5, first.id)
+            assertEquals(flags, first.flags)
+            assertContentEquals(requests, first.requests)
+
+            val second = MultiplexedContract.readRequestBatch(input)
+            assertEquals(Int.MAX_VALUE, second.id)
+            assertEquals(0, second.flags)
+        }
+    }
+
+    @Test
+    fun responseFrame_isSkippedWithoutValueClasses() {
+        val bytes = bytesOf {
+            MultiplexedContract.writeResponseFrame(7, arrayOf(Response.ok(1L)), it)
+            MultiplexedContract.writeResponseFrame(8, arrayOf(Response.ok(2L, 3L), Response.NotModified), it)
+        }
+
+        runBlocking {
+            val input = inputOf(bytes)
+
+            // nobody waits for the first frame
+            val skipped = MultiplexedContract.readResponseFrame(input) { id -> if (id == 8) arrayOf(LONG_CLASS, LONG_CLASS) else null }
+            assertEquals(7, skipped.id)
+            assertNull(skipped.responses)
+
+            val frame = MultiplexedContract.readResponseFrame(input) { id -> if (id == 8) arrayOf(LONG_CLASS, LONG_CLASS) else null }
+            assertEquals(8, frame.id)
+
+            val responses = assertNotNull(frame.responses)
+            assertContentEquals(arrayOf(Response.ok(2L), Response.NotModified), responses)
+            assertEquals(3L, (responses[0] as Response.Ok<*>).dataVersion)
+        }
+    }
+
+    @Test
+    fun responseChunkFrame_readWrite() {
+        val bytes = bytesOf {
+            MultiplexedContract.writeResponseChunkFrame(3, 1L, it, 0)
+            MultiplexedContract.writeResponseFrame(3, arrayOf(Response.ok(2L)), it)
+        }
+
+        runBlocking {
+            val input = inputOf(bytes)
+
+            val chunk = MultiplexedContract.readResponsePart(input, LONG_CLASS, LONG_CLASS)
+            assertIs<ResponsePart.Chunk>(chunk)
+            assertEquals(1L, chunk.value)
+
+            val final = MultiplexedContract.readResponsePart(input, LONG_CLASS, LONG_CLASS)
+            assertIs<ResponsePart.Final>(final)
+            assertEquals(Response.ok(2L), final.response)
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+import com.pelmenstar.projktSens.shared.io.Input
+import com.pelmenstar.projktSens.shared.io.Output
+import kotlinx.coroutines.runBlocking
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+
+object ProtocolTestUtil {
+    val LONG_CLASS: Class<*> = Long::class.javaObjectType
+
+    /**
+     * Returns bytes, written by [write]
+     */
+    fun bytesOf(write: suspend (Output) -> Unit): ByteArray {
+        val stream = ByteArrayOutputStream()
+        runBlocking {
+            write(Output.of(stream))
+        }
+
+        return stream.toByteArray()
+    }
+
+    fun inputOf(bytes: ByteArray): Input {
+        return Input.of(ByteArrayInputStream(bytes))
+    }
+}
@@ -0,0 +1,204 @@
+package com.pelmenstar.projktSens.serverProtocol
+
+import com.pelmenstar.projktSens.serverProtocol.ProtocolTestUtil.LONG_CLASS
+import com.pelmenstar.projktSens.serverProtocol.ProtocolTestUtil.bytesOf
+import com.pelmenstar.projktSens.serverProtocol.ProtocolTestUtil.inputOf
+import com.pelmenstar.projktSens.shared.serialization.Serializable
+import com.pelmenstar.projktSens.shared.time.ShortDate
+import kotlinx.coroutines.runBlocking
+import org.junit.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertIs
+
+class RawContractTests {
+    private val date = ShortDate.create(2021, 1, 1)
+
+    private fun createRequests(count: Int): Array<Request> {
+        return Array(count) { i ->
+            when (i % 4) {
+                0 -> Request(Commands.GET_DAY_REPORT, Request.Argument.Integer(date))
+                1 -> Request(Commands.GET_DAY_RANGE_REPORT, Request.Argument.DateRange(date, ShortDate.plusDays(date, i)))
+                2 -> Request(Commands.GET_WEATHER_SINCE, Request.Argument.LongInteger(i * 1000L))
+                else -> Request(Commands.GET_SERIES, Request.Argument.BucketedDateRange(date, date, 3600))
+            }
+        }
+    }
+
+    private fun readWriteRequests(requests: Array<Request>, flags: Int): RequestBatch {
+        val bytes = bytesOf { RawContract.writeRequests(requests, it, flags) }
+
+        return runBlocking { RawContract.readRequestBatch(inputOf(bytes)) }
+    }
+
+    private fun readWriteResponses(responses: Array<Response>, requestFlags: Int = 0): Array<Response> {
+        val bytes = bytesOf { RawContract.writeResponses(responses, it, requestFlags) }
+
+        return runBlocking { RawContract.readResponses(inputOf(bytes), Array(responses.size) { LONG_CLASS }) }
+    }
+
+    @Test
+    fun requests_legacyFrame() {
+        val request = Request(Commands.GET_DAY_REPORT, Request.Argument.Integer(0x04030201))
+
+        // body size (2 bytes), count, command, argument type, argument
+        val legacyBytes = byteArrayOf(6, 0, 1, 1, 1, 1, 2, 3, 4)
+
+        assertContentEquals(legacyBytes, bytesOf { RawContract.writeRequests(arrayOf(request), it) })
+
+        val batch = runBlocking { RawContract.readRequestBatch(inputOf(legacyBytes)) }
+        assertEquals(0, batch.flags)
+        assertContentEquals(arrayOf(request), batch.requests)
+    }
+
+    @Test
+    fun requests_readWrite() {
+        for (count in intArrayOf(1, 4, 127)) {
+            val requests = createRequests(count)
+
+            assertContentEquals(requests, readWriteRequests(requests, 0).requests)
+        }
+    }
+
+    @Test
+    fun requests_batchFlags() {
+        val requests = createRequests(4)
+        val flags = RequestBatch.FLAG_KEEP_CONNECTION or RequestBatch.FLAG_COMPACT_VALUES
+
+        val bytes = bytesOf { RawContract.writeRequests(requests, it, flags) }
+        assertEquals(requests.size or 0x80, bytes[2].toInt() and 0xff)
+
+        val batch = readWriteRequests(requests, flags)
+        assertEquals(flags, batch.flags)
+        assertContentEquals(requests, batch.requests)
+    }
+
+    @Test
+    fun requests_varIntFraming() {
+        // more requests than the first version can hold
+        val requests = createRequests(300)
+        val flags = RequestBatch.FLAG_KEEP_CONNECTION
+
+        val bytes = bytesOf { RawContract.writeRequests(requests, it, flags) }
+        assertEquals(-1, bytes[0].toInt())
+        assertEquals(-1, bytes[1].toInt())
+        assertEquals(2, bytes[2].toInt())
+
+        val batch = readWriteRequests(requests, flags)
+        assertEquals(flags, batch.flags)
+        assertContentEquals(requests, batch.requests)
+    }
+
+    @Test
+    fun requests_dataVersionAndParameters() {
+        val requests = arrayOf(
+            Request(Commands.GET_DAY_REPORT, Request.Argument.Integer(date), ifDataVersionDiffers = 42L),
+            Request(Commands.GET_DAY_REPORT, Request.Argument.Integer(date), parameters = 1),
+            Request(Commands.GET_DAY_RANGE_REPORT, Request.Argument.DateRange(date, date), 43L, 3),
+            Request(Commands.GET_LAST_WEATHER, null, 44L, 2)
+        )
+
+        val decoded = readWriteRequests(requests, 0).requests
+
+        assertContentEquals(requests, decoded)
+        assertEquals(42L, decoded[0].ifDataVersionDiffers)
+        assertEquals(1, decoded[1].parameters)
+        assertEquals(Request.NO_DATA_VERSION, decoded[1].ifDataVersionDiffers)
+        assertEquals(Request.ALL_PARAMETERS, decoded[0].parameters)
+    }
+
+    @Test
+    fun responses_legacyFrame() {
+        // body size (4 bytes), count, type, error id
+        val legacyBytes = byteArrayOf(5, 0, 0, 0, 1, 1, Errors.INVALID_COMMAND.toByte(), 0, 0, 0)
+
+        assertContentEquals(
+            legacyBytes,
+            bytesOf { RawContract.writeResponses(arrayOf(Response.error(Errors.INVALID_COMMAND)), it) }
+        )
+
+        val responses = runBlocking { RawContract.readResponses(inputOf(legacyBytes), arrayOf(LONG_CLASS)) }
+        assertEquals(Response.error(Errors.INVALID_COMMAND), responses[0])
+    }
+
+    @Test
+    fun responses_allTypes() {
+        val responses = arrayOf(
+            Response.Empty,
+            Response.NotModified,
+            Response.error(Errors.INVALID_ARGUMENTS),
+            Response.rateLimited(1500),
+            Response.ok(5L),
+            Response.ok(6L, 100L)
+        )
+
+        val decoded = readWriteResponses(responses)
+
+        assertContentEquals(responses, decoded)
+        assertEquals(1500, (decoded[3] as Response.Error).retryAfterMillis)
+        assertEquals(0, (decoded[2] as Response.Error).retryAfterMillis)
+        assertEquals(Request.NO_DATA_VERSION, (decoded[4] as Response.Ok<*>).dataVersion)
+        assertEquals(100L, (decoded[5] as Response.Ok<*>).dataVersion)
+    }
+
+    @Test
+    fun responses_varIntFraming() {
+        val responses = Array<Response>(300) { i -> Response.ok(i.toLong(), i.toLong()) }
+
+        val bytes = bytesOf { RawContract.writeResponses(responses, it) }
+        assertEquals(-1, bytes[0].toInt())
+        assertEquals(2, bytes[4].toInt())
+
+        val decoded = readWriteResponses(responses)
+        assertContentEquals(responses, decoded)
+        assertEquals(299L, (decoded[299] as Response.Ok<*>).dataVersion)
+    }
+
+    @Test
+    fun responses_compactValues() {
+        val responses = arrayOf<Response>(Response.ok(5L), Response.error(Errors.INVALID_ARGUMENTS))
+
+        val bytes = bytesOf { RawContract.writeResponses(responses, it, RequestBatch.FLAG_COMPACT_VALUES) }
+        assertEquals(responses.size or 0x80, bytes[4].toInt() and 0xff)
+
+        assertContentEquals(responses, readWriteResponses(responses, RequestBatch.FLAG_COMPACT_VALUES))
+
+        // bytes of serialized value aren't compact, so the flag is ignored
+        val serialized = SerializedValue.of(5L, Serializable.getSerializer(Long::class.javaObjectType))
+        val serializedBytes = bytesOf {
+            RawContract.writeResponses(arrayOf(Response.ok(serialized)), it, RequestBatch.FLAG_COMPACT_VALUES)
+        }
+        assertEquals(1, serializedBytes[4].toInt())
+
+        val decoded = runBlocking { RawContract.readResponses(inputOf(serializedBytes), arrayOf(LONG_CLASS)) }
+        assertEquals(Response.ok(5L), decoded[0])
+    }
+
+    @Test
+    fun responseParts_chunkedResponse() {
+        val bytes = bytesOf {
+            RawContract.writeResponseChunk(1L, it, 0)
+            RawContract.writeResponseChunk(2L, it, 0)
+            RawContract.writeResponses(arrayOf(Response.ok(3L, 4L)), it)
+        }
+
+        runBlocking {
+            val input = inputOf(bytes)
+
+            for (value in longArrayOf(1L, 2L)) {
+                val part = RawContract.readResponsePart(input, LONG_CLASS, LONG_CLASS)
+
+                assertIs<ResponsePart.Chunk>(part)
+                assertEquals(value, part.value)
+            }
+
+            val final = RawContract.readResponsePart(input, LONG_CLASS, LONG_CLASS)
+            assertIs<ResponsePart.Final>(final)
+
+            val response = final.response
+            assertIs<Response.Ok<*>>(response)
+            assertEquals(3L, response.value)
+            assertEquals(4L, response.dataVersion)
+        }
+    }
+}
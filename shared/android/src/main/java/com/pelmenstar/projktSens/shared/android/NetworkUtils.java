@@ -7,8 +7,16 @@ import android.net.NetworkCapabilities;
 import android.net.NetworkInfo;
 import android.os.Build;
 
+import com.pelmenstar.projktSens.shared.InetAddressUtils;
+
 import org.jetbrains.annotations.NotNull;
 
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Enumeration;
+
 public final class NetworkUtils {
     private NetworkUtils() {}
 
@@ -33,4 +41,39 @@ public final class NetworkUtils {
             return active != null && active.isConnected();
         }
     }
+
+    /**
+     * Returns IPv4 address of the device in local network in the format of {@link InetAddressUtils#ip(int, int, int, int)}
+     * or {@link InetAddressUtils#IP_ERROR} if the device isn't connected to any local network.
+     * Interfaces are enumerated, so it shouldn't be called on the main thread
+     */
+    public static int getDeviceIpv4() {
+        try {
+            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+            if (interfaces == null) {
+                return InetAddressUtils.IP_ERROR;
+            }
+
+            while (interfaces.hasMoreElements()) {
+                NetworkInterface ni = interfaces.nextElement();
+                if (!ni.isUp() || ni.isLoopback()) {
+                    continue;
+                }
+
+                Enumeration<InetAddress> addresses = ni.getInetAddresses();
+                while (addresses.hasMoreElements()) {
+                    InetAddress address = addresses.nextElement();
+
+                    // addresses of mobile networks aren't site-local, there are no servers in their subnets
+                    if (address instanceof Inet4Address && address.isSiteLocalAddress()) {
+                        return InetAddressUtils.toInt(address);
+                    }
+                }
+            }
+        } catch (SocketException e) {
+            // interfaces can't be read, so the address is unknown
+        }
+
+        return InetAddressUtils.IP_ERROR;
+    }
 }
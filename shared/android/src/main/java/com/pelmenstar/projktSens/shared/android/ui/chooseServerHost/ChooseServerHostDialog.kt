@@ -16,12 +16,15 @@ import androidx.fragment.app.DialogFragment
 import com.pelmenstar.projktSens.serverProtocol.Contract
 import com.pelmenstar.projktSens.serverProtocol.ContractType
 import com.pelmenstar.projktSens.serverProtocol.ProjktSensServerChecker
+import com.pelmenstar.projktSens.serverProtocol.ServerDiscovery
 import com.pelmenstar.projktSens.shared.InetAddressUtils
 import com.pelmenstar.projktSens.shared.StringUtils
+import com.pelmenstar.projktSens.shared.android.NetworkUtils
 import com.pelmenstar.projktSens.shared.android.R
 import com.pelmenstar.projktSens.shared.android.ext.Message
 import com.pelmenstar.projktSens.shared.android.ui.*
 import kotlinx.coroutines.*
+import kotlinx.coroutines.flow.firstOrNull
 import java.net.InetSocketAddress
 
 class ChooseServerHostDialog: DialogFragment() {
@@ -43,6 +46,7 @@ class ChooseServerHostDialog: DialogFragment() {
     private var contract: Contract? = null
 
     private var checkJob: Job? = null
+    private var foundAddressText: String? = null
 
     private val mainThreadHandler = MainThreadHandler()
 
@@ -58,6 +62,9 @@ class ChooseServerHostDialog: DialogFragment() {
             dismiss()
         }
 
+        // listener is set when dialog is shown, so that the button doesn't dismiss the dialog
+        builder.setNeutralButton(R.string.search_servers, null)
+
         builder.setView(view)
 
         addressInput = view.findViewById(R.id.chooseServerHost_addressInput)
@@ -115,7 +122,11 @@ class ChooseServerHostDialog: DialogFragment() {
             if (it != null) setPortText(it.toString())
         }
 
-        return builder.create()
+        return builder.create().also { dialog ->
+            dialog.setOnShowListener {
+                dialog.getButton(AlertDialog.BUTTON_NEUTRAL).setOnClickListener { searchServers() }
+            }
+        }
     }
 
     override fun onSaveInstanceState(outState: Bundle) {
@@ -219,6 +230,12 @@ class ChooseServerHostDialog: DialogFragment() {
 
                 setTotalValidity(true)
             }
+            STATUS_SERVERS_NOT_FOUND -> {
+                resultView.text = getString(R.string.servers_not_found)
+                resultView.setTextColor(invalidColor)
+
+                setTotalValidity(false)
+            }
         }
     }
 
@@ -272,6 +289,54 @@ class ChooseServerHostDialog: DialogFragment() {
         }
     }
 
+    /**
+     * Searches servers on entered port and chooses the first found one.
+     * Subnet of entered address is searched, or subnet of the device if the address is empty or invalid
+     */
+    private fun searchServers() {
+        val contract = contract ?: throw RuntimeException("Contract is null")
+
+        if (!isPortValid) {
+            return
+        }
+
+        mainThreadHandler.removeMessages(MSG_CHECK_IP)
+
+        val enteredAddress = if (isAddressValid) _address else InetAddressUtils.IP_ERROR
+
+        checkJob?.cancel()
+        checkJob = scope.launch {
+            postSetStatus(STATUS_LOADING)
+
+            val hostIp = if (enteredAddress != InetAddressUtils.IP_ERROR) enteredAddress else NetworkUtils.getDeviceIpv4()
+            if (hostIp == InetAddressUtils.IP_ERROR) {
+                postSetStatus(STATUS_SERVERS_NOT_FOUND)
+                return@launch
+            }
+
+            val found = ServerDiscovery(contract).scanSubnet(hostIp, _port).firstOrNull()
+
+            if (found != null) {
+                foundAddressText = found.address.hostAddress
+
+                mainThreadHandler.sendMessage(Message {
+                    what = MSG_SET_FOUND_ADDRESS
+                    obj = this@ChooseServerHostDialog
+                })
+            } else {
+                postSetStatus(STATUS_SERVERS_NOT_FOUND)
+            }
+        }
+    }
+
+    private fun setFoundAddress() {
+        val text = foundAddressText ?: return
+        foundAddressText = null
+
+        // server is checked again by text listener, it's fast as the address is known to be available
+        addressInput.setText(text)
+    }
+
     class MainThreadHandler: Handler(Looper.getMainLooper()) {
         override fun handleMessage(msg: Message) {
             val dialog = msg.obj as ChooseServerHostDialog
@@ -279,6 +344,7 @@ class ChooseServerHostDialog: DialogFragment() {
             when(msg.what) {
                 MSG_SET_STATUS -> dialog.setStatus(msg.arg1)
                 MSG_CHECK_IP -> dialog.checkIp()
+                MSG_SET_FOUND_ADDRESS -> dialog.setFoundAddress()
             }
         }
     }
@@ -298,9 +364,11 @@ class ChooseServerHostDialog: DialogFragment() {
         private const val STATUS_UNAVAILABLE = 1
         private const val STATUS_NOT_PROJKT_SENS_SERVER = 2
         private const val STATUS_IS_PROJKT_SENS_SERVER = 3
+        private const val STATUS_SERVERS_NOT_FOUND = 4
 
         private const val MSG_SET_STATUS = 0
         private const val MSG_CHECK_IP = 1
+        private const val MSG_SET_FOUND_ADDRESS = 2
 
         private const val STATE_ADDRESS_TEXT = "ChooseServerHostDialog:state:addressText"
         private const val STATE_PORT_TEXT = "ChooseServerHostDialog:state:portText"
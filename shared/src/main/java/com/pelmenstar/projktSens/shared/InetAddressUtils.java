@@ -100,6 +100,20 @@ public class InetAddressUtils {
         }
     }
 
+    /**
+     * Converts {@link InetAddress} to IPv4 stored in int.
+     *
+     * @return ip stored in int. If address isn't IPv4, returns {@link InetAddressUtils#IP_ERROR}
+     */
+    public static int toInt(@NotNull InetAddress address) {
+        byte[] data = address.getAddress();
+        if (data.length != 4) {
+            return IP_ERROR;
+        }
+
+        return ip(data[0] & 0xff, data[1] & 0xff, data[2] & 0xff, data[3] & 0xff);
+    }
+
     /**
      * Parses IPv4 string to int
      *
@@ -15,6 +15,9 @@ public final class Serializable {
     @NotNull
     private static final HashMap<Class<?>, ObjectSerializer<?>> cachedSerializers = new HashMap<>();
 
+    @NotNull
+    private static final HashMap<Class<?>, ObjectSerializer<?>> cachedCompactSerializers = new HashMap<>();
+
     static {
         cachedSerializers.put(Integer.class, PrimitiveSerializers.INT_32);
         cachedSerializers.put(Long.class, PrimitiveSerializers.INT_64);
@@ -61,12 +64,69 @@ public final class Serializable {
         }
     }
 
+    /**
+     * Gets a serializer for specified {@link Class}, that writes values in more compact, but possibly lossy form.
+     * Class can declare such serializer in public static final COMPACT_SERIALIZER field.
+     * If there's no such field, returns the same as {@link Serializable#getSerializer(Class)}
+     *
+     * @throws SerializerContractException if given class doesn't meet requirements described in {@link ObjectSerializer}
+     * @throws NullPointerException        if specified class is null
+     */
+    @NotNull
+    public static <T> ObjectSerializer<T> getCompactSerializer(@NotNull Class<T> c) {
+        Class<?> aliased = primitiveToWrapper(c);
+
+        //noinspection unchecked
+        ObjectSerializer<T> s = (ObjectSerializer<T>) cachedCompactSerializers.get(aliased);
+
+        if (s == null) {
+            if (hasField(aliased, "COMPACT_SERIALIZER")) {
+                s = getSerializerReflection(aliased, "COMPACT_SERIALIZER");
+            } else {
+                //noinspection unchecked
+                s = (ObjectSerializer<T>) getSerializer(aliased);
+            }
+
+            cachedCompactSerializers.put(aliased, s);
+        }
+
+        return s;
+    }
+
+    /**
+     * The same as {@link Serializable#registerSerializer(Class, ObjectSerializer)}, but for
+     * {@link Serializable#getCompactSerializer(Class)}
+     */
+    public static <T> void registerCompactSerializer(@NotNull Class<T> c, @NotNull ObjectSerializer<T> serializer) {
+        if (!cachedCompactSerializers.containsKey(c)) {
+            cachedCompactSerializers.put(c, serializer);
+        }
+    }
+
+    private static boolean hasField(@NotNull Class<?> c, @NotNull String name) {
+        try {
+            c.getField(name);
+
+            return true;
+        } catch (NoSuchFieldException e) {
+            return false;
+        }
+    }
+
     @NotNull
     private static <T> ObjectSerializer<T> getSerializerReflection(@NotNull Class<?> c) throws SerializerContractException {
+        return getSerializerReflection(c, "SERIALIZER");
+    }
+
+    @NotNull
+    private static <T> ObjectSerializer<T> getSerializerReflection(
+            @NotNull Class<?> c,
+            @NotNull String fieldName
+    ) throws SerializerContractException {
         Field serializerField;
 
         try {
-            serializerField = c.getField("SERIALIZER");
+            serializerField = c.getField(fieldName);
         } catch (Exception e) {
             throw SerializerContractException.noSerializerField(c);
         }
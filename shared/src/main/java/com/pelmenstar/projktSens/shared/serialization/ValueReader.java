@@ -91,4 +91,32 @@ public final class ValueReader {
 
         return array;
     }
+
+    /**
+     * Reads variable-length integer, written by {@link ValueWriter#varInt(int)}
+     */
+    public int varInt() {
+        int result = 0;
+        int shift = 0;
+
+        while (true) {
+            byte b = data[position++];
+            result |= (b & 0x7f) << shift;
+
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+
+            shift += 7;
+        }
+    }
+
+    /**
+     * Reads zigzag-encoded variable-length integer, written by {@link ValueWriter#zigZagVarInt(int)}
+     */
+    public int zigZagVarInt() {
+        int value = varInt();
+
+        return (value >>> 1) ^ -(value & 1);
+    }
 }
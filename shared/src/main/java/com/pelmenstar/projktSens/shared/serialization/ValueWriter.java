@@ -130,4 +130,51 @@ public final class ValueWriter {
         System.arraycopy(array, 0, data, position, array.length);
         position += array.length;
     }
+
+    /**
+     * Writes specified value as variable-length integer: 7 bits per byte, lowest bits first,
+     * high bit of byte is set if more bytes follow. Value is treated as unsigned.
+     * Moves cursor for {@link ValueWriter#varIntSize(int)} bytes
+     */
+    public void varInt(int value) {
+        while ((value & ~0x7f) != 0) {
+            data[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+
+        data[position++] = (byte) value;
+    }
+
+    /**
+     * Writes zigzag-encoded value as variable-length integer (see {@link ValueWriter#varInt(int)}),
+     * so that values of small magnitude take few bytes regardless of their sign.
+     * Moves cursor for {@link ValueWriter#zigZagVarIntSize(int)} bytes
+     */
+    public void zigZagVarInt(int value) {
+        varInt(zigZag(value));
+    }
+
+    /**
+     * Returns count of bytes that is needed to write specified value using {@link ValueWriter#varInt(int)}
+     */
+    public static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+
+        return size;
+    }
+
+    /**
+     * Returns count of bytes that is needed to write specified value using {@link ValueWriter#zigZagVarInt(int)}
+     */
+    public static int zigZagVarIntSize(int value) {
+        return varIntSize(zigZag(value));
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
 }
@@ -4,6 +4,7 @@ import com.pelmenstar.projktSens.shared.serialization.ValueReader
 import com.pelmenstar.projktSens.shared.serialization.ValueWriter
 import org.junit.Test
 import kotlin.test.assertEquals
+import kotlin.test.assertTrue
 
 class DataRWTests {
     @Test
@@ -24,4 +25,37 @@ class DataRWTests {
         assertEquals(3, reader.int32())
         assertEquals(4, reader.int64())
     }
-}
\ No newline at end of file
+
+    @Test
+    fun varInt_readWrite() {
+        val values = intArrayOf(0, 1, -1, 63, -64, 64, 127, 128, 300, -300, 16383, 16384, Int.MAX_VALUE, Int.MIN_VALUE)
+        val size = values.sumOf { ValueWriter.varIntSize(it) + ValueWriter.zigZagVarIntSize(it) }
+        val buffer = ByteArray(size)
+
+        val writer = ValueWriter(buffer)
+        for (value in values) {
+            writer.varInt(value)
+            writer.zigZagVarInt(value)
+        }
+
+        assertTrue(writer.inEnd())
+
+        val reader = ValueReader(buffer)
+        for (value in values) {
+            assertEquals(value, reader.varInt())
+            assertEquals(value, reader.zigZagVarInt())
+        }
+
+        assertTrue(reader.inEnd())
+    }
+
+    @Test
+    fun varInt_size() {
+        assertEquals(1, ValueWriter.varIntSize(127))
+        assertEquals(2, ValueWriter.varIntSize(128))
+        assertEquals(5, ValueWriter.varIntSize(-1))
+
+        assertEquals(1, ValueWriter.zigZagVarIntSize(-64))
+        assertEquals(2, ValueWriter.zigZagVarIntSize(64))
+    }
+}
@@ -24,6 +24,23 @@ class InetAddressUtilsTests {
         succeedOn("0.0.0.1")
     }
 
+    @Test
+    fun toInt() {
+        fun testCase(str: String) {
+            val address = InetAddress.getByName(str)
+            val ip = InetAddressUtils.toInt(address)
+
+            assertEquals(InetAddressUtils.parseNumericalIpv4ToInt(str), ip)
+            assertEquals(address, InetAddressUtils.parseInt(ip))
+        }
+
+        testCase("1.2.3.4")
+        testCase("192.168.1.254")
+        testCase("255.255.255.255")
+
+        assertEquals(InetAddressUtils.IP_ERROR, InetAddressUtils.toInt(InetAddress.getByName("::2")))
+    }
+
     @Test
     fun parseNumericalIpv4_fails() {
         fun failsOn(str: String) {
@@ -2,10 +2,15 @@
 
 package com.pelmenstar.projktSens.weather.app
 
+import com.pelmenstar.projktSens.serverProtocol.Capabilities
+import com.pelmenstar.projktSens.serverProtocol.ChunkedValue
 import com.pelmenstar.projktSens.serverProtocol.Client
 import com.pelmenstar.projktSens.serverProtocol.Commands
+import com.pelmenstar.projktSens.serverProtocol.Errors
 import com.pelmenstar.projktSens.serverProtocol.ProtoConfig
 import com.pelmenstar.projktSens.serverProtocol.Request
+import com.pelmenstar.projktSens.serverProtocol.ResponseCache
+import com.pelmenstar.projktSens.serverProtocol.ServerException
 import com.pelmenstar.projktSens.shared.time.ShortDate
 import com.pelmenstar.projktSens.shared.time.ShortDateInt
 import com.pelmenstar.projktSens.shared.time.ShortDateRange
@@ -13,11 +18,14 @@ import com.pelmenstar.projktSens.weather.models.*
 import kotlinx.coroutines.currentCoroutineContext
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.FlowCollector
+import kotlinx.coroutines.flow.catch
+import kotlinx.coroutines.flow.emitAll
 import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.isActive
 
 class NetworkDataSource(private val config: ProtoConfig) : WeatherFlowDataSource {
-    private val client = Client(config)
+    private val client = Client(config, cache = responseCache)
 
     override suspend fun getDayReport(@ShortDateInt date: Int): DayReport? {
         require(ShortDate.isValid(date)) { "date" }
@@ -37,6 +45,102 @@ class NetworkDataSource(private val config: ProtoConfig) : WeatherFlowDataSource
         )
     }
 
+    /**
+     * Gets day report, that contains only given [parameters] (see [WeatherParameters]).
+     * Values of other parameters are 0, but the response is smaller and cheaper to compute.
+     * If server doesn't support projection, the full report is returned
+     */
+    suspend fun getDayReport(@ShortDateInt date: Int, parameters: Int): DayReport? {
+        require(ShortDate.isValid(date)) { "date" }
+
+        return requestRethrow(
+            Request(Commands.GET_DAY_REPORT, Request.Argument.Integer(date), parameters = parameters),
+            DayReport::class.java
+        )
+    }
+
+    /**
+     * Gets day-range report, that contains only given [parameters] (see [WeatherParameters]).
+     * Values of other parameters are 0, but the response is smaller and cheaper to compute.
+     * If server doesn't support projection, the full report is returned
+     */
+    suspend fun getDayRangeReport(
+        @ShortDateInt start: Int, @ShortDateInt end: Int,
+        parameters: Int
+    ): DayRangeReport? {
+        return requestRethrow(
+            Request(Commands.GET_DAY_RANGE_REPORT, Request.Argument.DateRange(start, end), parameters = parameters),
+            DayRangeReport::class.java
+        )
+    }
+
+    /**
+     * Gets day reports of all the days in range between [start] and [end] (inclusive) in one round trip
+     * (see [Commands.GET_DAY_REPORTS]). Days without data have no report in the list
+     */
+    suspend fun getDayReports(@ShortDateInt start: Int, @ShortDateInt end: Int): DayReportList? {
+        return requestRethrow(
+            Commands.GET_DAY_REPORTS,
+            Request.Argument.DateRange(start, end),
+            DayReportList::class.java
+        )
+    }
+
+    /**
+     * Gets weather in range between [start] and [end] (inclusive) aggregated to buckets of [bucketSeconds] seconds
+     * (see [Commands.GET_SERIES]), can be null if there's no data in the range.
+     * If server doesn't support [Capabilities.FEATURE_SERIES], nothing is sent and [DataSourceException] is thrown
+     */
+    suspend fun getSeries(@ShortDateInt start: Int, @ShortDateInt end: Int, bucketSeconds: Int): WeatherSeries? {
+        require(WeatherSeries.isValidBucketSeconds(bucketSeconds)) { "bucketSeconds" }
+
+        return requestRethrow(
+            Commands.GET_SERIES,
+            Request.Argument.BucketedDateRange(start, end, bucketSeconds),
+            WeatherSeries::class.java
+        )
+    }
+
+    /**
+     * Emits entries of day report in chunks as soon as they arrive, so they can be shown before the whole report is received.
+     * The last value contains stats of the report or null if there's no data for given [date].
+     * If server doesn't support chunked responses, all the entries are emitted in one chunk
+     */
+    fun getDayReportChunked(@ShortDateInt date: Int): Flow<ChunkedValue<DayReport.EntryChunk, ReportStats>> {
+        require(ShortDate.isValid(date)) { "date" }
+
+        val request = Request(Commands.GET_DAY_REPORT, Request.Argument.Integer(date))
+
+        return requestChunkedRethrow(request, DayReport.EntryChunk::class.java) {
+            val report = client.request(request, DayReport::class.java)
+            if (report != null) {
+                emit(ChunkedValue.Chunk(DayReport.EntryChunk(report.entries)))
+            }
+
+            emit(ChunkedValue.Final(report?.stats))
+        }
+    }
+
+    /**
+     * Emits entries of day-range report in chunks as soon as they arrive, so they can be shown before the whole report is received.
+     * The last value contains stats of the report or null if there's no data in given range.
+     * If server doesn't support chunked responses, all the entries are emitted in one chunk
+     */
+    fun getDayRangeReportChunked(
+        @ShortDateInt start: Int, @ShortDateInt end: Int
+    ): Flow<ChunkedValue<DayRangeReport.EntryChunk, ReportStats>> {
+        val request = Request(Commands.GET_DAY_RANGE_REPORT, Request.Argument.DateRange(start, end))
+
+        return requestChunkedRethrow(request, DayRangeReport.EntryChunk::class.java) {
+            val report = client.request(request, DayRangeReport::class.java)
+            if (report != null) {
+                emit(ChunkedValue.Chunk(DayRangeReport.EntryChunk(report.entries)))
+            }
+
+            emit(ChunkedValue.Final(report?.stats))
+        }
+    }
+
     override suspend fun getAvailableDateRange(): ShortDateRange? {
         return requestRethrow(Commands.GET_AVAILABLE_DATE_RANGE, null, ShortDateRange::class.java)
     }
@@ -49,7 +153,67 @@ class NetworkDataSource(private val config: ProtoConfig) : WeatherFlowDataSource
         )
     }
 
+    /**
+     * Gets page of weather records stored on server after given [epochSecond] (see [Commands.GET_WEATHER_SINCE]),
+     * can be null if there are no such records.
+     * If server doesn't support [Capabilities.FEATURE_WEATHER_SINCE], nothing is sent and [DataSourceException] is thrown
+     */
+    suspend fun getWeatherSince(epochSecond: Long): WeatherInfoPage? {
+        return requestRethrow(
+            Commands.GET_WEATHER_SINCE,
+            Request.Argument.LongInteger(epochSecond),
+            WeatherInfoPage::class.java
+        )
+    }
+
+    /**
+     * Pulls weather records stored on server after given [epochSecond] page by page and puts them to [mirror],
+     * so that reports can be computed locally without loading the server.
+     * Returns epoch second of the last pulled record, that should be passed next time, or [epochSecond] if there are no new records
+     */
+    suspend fun pullWeatherSince(epochSecond: Long, mirror: WeatherRepository): Long {
+        var since = epochSecond
+
+        while (true) {
+            val page = getWeatherSince(since) ?: break
+
+            mirror.putMany(page.toArray())
+            since = page.lastEpochSecond
+
+            if (!page.hasMore) {
+                break
+            }
+        }
+
+        return since
+    }
+
+    /**
+     * Emits weather pushed by server (see [Commands.SUBSCRIBE_WEATHER]).
+     * If server doesn't support push subscriptions, last weather is polled every [ProtoConfig.weatherChannelReceiveInterval]
+     */
     override fun weatherFlow(): Flow<WeatherInfo?> {
+        return flow {
+            if (!client.getCapabilities().hasFeature(Capabilities.FEATURE_PUSH_SUBSCRIPTIONS)) {
+                emitAll(pollWeather())
+
+                return@flow
+            }
+
+            val stream = client.stream(Request(Commands.SUBSCRIBE_WEATHER), WeatherInfo::class.java).catch { e ->
+                // server supports subscriptions, but doesn't serve weather ones
+                if (e !is ServerException || e.error != Errors.INVALID_COMMAND) {
+                    throw e
+                }
+
+                emitAll(pollWeather())
+            }
+
+            emitAll(stream)
+        }
+    }
+
+    private fun pollWeather(): Flow<WeatherInfo?> {
         return flow {
             val values = client.requestMultiple(arrayOf(
                 Request(Commands.GET_NEXT_WEATHER_TIME),
@@ -80,14 +244,48 @@ class NetworkDataSource(private val config: ProtoConfig) : WeatherFlowDataSource
         }
     }
 
-    private suspend fun <T : Any> requestRethrow(
+    /**
+     * Requests chunked report. If server doesn't serve chunked responses, [requestWhole] is used instead
+     */
+    private fun <C : Any> requestChunkedRethrow(
+        request: Request,
+        chunkClass: Class<C>,
+        requestWhole: suspend FlowCollector<ChunkedValue<C, ReportStats>>.() -> Unit
+    ): Flow<ChunkedValue<C, ReportStats>> {
+        return client.requestChunked(request, chunkClass, ReportStats::class.java).catch { e ->
+            if (e !is ServerException || e.error != Errors.INVALID_COMMAND) {
+                throw e
+            }
+
+            requestWhole()
+        }.catch { e ->
+            if (e !is Exception) {
+                throw e
+            }
+
+            throw DataSourceException(e)
+        }
+    }
+
+    private suspend inline fun <T : Any> requestRethrow(
         command: Int, arg: Request.Argument?,
         responseClass: Class<T>
     ): T? {
+        return requestRethrow(Request(command, arg), responseClass)
+    }
+
+    private suspend fun <T : Any> requestRethrow(request: Request, responseClass: Class<T>): T? {
         return try {
-            client.request(Request(command, arg), responseClass)
+            client.request(request, responseClass)
         } catch (e: Exception) {
             throw DataSourceException(e)
         }
     }
-}
\ No newline at end of file
+
+    companion object {
+        private const val RESPONSE_CACHE_SIZE = 4 * 1024 * 1024
+
+        // shared between data sources, so that reports are cached across screens
+        private val responseCache = ResponseCache(RESPONSE_CACHE_SIZE)
+    }
+}
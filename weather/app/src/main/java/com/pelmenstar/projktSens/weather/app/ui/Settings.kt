@@ -241,6 +241,8 @@ class ServerContractSetting : Setting<ServerContractSetting.State>() {
             setSelection(
                 when (state.contractType) {
                     ContractType.RAW -> 0
+                    ContractType.MULTIPLEXED -> 1
+                    ContractType.COMPACT -> 2
                     else -> throw RuntimeException("Invalid state.contractType")
                 }
             )
@@ -254,6 +256,8 @@ class ServerContractSetting : Setting<ServerContractSetting.State>() {
                 ) {
                     state.contractType = when (position) {
                         0 -> ContractType.RAW
+                        1 -> ContractType.MULTIPLEXED
+                        2 -> ContractType.COMPACT
                         else -> return
                     }
                 }
@@ -0,0 +1,21 @@
+package com.pelmenstar.projktSens.weather.models;
+
+/**
+ * Helpers for compact serializers of reports.
+ * Values are quantized to fixed-point numbers with {@link CompactValues#SCALE} units in 1.0
+ * and usually written as zigzag-encoded deltas from previous value.
+ */
+final class CompactValues {
+    public static final double SCALE = 100;
+
+    private CompactValues() {
+    }
+
+    public static int quantize(float value) {
+        return (int) Math.round(value * SCALE);
+    }
+
+    public static float dequantize(int value) {
+        return (float) (value / SCALE);
+    }
+}
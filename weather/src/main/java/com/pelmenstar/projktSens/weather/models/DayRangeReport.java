@@ -1,7 +1,6 @@
 package com.pelmenstar.projktSens.weather.models;
 
 import com.pelmenstar.projktSens.shared.AppendableToStringBuilder;
-import com.pelmenstar.projktSens.shared.Median;
 import com.pelmenstar.projktSens.shared.StringUtils;
 import com.pelmenstar.projktSens.shared.serialization.ObjectSerializer;
 import com.pelmenstar.projktSens.shared.serialization.Serializable;
@@ -11,6 +10,7 @@ import com.pelmenstar.projktSens.shared.serialization.ValueWriter;
 import com.pelmenstar.projktSens.shared.time.ShortDate;
 import com.pelmenstar.projktSens.shared.time.ShortDateInt;
 import com.pelmenstar.projktSens.shared.time.ShortDateTime;
+import com.pelmenstar.projktSens.shared.time.ShortDateTimeLong;
 
 import org.jetbrains.annotations.NotNull;
 
@@ -19,7 +19,7 @@ import java.util.Arrays;
 /**
  * A data class to save information about month statistics.
  * Instances of {@link DayRangeReport} can be serialized in format described below: <br/>
- * - ReportStats | {@link ReportStats#SERIALIZED_OBJECT_SIZE} <br/>
+ * - ReportStats | at most {@link ReportStats#SERIALIZED_OBJECT_SIZE} <br/>
  * - entries.length | 2 bytes <br/>
  * [ <br/>
  * - date | 4 bytes <br/>
@@ -30,6 +30,22 @@ import java.util.Arrays;
  * - minPressure | 4 bytes <br/>
  * - maxPressure | 4 bytes <br/>
  * ] <br/>
+ * <p>
+ * {@link DayRangeReport#COMPACT_SERIALIZER} writes values quantized to hundredths: <br/>
+ * - ReportStats | at most {@link ReportStats#SERIALIZED_OBJECT_SIZE} <br/>
+ * - entries.length | varint <br/>
+ * [ <br/>
+ * - epoch day of date minus epoch day of previous entry | zigzag varint <br/>
+ * - minTemperature minus minTemperature of previous entry | zigzag varint <br/>
+ * - maxTemperature minus minTemperature | zigzag varint <br/>
+ * - the same for humidity and pressure <br/>
+ * ] <br/>
+ * <p>
+ * Min and max values of parameters, that aren't in parameters mask of the stats (see {@link ReportStats#parameters}),
+ * are 0 in the entries and aren't written.
+ * <p>
+ * {@link EntryChunk} is serialized the same way as entries above, but without ReportStats and with all the parameters.
+ * Deltas of compact format are started from zero in each chunk.
  */
 public final class DayRangeReport extends AppendableToStringBuilder {
     public static final class Entry extends AppendableToStringBuilder {
@@ -111,9 +127,219 @@ public final class DayRangeReport extends AppendableToStringBuilder {
         }
     }
 
+    /**
+     * Part of {@link DayRangeReport} entries, which is sent before the whole report is computed.
+     * Entries of the chunks, concatenated in order they were received, are entries of the report.
+     */
+    public static final class EntryChunk extends AppendableToStringBuilder {
+        @NotNull
+        public static final ObjectSerializer<EntryChunk> SERIALIZER;
+
+        @NotNull
+        public static final ObjectSerializer<EntryChunk> COMPACT_SERIALIZER;
+
+        public final @NotNull Entry @NotNull [] entries;
+
+        static {
+            SERIALIZER = new ChunkSerializer();
+            COMPACT_SERIALIZER = new CompactChunkSerializer();
+
+            Serializable.registerSerializer(EntryChunk.class, SERIALIZER);
+            Serializable.registerCompactSerializer(EntryChunk.class, COMPACT_SERIALIZER);
+        }
+
+        public EntryChunk(@NotNull Entry @NotNull [] entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (other == null || getClass() != other.getClass()) return false;
+
+            EntryChunk o = (EntryChunk) other;
+
+            return Arrays.equals(entries, o.entries);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(entries);
+        }
+
+        @Override
+        public void append(@NotNull StringBuilder sb) {
+            sb.append("{entries=");
+            StringUtils.appendArray(entries, sb);
+            sb.append('}');
+        }
+    }
+
+    /**
+     * Builds {@link DayRangeReport} from weather values added one by one. Values should be sorted by date-time.
+     * An entry of a day becomes available for {@link Builder#takeEntries()} when a value of the next day is added
+     * or {@link Builder#finishDay()} is called.
+     */
+    public static final class Builder {
+        private final ReportStatsBuilder statsBuilder;
+        private final int parameters;
+
+        private Entry[] entries = new Entry[8];
+        private int entriesSize;
+
+        private boolean hasDay;
+
+        @ShortDateInt
+        private int currentDate;
+
+        private float dayMinTemp;
+        private float dayMaxTemp;
+
+        private float dayMinHum;
+        private float dayMaxHum;
+
+        private float dayMinPress;
+        private float dayMaxPress;
+
+        /**
+         * @param capacity expected count of values, it's not a limit
+         */
+        public Builder(int capacity) {
+            this(capacity, WeatherParameters.ALL);
+        }
+
+        /**
+         * @param capacity   expected count of values, it's not a limit
+         * @param parameters mask of parameters, that the report contains (see {@link WeatherParameters})
+         */
+        public Builder(int capacity, int parameters) {
+            statsBuilder = new ReportStatsBuilder(capacity, parameters);
+
+            this.parameters = parameters;
+        }
+
+        /**
+         * Adds weather values. Values are converted to {@link ValueUnit#CELSIUS} and {@link ValueUnit#MM_OF_MERCURY}
+         */
+        public void add(
+                @ShortDateTimeLong long dateTime,
+                int units,
+                float temperature, float humidity, float pressure
+        ) {
+            float temp = 0f;
+            float hum = 0f;
+            float press = 0f;
+
+            if (WeatherParameters.contains(parameters, WeatherParameters.TEMPERATURE)) {
+                temp = UnitValue.getValue(temperature, ValueUnitsPacked.getTemperatureUnit(units), ValueUnit.CELSIUS);
+            }
+
+            if (WeatherParameters.contains(parameters, WeatherParameters.HUMIDITY)) {
+                hum = humidity;
+            }
+
+            if (WeatherParameters.contains(parameters, WeatherParameters.PRESSURE)) {
+                press = UnitValue.getValue(pressure, ValueUnitsPacked.getPressureUnit(units), ValueUnit.MM_OF_MERCURY);
+            }
+
+            int date = ShortDateTime.getDate(dateTime);
+
+            if (hasDay && currentDate != date) {
+                finishDay();
+            }
+
+            if (!hasDay) {
+                hasDay = true;
+                currentDate = date;
+
+                dayMinTemp = dayMaxTemp = temp;
+                dayMinHum = dayMaxHum = hum;
+                dayMinPress = dayMaxPress = press;
+            } else {
+                dayMinTemp = Math.min(dayMinTemp, temp);
+                dayMaxTemp = Math.max(dayMaxTemp, temp);
+
+                dayMinHum = Math.min(dayMinHum, hum);
+                dayMaxHum = Math.max(dayMaxHum, hum);
+
+                dayMinPress = Math.min(dayMinPress, press);
+                dayMaxPress = Math.max(dayMaxPress, press);
+            }
+
+            statsBuilder.add(dateTime, temp, hum, press);
+        }
+
+        /**
+         * Makes an entry of the current day, if there's one. Values added after that start a new entry
+         */
+        public void finishDay() {
+            if (!hasDay) {
+                return;
+            }
+
+            if (entriesSize == entries.length) {
+                entries = Arrays.copyOf(entries, entriesSize * 2);
+            }
+
+            entries[entriesSize++] = new Entry(
+                    currentDate,
+                    dayMinTemp, dayMaxTemp,
+                    dayMinHum, dayMaxHum,
+                    dayMinPress, dayMaxPress
+            );
+
+            hasDay = false;
+        }
+
+        /**
+         * Returns count of finished entries, which were made after the last {@link Builder#takeEntries()}
+         */
+        public int getPendingEntriesCount() {
+            return entriesSize;
+        }
+
+        /**
+         * Returns finished entries, which were made after the last {@link Builder#takeEntries()},
+         * and removes them from the builder
+         */
+        public @NotNull Entry @NotNull [] takeEntries() {
+            Entry[] result = Arrays.copyOf(entries, entriesSize);
+            entriesSize = 0;
+
+            return result;
+        }
+
+        /**
+         * Computes stats on all added values, including values whose entries were taken.
+         *
+         * @throws IllegalStateException if no values were added
+         */
+        @NotNull
+        public ReportStats buildStats() {
+            return statsBuilder.build();
+        }
+
+        /**
+         * Finishes the current day and creates {@link DayRangeReport} with entries, which weren't taken,
+         * and stats on all the values
+         *
+         * @throws IllegalStateException if no values were added
+         */
+        @NotNull
+        public DayRangeReport build() {
+            ReportStats stats = buildStats();
+            finishDay();
+
+            return new DayRangeReport(takeEntries(), stats);
+        }
+    }
+
     @NotNull
     public static final ObjectSerializer<DayRangeReport> SERIALIZER;
 
+    @NotNull
+    public static final ObjectSerializer<DayRangeReport> COMPACT_SERIALIZER;
+
     public final @NotNull Entry @NotNull [] entries;
 
     @NotNull
@@ -121,28 +347,40 @@ public final class DayRangeReport extends AppendableToStringBuilder {
 
     static {
         SERIALIZER = new Serializer();
+        COMPACT_SERIALIZER = new CompactSerializer();
 
         // not necessary but can affect to performance
         Serializable.registerSerializer(DayRangeReport.class, SERIALIZER);
+        Serializable.registerCompactSerializer(DayRangeReport.class, COMPACT_SERIALIZER);
     }
 
     public DayRangeReport(@NotNull Entry @NotNull [] entries, @NotNull ReportStats stats) {
         int tempUnit = ValueUnitsPacked.getTemperatureUnit(stats.units);
         int pressUnit = ValueUnitsPacked.getPressureUnit(stats.units);
 
+        boolean hasTemp = WeatherParameters.contains(stats.parameters, WeatherParameters.TEMPERATURE);
+        boolean hasHum = WeatherParameters.contains(stats.parameters, WeatherParameters.HUMIDITY);
+        boolean hasPress = WeatherParameters.contains(stats.parameters, WeatherParameters.PRESSURE);
+
         for(Entry entry: entries) {
             if(!ShortDate.isValid(entry.date)) {
                 throw ValidationException.invalidValue("entry date", entry.date);
             }
 
-            UnitValue.ensureValid(entry.minTemperature, tempUnit, "entry min temperature");
-            UnitValue.ensureValid(entry.maxTemperature, tempUnit, "entry max temperature");
+            if(hasTemp) {
+                UnitValue.ensureValid(entry.minTemperature, tempUnit, "entry min temperature");
+                UnitValue.ensureValid(entry.maxTemperature, tempUnit, "entry max temperature");
+            }
 
-            UnitValue.ensureValid(entry.minHumidity, ValueUnit.HUMIDITY, "entry min humidity");
-            UnitValue.ensureValid(entry.maxHumidity, ValueUnit.HUMIDITY, "entry max humidity");
+            if(hasHum) {
+                UnitValue.ensureValid(entry.minHumidity, ValueUnit.HUMIDITY, "entry min humidity");
+                UnitValue.ensureValid(entry.maxHumidity, ValueUnit.HUMIDITY, "entry max humidity");
+            }
 
-            UnitValue.ensureValid(entry.minPressure, pressUnit, "entry min pressure");
-            UnitValue.ensureValid(entry.maxPressure, pressUnit, "entry max pressure");
+            if(hasPress) {
+                UnitValue.ensureValid(entry.minPressure, pressUnit, "entry min pressure");
+                UnitValue.ensureValid(entry.maxPressure, pressUnit, "entry max pressure");
+            }
         }
 
         this.entries = entries;
@@ -180,222 +418,284 @@ public final class DayRangeReport extends AppendableToStringBuilder {
         return create(new ArrayWeatherPropertyIterable(values));
     }
 
+    @NotNull
+    public static DayRangeReport create(@NotNull WeatherInfo @NotNull [] values, int parameters) {
+        return create(new ArrayWeatherPropertyIterable(values), parameters);
+    }
+
     @NotNull
     public static DayRangeReport create(@NotNull WeatherPropertyIterable data) {
+        return create(data, WeatherParameters.ALL);
+    }
+
+    /**
+     * Creates report, that contains only given {@code parameters} (see {@link WeatherParameters})
+     */
+    @NotNull
+    public static DayRangeReport create(@NotNull WeatherPropertyIterable data, int parameters) {
         int length = data.size();
         if (length == 0) {
             throw new IllegalArgumentException("Data is empty");
         }
 
-        Entry[] entries = new Entry[0];
+        Builder builder = new Builder(length, parameters);
 
-        float tempSum = 0;
-        float humSum = 0;
-        float pressSum = 0;
+        while (data.moveNext()) {
+            builder.add(
+                    data.getDateTime(),
+                    data.getUnits(),
+                    data.getTemperature(), data.getHumidity(), data.getPressure()
+            );
+        }
 
-        float dayMinTemp = Float.MAX_VALUE;
-        float dayMaxTemp = Float.MIN_VALUE;
+        return builder.build();
+    }
 
-        float dayMinHum = Float.MAX_VALUE;
-        float dayMaxHum = Float.MIN_VALUE;
+    private static int getEntriesSize(@NotNull Entry @NotNull [] entries, int parameters) {
+        return 2 + (3 + 8 * WeatherParameters.count(parameters)) * entries.length;
+    }
 
-        float dayMinPress = Float.MAX_VALUE;
-        float dayMaxPress = Float.MIN_VALUE;
+    private static void writeEntries(@NotNull Entry @NotNull [] entries, int parameters, @NotNull ValueWriter writer) {
+        boolean hasTemp = WeatherParameters.contains(parameters, WeatherParameters.TEMPERATURE);
+        boolean hasHum = WeatherParameters.contains(parameters, WeatherParameters.HUMIDITY);
+        boolean hasPress = WeatherParameters.contains(parameters, WeatherParameters.PRESSURE);
 
-        float minTempValue = Float.MAX_VALUE;
-        long minTempDt = ShortDateTime.NONE;
+        writer.int16((short) entries.length);
 
-        float maxTempValue = Float.MIN_VALUE;
-        long maxTempDt = ShortDateTime.NONE;
+        for (Entry e : entries) {
+            writer.int24(e.date);
 
-        float minHumValue = Float.MAX_VALUE;
-        long minHumDt = ShortDateTime.NONE;
+            if (hasTemp) {
+                writer.float32(e.minTemperature);
+                writer.float32(e.maxTemperature);
+            }
 
-        float maxHumValue = Float.MIN_VALUE;
-        long maxHumDt = ShortDateTime.NONE;
+            if (hasHum) {
+                writer.float32(e.minHumidity);
+                writer.float32(e.maxHumidity);
+            }
 
-        float minPressValue = Float.MAX_VALUE;
-        long minPressDt = ShortDateTime.NONE;
+            if (hasPress) {
+                writer.float32(e.minPressure);
+                writer.float32(e.maxPressure);
+            }
+        }
+    }
 
-        float maxPressValue = Float.MIN_VALUE;
-        long maxPressDt = ShortDateTime.NONE;
+    private static @NotNull Entry @NotNull [] readEntries(@NotNull ValueReader reader, int parameters) {
+        boolean hasTemp = WeatherParameters.contains(parameters, WeatherParameters.TEMPERATURE);
+        boolean hasHum = WeatherParameters.contains(parameters, WeatherParameters.HUMIDITY);
+        boolean hasPress = WeatherParameters.contains(parameters, WeatherParameters.PRESSURE);
 
-        boolean first = true;
-        int currentDate = 0;
-        int maxIdx = length - 1;
+        int entriesLength = reader.int16();
+        Entry[] data = new Entry[entriesLength];
 
-        float[] tempValues = new float[length];
-        float[] humValues = new float[length];
-        float[] pressValues = new float[length];
+        for (int i = 0; i < entriesLength; i++) {
+            int date = reader.int24();
 
-        int i = 0;
-        while (data.moveNext()) {
-            int units = data.getUnits();
-            int tempUnit = ValueUnitsPacked.getTemperatureUnit(units);
-            int pressUnit = ValueUnitsPacked.getPressureUnit(units);
+            float minTemp = 0f, maxTemp = 0f;
+            float minHum = 0f, maxHum = 0f;
+            float minPress = 0f, maxPress = 0f;
 
-            long dateTime = data.getDateTime();
-            int date = ShortDateTime.getDate(dateTime);
-            float temp = UnitValue.getValue(data.getTemperature(), tempUnit, ValueUnit.CELSIUS);
-            float hum = data.getHumidity();
-            float press = UnitValue.getValue(data.getPressure(), pressUnit, ValueUnit.MM_OF_MERCURY);
+            if (hasTemp) {
+                minTemp = reader.float32();
+                maxTemp = reader.float32();
+            }
 
-            tempValues[i] = temp;
-            humValues[i] = hum;
-            pressValues[i] = press;
+            if (hasHum) {
+                minHum = reader.float32();
+                maxHum = reader.float32();
+            }
 
-            if (first) {
-                first = false;
-                currentDate = date;
+            if (hasPress) {
+                minPress = reader.float32();
+                maxPress = reader.float32();
             }
 
-            if (currentDate != date || i == maxIdx) {
-                Entry e = new Entry(
-                        currentDate,
-                        dayMinTemp, dayMaxTemp,
-                        dayMinHum, dayMaxHum,
-                        dayMinPress, dayMaxPress
-                );
+            data[i] = new Entry(
+                    date,
+                    minTemp, maxTemp,
+                    minHum, maxHum,
+                    minPress, maxPress
+            );
+        }
 
-                Entry[] newEntries = new Entry[entries.length + 1];
-                System.arraycopy(entries, 0, newEntries, 0, entries.length);
-                newEntries[entries.length] = e;
-                entries = newEntries;
+        return data;
+    }
 
-                dayMinTemp = Float.MAX_VALUE;
-                dayMaxTemp = Float.MIN_VALUE;
+    // Deltas of parameters, that aren't in the mask, are always 0, so they aren't written
+    private static int getCompactEntriesSize(@NotNull Entry @NotNull [] entries, int parameters) {
+        boolean hasTemp = WeatherParameters.contains(parameters, WeatherParameters.TEMPERATURE);
+        boolean hasHum = WeatherParameters.contains(parameters, WeatherParameters.HUMIDITY);
+        boolean hasPress = WeatherParameters.contains(parameters, WeatherParameters.PRESSURE);
 
-                dayMinHum = Float.MAX_VALUE;
-                dayMaxHum = Float.MIN_VALUE;
+        int size = ValueWriter.varIntSize(entries.length);
 
-                dayMinPress = Float.MAX_VALUE;
-                dayMaxPress = Float.MIN_VALUE;
+        int prevEpochDay = 0;
+        int prevMinTemp = 0;
+        int prevMinHum = 0;
+        int prevMinPress = 0;
 
-                currentDate = date;
-            }
+        for (Entry e : entries) {
+            int epochDay = ShortDate.toEpochDay(e.date);
+            int minTemp = CompactValues.quantize(e.minTemperature);
+            int minHum = CompactValues.quantize(e.minHumidity);
+            int minPress = CompactValues.quantize(e.minPressure);
 
-            // day min-max
-            if (temp < dayMinTemp) {
-                dayMinTemp = temp;
-            }
+            size += ValueWriter.zigZagVarIntSize(epochDay - prevEpochDay);
 
-            if (temp > dayMaxTemp) {
-                dayMaxTemp = temp;
+            if (hasTemp) {
+                size += ValueWriter.zigZagVarIntSize(minTemp - prevMinTemp);
+                size += ValueWriter.zigZagVarIntSize(CompactValues.quantize(e.maxTemperature) - minTemp);
             }
 
-            if (hum < dayMinHum) {
-                dayMinHum = hum;
+            if (hasHum) {
+                size += ValueWriter.zigZagVarIntSize(minHum - prevMinHum);
+                size += ValueWriter.zigZagVarIntSize(CompactValues.quantize(e.maxHumidity) - minHum);
             }
 
-            if (hum > dayMaxHum) {
-                dayMaxHum = hum;
+            if (hasPress) {
+                size += ValueWriter.zigZagVarIntSize(minPress - prevMinPress);
+                size += ValueWriter.zigZagVarIntSize(CompactValues.quantize(e.maxPressure) - minPress);
             }
 
-            if (press < dayMinPress) {
-                dayMinPress = press;
-            }
+            prevEpochDay = epochDay;
+            prevMinTemp = minTemp;
+            prevMinHum = minHum;
+            prevMinPress = minPress;
+        }
 
-            if (press > dayMaxPress) {
-                dayMaxPress = press;
-            }
+        return size;
+    }
+
+    private static void writeCompactEntries(@NotNull Entry @NotNull [] entries, int parameters, @NotNull ValueWriter writer) {
+        boolean hasTemp = WeatherParameters.contains(parameters, WeatherParameters.TEMPERATURE);
+        boolean hasHum = WeatherParameters.contains(parameters, WeatherParameters.HUMIDITY);
+        boolean hasPress = WeatherParameters.contains(parameters, WeatherParameters.PRESSURE);
+
+        writer.varInt(entries.length);
+
+        int prevEpochDay = 0;
+        int prevMinTemp = 0;
+        int prevMinHum = 0;
+        int prevMinPress = 0;
+
+        for (Entry e : entries) {
+            int epochDay = ShortDate.toEpochDay(e.date);
+            int minTemp = CompactValues.quantize(e.minTemperature);
+            int minHum = CompactValues.quantize(e.minHumidity);
+            int minPress = CompactValues.quantize(e.minPressure);
+
+            writer.zigZagVarInt(epochDay - prevEpochDay);
 
-            // general min-max
-            if (temp < minTempValue) {
-                minTempValue = temp;
-                minTempDt = dateTime;
+            if (hasTemp) {
+                writer.zigZagVarInt(minTemp - prevMinTemp);
+                writer.zigZagVarInt(CompactValues.quantize(e.maxTemperature) - minTemp);
             }
 
-            if (temp > maxTempValue) {
-                maxTempValue = temp;
-                maxTempDt = dateTime;
+            if (hasHum) {
+                writer.zigZagVarInt(minHum - prevMinHum);
+                writer.zigZagVarInt(CompactValues.quantize(e.maxHumidity) - minHum);
             }
 
-            if (hum < minHumValue) {
-                minHumValue = hum;
-                minHumDt = dateTime;
+            if (hasPress) {
+                writer.zigZagVarInt(minPress - prevMinPress);
+                writer.zigZagVarInt(CompactValues.quantize(e.maxPressure) - minPress);
             }
 
-            if (hum > maxHumValue) {
-                maxHumValue = hum;
-                maxHumDt = dateTime;
+            prevEpochDay = epochDay;
+            prevMinTemp = minTemp;
+            prevMinHum = minHum;
+            prevMinPress = minPress;
+        }
+    }
+
+    private static @NotNull Entry @NotNull [] readCompactEntries(
+            @NotNull ValueReader reader,
+            int parameters
+    ) throws ValidationException {
+        boolean hasTemp = WeatherParameters.contains(parameters, WeatherParameters.TEMPERATURE);
+        boolean hasHum = WeatherParameters.contains(parameters, WeatherParameters.HUMIDITY);
+        boolean hasPress = WeatherParameters.contains(parameters, WeatherParameters.PRESSURE);
+
+        int entriesLength = reader.varInt();
+        if (entriesLength < 0) {
+            throw ValidationException.invalidValue("entries length", entriesLength);
+        }
+
+        Entry[] data = new Entry[entriesLength];
+
+        int epochDay = 0;
+        int minTemp = 0;
+        int minHum = 0;
+        int minPress = 0;
+
+        for (int i = 0; i < entriesLength; i++) {
+            epochDay += reader.zigZagVarInt();
+
+            int maxTemp = 0;
+            int maxHum = 0;
+            int maxPress = 0;
+
+            if (hasTemp) {
+                minTemp += reader.zigZagVarInt();
+                maxTemp = minTemp + reader.zigZagVarInt();
             }
 
-            if (press < minPressValue) {
-                minPressValue = press;
-                minPressDt = dateTime;
+            if (hasHum) {
+                minHum += reader.zigZagVarInt();
+                maxHum = minHum + reader.zigZagVarInt();
             }
 
-            if (press > maxPressValue) {
-                maxPressValue = press;
-                maxPressDt = dateTime;
+            if (hasPress) {
+                minPress += reader.zigZagVarInt();
+                maxPress = minPress + reader.zigZagVarInt();
             }
 
-            tempSum += temp;
-            humSum += hum;
-            pressSum += press;
-
-            i++;
-        }
-
-        float invLength = 1f / length;
-        float avgTemp = tempSum * invLength;
-        float avgHum = humSum * invLength;
-        float avgPress = pressSum * invLength;
-
-        float medianTemp = Median.compute(tempValues);
-        float medianHum = Median.compute(humValues);
-        float medianPress = Median.compute(pressValues);
-
-        ParameterStats tempStats = new ParameterStats(
-                new ValueWithDate(minTempDt, minTempValue),
-                new ValueWithDate(maxTempDt, maxTempValue),
-                avgTemp,
-                medianTemp
-        );
-        ParameterStats humStats = new ParameterStats(
-                new ValueWithDate(minHumDt, minHumValue),
-                new ValueWithDate(maxHumDt, maxHumValue),
-                avgHum,
-                medianHum
-        );
-        ParameterStats pressStats = new ParameterStats(
-                new ValueWithDate(minPressDt, minPressValue),
-                new ValueWithDate(maxPressDt, maxPressValue),
-                avgPress,
-                medianPress
-        );
-
-        ReportStats stats = new ReportStats(
-                ValueUnitsPacked.CELSIUS_MM_OF_MERCURY,
-                tempStats, humStats, pressStats
-        );
-
-        return new DayRangeReport(entries, stats);
+            data[i] = new Entry(
+                    ShortDate.ofEpochDay(epochDay),
+                    CompactValues.dequantize(minTemp), CompactValues.dequantize(maxTemp),
+                    CompactValues.dequantize(minHum), CompactValues.dequantize(maxHum),
+                    CompactValues.dequantize(minPress), CompactValues.dequantize(maxPress)
+            );
+        }
+
+        return data;
     }
 
     private static final class Serializer implements ObjectSerializer<DayRangeReport> {
         @Override
         public int getSerializedObjectSize(@NotNull DayRangeReport value) {
-            return ReportStats.SERIALIZED_OBJECT_SIZE + 2 + (27 * value.entries.length);
+            return ReportStats.SERIALIZER.getSerializedObjectSize(value.stats) +
+                    getEntriesSize(value.entries, value.stats.parameters);
         }
 
         @Override
         public void writeObject(@NotNull DayRangeReport value, @NotNull ValueWriter writer) {
             ReportStats.SERIALIZER.writeObject(value.stats, writer);
-            writer.int16((short) value.entries.length);
+            writeEntries(value.entries, value.stats.parameters, writer);
+        }
 
-            for (Entry e : value.entries) {
-                writer.int24(e.date);
+        @Override
+        @NotNull
+        public DayRangeReport readObject(@NotNull ValueReader reader) throws ValidationException {
+            ReportStats stats = ReportStats.SERIALIZER.readObject(reader);
 
-                writer.float32(e.minTemperature);
-                writer.float32(e.maxTemperature);
+            return new DayRangeReport(readEntries(reader, stats.parameters), stats);
+        }
+    }
 
-                writer.float32(e.minHumidity);
-                writer.float32(e.maxHumidity);
+    private static final class CompactSerializer implements ObjectSerializer<DayRangeReport> {
+        @Override
+        public int getSerializedObjectSize(@NotNull DayRangeReport value) {
+            return ReportStats.SERIALIZER.getSerializedObjectSize(value.stats) +
+                    getCompactEntriesSize(value.entries, value.stats.parameters);
+        }
 
-                writer.float32(e.minPressure);
-                writer.float32(e.maxPressure);
-            }
+        @Override
+        public void writeObject(@NotNull DayRangeReport value, @NotNull ValueWriter writer) {
+            ReportStats.SERIALIZER.writeObject(value.stats, writer);
+            writeCompactEntries(value.entries, value.stats.parameters, writer);
         }
 
         @Override
@@ -403,31 +703,43 @@ public final class DayRangeReport extends AppendableToStringBuilder {
         public DayRangeReport readObject(@NotNull ValueReader reader) throws ValidationException {
             ReportStats stats = ReportStats.SERIALIZER.readObject(reader);
 
+            return new DayRangeReport(readCompactEntries(reader, stats.parameters), stats);
+        }
+    }
 
-            int entriesLength = reader.int16();
-            Entry[] data = new Entry[entriesLength];
-
-            for (int i = 0; i < entriesLength; i++) {
-                int date = reader.int24();
+    private static final class ChunkSerializer implements ObjectSerializer<EntryChunk> {
+        @Override
+        public int getSerializedObjectSize(@NotNull EntryChunk value) {
+            return getEntriesSize(value.entries, WeatherParameters.ALL);
+        }
 
-                float minTemp = reader.float32();
-                float maxTemp = reader.float32();
+        @Override
+        public void writeObject(@NotNull EntryChunk value, @NotNull ValueWriter writer) {
+            writeEntries(value.entries, WeatherParameters.ALL, writer);
+        }
 
-                float minHum = reader.float32();
-                float maxHum = reader.float32();
+        @Override
+        @NotNull
+        public EntryChunk readObject(@NotNull ValueReader reader) throws ValidationException {
+            return new EntryChunk(readEntries(reader, WeatherParameters.ALL));
+        }
+    }
 
-                float minPress = reader.float32();
-                float maxPress = reader.float32();
+    private static final class CompactChunkSerializer implements ObjectSerializer<EntryChunk> {
+        @Override
+        public int getSerializedObjectSize(@NotNull EntryChunk value) {
+            return getCompactEntriesSize(value.entries, WeatherParameters.ALL);
+        }
 
-                data[i] = new Entry(
-                        date,
-                        minTemp, maxTemp,
-                        minHum, maxHum,
-                        minPress, maxPress
-                );
-            }
+        @Override
+        public void writeObject(@NotNull EntryChunk value, @NotNull ValueWriter writer) {
+            writeCompactEntries(value.entries, WeatherParameters.ALL, writer);
+        }
 
-            return new DayRangeReport(data, stats);
+        @Override
+        @NotNull
+        public EntryChunk readObject(@NotNull ValueReader reader) throws ValidationException {
+            return new EntryChunk(readCompactEntries(reader, WeatherParameters.ALL));
         }
     }
 }
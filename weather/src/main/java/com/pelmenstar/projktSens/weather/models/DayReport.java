@@ -1,7 +1,6 @@
 package com.pelmenstar.projktSens.weather.models;
 
 import com.pelmenstar.projktSens.shared.AppendableToStringBuilder;
-import com.pelmenstar.projktSens.shared.Median;
 import com.pelmenstar.projktSens.shared.StringUtils;
 import com.pelmenstar.projktSens.shared.serialization.ObjectSerializer;
 import com.pelmenstar.projktSens.shared.serialization.Serializable;
@@ -9,6 +8,7 @@ import com.pelmenstar.projktSens.shared.serialization.ValidationException;
 import com.pelmenstar.projktSens.shared.serialization.ValueReader;
 import com.pelmenstar.projktSens.shared.serialization.ValueWriter;
 import com.pelmenstar.projktSens.shared.time.ShortDateTime;
+import com.pelmenstar.projktSens.shared.time.ShortDateTimeLong;
 import com.pelmenstar.projktSens.shared.time.ShortTime;
 import com.pelmenstar.projktSens.shared.time.TimeInt;
 
@@ -18,16 +18,14 @@ import java.util.Arrays;
 
 /**
  * A data class to save information about day statistics.
+ * Values of parameters, that aren't in parameters mask of the stats (see {@link ReportStats#parameters}),
+ * are 0 in the entries and aren't serialized.
  */
 public final class DayReport extends AppendableToStringBuilder {
     /**
      * Entry of {@link DayReport}
      */
     public static final class Entry extends AppendableToStringBuilder {
-        private static final int FIELD_TEMPERATURE = 0;
-        private static final int FIELD_HUMIDITY = 1;
-        private static final int FIELD_PRESSURE = 2;
-
         @TimeInt
         public final int time;
 
@@ -42,15 +40,6 @@ public final class DayReport extends AppendableToStringBuilder {
             this.pressure = press;
         }
 
-        private float getField(int type) {
-            switch (type) {
-                case FIELD_TEMPERATURE: return temperature;
-                case FIELD_HUMIDITY: return humidity;
-                case FIELD_PRESSURE: return pressure;
-                default: throw new RuntimeException("Invalid field type");
-            }
-        }
-
         @Override
         public boolean equals(Object other) {
             if (this == other) return true;
@@ -88,9 +77,168 @@ public final class DayReport extends AppendableToStringBuilder {
         }
     }
 
+    /**
+     * Part of {@link DayReport} entries, which is sent before the whole report is computed.
+     * Entries of the chunks, concatenated in order they were received, are entries of the report.
+     */
+    public static final class EntryChunk extends AppendableToStringBuilder {
+        @NotNull
+        public static final ObjectSerializer<EntryChunk> SERIALIZER;
+
+        @NotNull
+        public static final ObjectSerializer<EntryChunk> COMPACT_SERIALIZER;
+
+        public final @NotNull Entry @NotNull [] entries;
+
+        static {
+            SERIALIZER = new ChunkSerializer();
+            COMPACT_SERIALIZER = new CompactChunkSerializer();
+
+            Serializable.registerSerializer(EntryChunk.class, SERIALIZER);
+            Serializable.registerCompactSerializer(EntryChunk.class, COMPACT_SERIALIZER);
+        }
+
+        public EntryChunk(@NotNull Entry @NotNull [] entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (other == null || getClass() != other.getClass()) return false;
+
+            EntryChunk o = (EntryChunk) other;
+
+            return Arrays.equals(entries, o.entries);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(entries);
+        }
+
+        @Override
+        public void append(@NotNull StringBuilder sb) {
+            sb.append("{entries=");
+            StringUtils.appendArray(entries, sb);
+            sb.append('}');
+        }
+    }
+
+    /**
+     * Builds {@link DayReport} from weather values added one by one.
+     * Entries can be taken away in parts by {@link Builder#takeEntries()} before the report is complete,
+     * so they don't need to be held in memory until the end.
+     */
+    public static final class Builder {
+        private final ReportStatsBuilder statsBuilder;
+        private final int parameters;
+
+        private Entry[] entries;
+        private int entriesSize;
+
+        /**
+         * @param capacity expected count of values, it's not a limit
+         */
+        public Builder(int capacity) {
+            this(capacity, WeatherParameters.ALL);
+        }
+
+        /**
+         * @param capacity   expected count of values, it's not a limit
+         * @param parameters mask of parameters, that the report contains (see {@link WeatherParameters})
+         */
+        public Builder(int capacity, int parameters) {
+            statsBuilder = new ReportStatsBuilder(capacity, parameters);
+            entries = new Entry[Math.max(capacity, 1)];
+
+            this.parameters = parameters;
+        }
+
+        /**
+         * Adds weather values. Values are converted to {@link ValueUnit#CELSIUS} and {@link ValueUnit#MM_OF_MERCURY}
+         */
+        public void add(
+                @ShortDateTimeLong long dateTime,
+                int units,
+                float temperature, float humidity, float pressure
+        ) {
+            float temp = 0f;
+            float hum = 0f;
+            float press = 0f;
+
+            if (WeatherParameters.contains(parameters, WeatherParameters.TEMPERATURE)) {
+                temp = UnitValue.getValue(temperature, ValueUnitsPacked.getTemperatureUnit(units), ValueUnit.CELSIUS);
+            }
+
+            if (WeatherParameters.contains(parameters, WeatherParameters.HUMIDITY)) {
+                hum = humidity;
+            }
+
+            if (WeatherParameters.contains(parameters, WeatherParameters.PRESSURE)) {
+                press = UnitValue.getValue(pressure, ValueUnitsPacked.getPressureUnit(units), ValueUnit.MM_OF_MERCURY);
+            }
+
+            if (entriesSize == entries.length) {
+                entries = Arrays.copyOf(entries, entriesSize * 2);
+            }
+
+            entries[entriesSize++] = new Entry(ShortDateTime.getTime(dateTime), temp, hum, press);
+            statsBuilder.add(dateTime, temp, hum, press);
+        }
+
+        /**
+         * Returns count of entries, which were added after the last {@link Builder#takeEntries()}
+         */
+        public int getPendingEntriesCount() {
+            return entriesSize;
+        }
+
+        /**
+         * Returns entries, which were added after the last {@link Builder#takeEntries()}, and removes them from the builder
+         */
+        public @NotNull Entry @NotNull [] takeEntries() {
+            Entry[] result = entriesSize == entries.length ? entries : Arrays.copyOf(entries, entriesSize);
+
+            entries = new Entry[Math.max(entriesSize, 1)];
+            entriesSize = 0;
+
+            return result;
+        }
+
+        /**
+         * Computes stats on all added values, including values whose entries were taken.
+         *
+         * @throws IllegalStateException if no values were added
+         */
+        @NotNull
+        public ReportStats buildStats() {
+            return statsBuilder.build();
+        }
+
+        /**
+         * Creates {@link DayReport} with entries, which weren't taken, and stats on all the values
+         *
+         * @throws IllegalStateException if no values were added
+         */
+        @NotNull
+        public DayReport build() {
+            ReportStats stats = buildStats();
+
+            return new DayReport(takeEntries(), stats);
+        }
+    }
+
     @NotNull
     public static final ObjectSerializer<DayReport> SERIALIZER;
 
+    /**
+     * Lossy serializer, that quantizes values to hundredths and writes entries as zigzag varint deltas
+     * from the previous entry
+     */
+    @NotNull
+    public static final ObjectSerializer<DayReport> COMPACT_SERIALIZER;
+
     public final @NotNull Entry @NotNull [] entries;
 
     @NotNull
@@ -98,23 +246,37 @@ public final class DayReport extends AppendableToStringBuilder {
 
     static {
         SERIALIZER = new Serializer();
+        COMPACT_SERIALIZER = new CompactSerializer();
 
         // not necessary but can affect performance
         Serializable.registerSerializer(DayReport.class, SERIALIZER);
+        Serializable.registerCompactSerializer(DayReport.class, COMPACT_SERIALIZER);
     }
 
     public DayReport(@NotNull Entry @NotNull [] entries, @NotNull ReportStats stats) {
         int tempUnit = ValueUnitsPacked.getTemperatureUnit(stats.units);
         int pressUnit = ValueUnitsPacked.getPressureUnit(stats.units);
 
+        boolean hasTemp = WeatherParameters.contains(stats.parameters, WeatherParameters.TEMPERATURE);
+        boolean hasHum = WeatherParameters.contains(stats.parameters, WeatherParameters.HUMIDITY);
+        boolean hasPress = WeatherParameters.contains(stats.parameters, WeatherParameters.PRESSURE);
+
         for(Entry entry: entries) {
             if(!ShortTime.isValid(entry.time)) {
                 throw ValidationException.invalidValue("entry time", entry.time);
             }
 
-            UnitValue.ensureValid(entry.temperature, tempUnit, "entry temperature");
-            UnitValue.ensureValid(entry.humidity, ValueUnit.HUMIDITY, "entry humidity");
-            UnitValue.ensureValid(entry.pressure, pressUnit, "entry pressure");
+            if(hasTemp) {
+                UnitValue.ensureValid(entry.temperature, tempUnit, "entry temperature");
+            }
+
+            if(hasHum) {
+                UnitValue.ensureValid(entry.humidity, ValueUnit.HUMIDITY, "entry humidity");
+            }
+
+            if(hasPress) {
+                UnitValue.ensureValid(entry.pressure, pressUnit, "entry pressure");
+            }
         }
 
         this.entries = entries;
@@ -154,157 +316,245 @@ public final class DayReport extends AppendableToStringBuilder {
         return create(new ArrayWeatherPropertyIterable(data));
     }
 
+    @NotNull
+    public static DayReport create(@NotNull WeatherInfo @NotNull [] data, int parameters) {
+        return create(new ArrayWeatherPropertyIterable(data), parameters);
+    }
+
     @NotNull
     public static DayReport create(@NotNull WeatherPropertyIterable data) {
+        return create(data, WeatherParameters.ALL);
+    }
+
+    /**
+     * Creates report, that contains only given {@code parameters} (see {@link WeatherParameters})
+     */
+    @NotNull
+    public static DayReport create(@NotNull WeatherPropertyIterable data, int parameters) {
         int size = data.size();
         if (size == 0) {
             throw new IllegalArgumentException("Data is empty");
         }
 
-        Entry[] entries = new Entry[size];
+        Builder builder = new Builder(size, parameters);
+
+        while (data.moveNext()) {
+            builder.add(
+                    data.getDateTime(),
+                    data.getUnits(),
+                    data.getTemperature(), data.getHumidity(), data.getPressure()
+            );
+        }
+
+        return builder.build();
+    }
 
-        float tempSum = 0;
-        float humSum = 0;
-        float pressSum = 0;
+    private static int getEntriesSize(@NotNull Entry @NotNull [] entries, int parameters) {
+        return 2 + (3 + 4 * WeatherParameters.count(parameters)) * entries.length;
+    }
 
-        int i = 0;
+    private static void writeEntries(@NotNull Entry @NotNull [] entries, int parameters, @NotNull ValueWriter writer) {
+        boolean hasTemp = WeatherParameters.contains(parameters, WeatherParameters.TEMPERATURE);
+        boolean hasHum = WeatherParameters.contains(parameters, WeatherParameters.HUMIDITY);
+        boolean hasPress = WeatherParameters.contains(parameters, WeatherParameters.PRESSURE);
 
-        float minTempValue = Float.MAX_VALUE;
-        long minTempDt = ShortDateTime.NONE;
+        writer.int16((short) entries.length);
 
-        float maxTempValue = Float.MIN_VALUE;
-        long maxTempDt = ShortDateTime.NONE;
+        for (Entry e : entries) {
+            writer.int24(e.time);
 
-        float minHumValue = Float.MAX_VALUE;
-        long minHumDt = ShortDateTime.NONE;
+            if (hasTemp) {
+                writer.float32(e.temperature);
+            }
 
-        float maxHumValue = Float.MIN_VALUE;
-        long maxHumDt = ShortDateTime.NONE;
+            if (hasHum) {
+                writer.float32(e.humidity);
+            }
 
-        float minPressValue = Float.MAX_VALUE;
-        long minPressDt = ShortDateTime.NONE;
+            if (hasPress) {
+                writer.float32(e.pressure);
+            }
+        }
+    }
 
-        float maxPressValue = Float.MIN_VALUE;
-        long maxPressDt = ShortDateTime.NONE;
+    private static @NotNull Entry @NotNull [] readEntries(@NotNull ValueReader reader, int parameters) {
+        boolean hasTemp = WeatherParameters.contains(parameters, WeatherParameters.TEMPERATURE);
+        boolean hasHum = WeatherParameters.contains(parameters, WeatherParameters.HUMIDITY);
+        boolean hasPress = WeatherParameters.contains(parameters, WeatherParameters.PRESSURE);
 
-        while (data.moveNext()) {
-            int units = data.getUnits();
-            int tempUnit = ValueUnitsPacked.getTemperatureUnit(units);
-            int pressUnit = ValueUnitsPacked.getPressureUnit(units);
+        int entriesLength = reader.int16();
+        Entry[] entries = new Entry[entriesLength];
+
+        for (int i = 0; i < entriesLength; i++) {
+            int time = reader.int24();
+            float temp = hasTemp ? reader.float32() : 0f;
+            float hum = hasHum ? reader.float32() : 0f;
+            float press = hasPress ? reader.float32() : 0f;
+
+            entries[i] = new Entry(time, temp, hum, press);
+        }
+
+        return entries;
+    }
+
+    // Deltas of parameters, that aren't in the mask, are always 0, so they aren't written
+    private static int getCompactEntriesSize(@NotNull Entry @NotNull [] entries, int parameters) {
+        boolean hasTemp = WeatherParameters.contains(parameters, WeatherParameters.TEMPERATURE);
+        boolean hasHum = WeatherParameters.contains(parameters, WeatherParameters.HUMIDITY);
+        boolean hasPress = WeatherParameters.contains(parameters, WeatherParameters.PRESSURE);
+
+        int size = ValueWriter.varIntSize(entries.length);
 
-            long dateTime = data.getDateTime();
-            float temp = UnitValue.getValue(data.getTemperature(), tempUnit, ValueUnit.CELSIUS);
-            float hum = data.getHumidity();
-            float press = UnitValue.getValue(data.getPressure(), pressUnit, ValueUnit.MM_OF_MERCURY);
+        int prevTime = 0;
+        int prevTemp = 0;
+        int prevHum = 0;
+        int prevPress = 0;
 
-            entries[i++] = new Entry(ShortDateTime.getTime(dateTime), temp, hum, press);
+        for (Entry e : entries) {
+            int temp = CompactValues.quantize(e.temperature);
+            int hum = CompactValues.quantize(e.humidity);
+            int press = CompactValues.quantize(e.pressure);
 
-            tempSum += temp;
-            humSum += hum;
-            pressSum += press;
+            size += ValueWriter.zigZagVarIntSize(e.time - prevTime);
 
-            if (temp < minTempValue) {
-                minTempValue = temp;
-                minTempDt = dateTime;
+            if (hasTemp) {
+                size += ValueWriter.zigZagVarIntSize(temp - prevTemp);
             }
 
-            if (temp > maxTempValue) {
-                maxTempValue = temp;
-                maxTempDt = dateTime;
+            if (hasHum) {
+                size += ValueWriter.zigZagVarIntSize(hum - prevHum);
             }
 
-            if (hum < minHumValue) {
-                minHumValue = hum;
-                minHumDt = dateTime;
+            if (hasPress) {
+                size += ValueWriter.zigZagVarIntSize(press - prevPress);
             }
 
-            if (hum > maxHumValue) {
-                maxHumValue = hum;
-                maxHumDt = dateTime;
+            prevTime = e.time;
+            prevTemp = temp;
+            prevHum = hum;
+            prevPress = press;
+        }
+
+        return size;
+    }
+
+    private static void writeCompactEntries(@NotNull Entry @NotNull [] entries, int parameters, @NotNull ValueWriter writer) {
+        boolean hasTemp = WeatherParameters.contains(parameters, WeatherParameters.TEMPERATURE);
+        boolean hasHum = WeatherParameters.contains(parameters, WeatherParameters.HUMIDITY);
+        boolean hasPress = WeatherParameters.contains(parameters, WeatherParameters.PRESSURE);
+
+        writer.varInt(entries.length);
+
+        int prevTime = 0;
+        int prevTemp = 0;
+        int prevHum = 0;
+        int prevPress = 0;
+
+        for (Entry e : entries) {
+            int temp = CompactValues.quantize(e.temperature);
+            int hum = CompactValues.quantize(e.humidity);
+            int press = CompactValues.quantize(e.pressure);
+
+            writer.zigZagVarInt(e.time - prevTime);
+
+            if (hasTemp) {
+                writer.zigZagVarInt(temp - prevTemp);
             }
 
-            if (press < minPressValue) {
-                minPressValue = press;
-                minPressDt = dateTime;
+            if (hasHum) {
+                writer.zigZagVarInt(hum - prevHum);
             }
 
-            if (press > maxPressValue) {
-                maxPressValue = press;
-                maxPressDt = dateTime;
+            if (hasPress) {
+                writer.zigZagVarInt(press - prevPress);
             }
-        }
 
-        float invSize = 1f / size;
-        float avgTemp = tempSum * invSize;
-        float avgHum = humSum * invSize;
-        float avgPress = pressSum * invSize;
-
-        float medianTemp;
-        float medianHum;
-        float medianPress;
-
-        float[] values = new float[entries.length];
-
-        medianTemp = computeMedian(values, entries, Entry.FIELD_TEMPERATURE);
-        medianHum = computeMedian(values, entries, Entry.FIELD_HUMIDITY);
-        medianPress = computeMedian(values, entries, Entry.FIELD_PRESSURE);
-
-        ParameterStats tempStats = new ParameterStats(
-                new ValueWithDate(minTempDt, minTempValue),
-                new ValueWithDate(maxTempDt, maxTempValue),
-                avgTemp,
-                medianTemp
-        );
-        ParameterStats humStats = new ParameterStats(
-                new ValueWithDate(minHumDt, minHumValue),
-                new ValueWithDate(maxHumDt, maxHumValue),
-                avgHum,
-                medianHum
-        );
-        ParameterStats pressStats = new ParameterStats(
-                new ValueWithDate(minPressDt, minPressValue),
-                new ValueWithDate(maxPressDt, maxPressValue),
-                avgPress,
-                medianPress
-        );
-
-        ReportStats stats = new ReportStats(
-                ValueUnitsPacked.CELSIUS_MM_OF_MERCURY,
-                tempStats, humStats, pressStats
-        );
-
-        return new DayReport(entries, stats);
+            prevTime = e.time;
+            prevTemp = temp;
+            prevHum = hum;
+            prevPress = press;
+        }
     }
 
-    private static float computeMedian(
-            float[] cachedValues,
-            @NotNull Entry @NotNull [] entries,
-            int field
-    ) {
-        for(int i = 0; i < entries.length; i++) {
-            cachedValues[i] = entries[i].getField(field);
+    private static @NotNull Entry @NotNull [] readCompactEntries(
+            @NotNull ValueReader reader,
+            int parameters
+    ) throws ValidationException {
+        boolean hasTemp = WeatherParameters.contains(parameters, WeatherParameters.TEMPERATURE);
+        boolean hasHum = WeatherParameters.contains(parameters, WeatherParameters.HUMIDITY);
+        boolean hasPress = WeatherParameters.contains(parameters, WeatherParameters.PRESSURE);
+
+        int entriesLength = reader.varInt();
+        if (entriesLength < 0) {
+            throw ValidationException.invalidValue("entries length", entriesLength);
         }
 
-        return Median.compute(cachedValues);
+        Entry[] entries = new Entry[entriesLength];
+
+        int time = 0;
+        int temp = 0;
+        int hum = 0;
+        int press = 0;
+
+        for (int i = 0; i < entriesLength; i++) {
+            time += reader.zigZagVarInt();
+
+            if (hasTemp) {
+                temp += reader.zigZagVarInt();
+            }
+
+            if (hasHum) {
+                hum += reader.zigZagVarInt();
+            }
+
+            if (hasPress) {
+                press += reader.zigZagVarInt();
+            }
+
+            entries[i] = new Entry(
+                    time,
+                    CompactValues.dequantize(temp),
+                    CompactValues.dequantize(hum),
+                    CompactValues.dequantize(press)
+            );
+        }
+
+        return entries;
     }
 
     private static final class Serializer implements ObjectSerializer<DayReport> {
         @Override
         public int getSerializedObjectSize(@NotNull DayReport value) {
-            return ReportStats.SERIALIZED_OBJECT_SIZE + 2 + (15 * value.entries.length);
+            return ReportStats.SERIALIZER.getSerializedObjectSize(value.stats) +
+                    getEntriesSize(value.entries, value.stats.parameters);
         }
 
         @Override
         public void writeObject(@NotNull DayReport value, @NotNull ValueWriter writer) {
             ReportStats.SERIALIZER.writeObject(value.stats, writer);
-            writer.int16((short) value.entries.length);
+            writeEntries(value.entries, value.stats.parameters, writer);
+        }
 
-            for (Entry e : value.entries) {
-                writer.int24(e.time);
-                writer.float32(e.temperature);
-                writer.float32(e.humidity);
-                writer.float32(e.pressure);
-            }
+        @Override
+        @NotNull
+        public DayReport readObject(@NotNull ValueReader reader) throws ValidationException {
+            ReportStats stats = ReportStats.SERIALIZER.readObject(reader);
+
+            return new DayReport(readEntries(reader, stats.parameters), stats);
+        }
+    }
+
+    private static final class CompactSerializer implements ObjectSerializer<DayReport> {
+        @Override
+        public int getSerializedObjectSize(@NotNull DayReport value) {
+            return ReportStats.SERIALIZER.getSerializedObjectSize(value.stats) +
+                    getCompactEntriesSize(value.entries, value.stats.parameters);
+        }
+
+        @Override
+        public void writeObject(@NotNull DayReport value, @NotNull ValueWriter writer) {
+            ReportStats.SERIALIZER.writeObject(value.stats, writer);
+            writeCompactEntries(value.entries, value.stats.parameters, writer);
         }
 
         @Override
@@ -312,19 +562,43 @@ public final class DayReport extends AppendableToStringBuilder {
         public DayReport readObject(@NotNull ValueReader reader) throws ValidationException {
             ReportStats stats = ReportStats.SERIALIZER.readObject(reader);
 
-            int entriesLength = reader.int16();
-            Entry[] entries = new Entry[entriesLength];
+            return new DayReport(readCompactEntries(reader, stats.parameters), stats);
+        }
+    }
 
-            for (int i = 0; i < entriesLength; i++) {
-                int time = reader.int24();
-                float temp = reader.float32();
-                float hum = reader.float32();
-                float press = reader.float32();
+    private static final class ChunkSerializer implements ObjectSerializer<EntryChunk> {
+        @Override
+        public int getSerializedObjectSize(@NotNull EntryChunk value) {
+            return getEntriesSize(value.entries, WeatherParameters.ALL);
+        }
 
-                entries[i] = new Entry(time, temp, hum, press);
-            }
+        @Override
+        public void writeObject(@NotNull EntryChunk value, @NotNull ValueWriter writer) {
+            writeEntries(value.entries, WeatherParameters.ALL, writer);
+        }
+
+        @Override
+        @NotNull
+        public EntryChunk readObject(@NotNull ValueReader reader) throws ValidationException {
+            return new EntryChunk(readEntries(reader, WeatherParameters.ALL));
+        }
+    }
+
+    private static final class CompactChunkSerializer implements ObjectSerializer<EntryChunk> {
+        @Override
+        public int getSerializedObjectSize(@NotNull EntryChunk value) {
+            return getCompactEntriesSize(value.entries, WeatherParameters.ALL);
+        }
 
-            return new DayReport(entries, stats);
+        @Override
+        public void writeObject(@NotNull EntryChunk value, @NotNull ValueWriter writer) {
+            writeCompactEntries(value.entries, WeatherParameters.ALL, writer);
+        }
+
+        @Override
+        @NotNull
+        public EntryChunk readObject(@NotNull ValueReader reader) throws ValidationException {
+            return new EntryChunk(readCompactEntries(reader, WeatherParameters.ALL));
         }
     }
 }
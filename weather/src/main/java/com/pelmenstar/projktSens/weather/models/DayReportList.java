@@ -0,0 +1,244 @@
+package com.pelmenstar.projktSens.weather.models;
+
+import com.pelmenstar.projktSens.shared.AppendableToStringBuilder;
+import com.pelmenstar.projktSens.shared.serialization.ObjectSerializer;
+import com.pelmenstar.projktSens.shared.serialization.Serializable;
+import com.pelmenstar.projktSens.shared.serialization.ValidationException;
+import com.pelmenstar.projktSens.shared.serialization.ValueReader;
+import com.pelmenstar.projktSens.shared.serialization.ValueWriter;
+import com.pelmenstar.projktSens.shared.time.ShortDate;
+import com.pelmenstar.projktSens.shared.time.ShortDateInt;
+import com.pelmenstar.projktSens.shared.time.ShortDateTime;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Day reports of several days, ordered by date. Days without weather data have no report.
+ * Instances of this class can be serialized in format described below: <br/>
+ * - reports.length | varint <br/>
+ * - reports: <br/>
+ * -- date | 3 bytes <br/>
+ * -- report | {@link DayReport#SERIALIZER} or {@link DayReport#COMPACT_SERIALIZER} for compact serializer <br/>
+ */
+public final class DayReportList extends AppendableToStringBuilder {
+    @NotNull
+    public static final ObjectSerializer<DayReportList> SERIALIZER;
+
+    @NotNull
+    public static final ObjectSerializer<DayReportList> COMPACT_SERIALIZER;
+
+    private static final int DEFAULT_DAY_CAPACITY = 256;
+
+    @ShortDateInt
+    private final int @NotNull [] dates;
+    private final @NotNull DayReport @NotNull [] reports;
+
+    static {
+        SERIALIZER = new Serializer(DayReport.SERIALIZER);
+        COMPACT_SERIALIZER = new Serializer(DayReport.COMPACT_SERIALIZER);
+
+        // not necessary but can affect performance
+        Serializable.registerSerializer(DayReportList.class, SERIALIZER);
+        Serializable.registerCompactSerializer(DayReportList.class, COMPACT_SERIALIZER);
+    }
+
+    /**
+     * Note that arrays aren't copied and shouldn't be changed after the list is created.
+     * {@code dates} should be sorted in ascending order and {@code reports[i]} should be report of {@code dates[i]}
+     */
+    public DayReportList(@ShortDateInt int @NotNull [] dates, @NotNull DayReport @NotNull [] reports) {
+        if (dates.length != reports.length) {
+            throw new IllegalArgumentException("Arrays should have the same length");
+        }
+
+        for (int i = 0; i < dates.length; i++) {
+            int date = dates[i];
+
+            if (!ShortDate.isValid(date) || (i > 0 && ShortDate.toEpochDay(date) <= ShortDate.toEpochDay(dates[i - 1]))) {
+                throw ValidationException.invalidValue("date", date);
+            }
+        }
+
+        this.dates = dates;
+        this.reports = reports;
+    }
+
+    public int size() {
+        return reports.length;
+    }
+
+    @ShortDateInt
+    public int getDate(int index) {
+        return dates[index];
+    }
+
+    @NotNull
+    public DayReport get(int index) {
+        return reports[index];
+    }
+
+    /**
+     * Returns report of given {@code date} or null if the list doesn't contain it
+     */
+    @Nullable
+    public DayReport getByDate(@ShortDateInt int date) {
+        for (int i = 0; i < dates.length; i++) {
+            if (dates[i] == date) {
+                return reports[i];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates reports of all the days in {@code data}. Values should be ordered by time,
+     * reports are built in one pass over the data: new report is started when date of value is changed
+     */
+    @NotNull
+    public static DayReportList create(@NotNull WeatherPropertyIterable data) {
+        int size = data.size();
+
+        int[] dates = new int[4];
+        DayReport[] reports = new DayReport[4];
+        int reportsSize = 0;
+
+        DayReport.Builder builder = null;
+        int currentDate = 0;
+        int dayCapacity = Math.min(size, DEFAULT_DAY_CAPACITY);
+
+        while (data.moveNext()) {
+            long dateTime = data.getDateTime();
+            int date = ShortDateTime.getDate(dateTime);
+
+            if (builder == null || date != currentDate) {
+                if (builder != null) {
+                    if (reportsSize == reports.length) {
+                        dates = Arrays.copyOf(dates, reportsSize * 2);
+                        reports = Arrays.copyOf(reports, reportsSize * 2);
+                    }
+
+                    // count of values in the day is the best guess about count of values in the next one
+                    dayCapacity = builder.getPendingEntriesCount();
+
+                    dates[reportsSize] = currentDate;
+                    reports[reportsSize] = builder.build();
+                    reportsSize++;
+                }
+
+                builder = new DayReport.Builder(dayCapacity);
+                currentDate = date;
+            }
+
+            builder.add(
+                    dateTime,
+                    data.getUnits(),
+                    data.getTemperature(), data.getHumidity(), data.getPressure()
+            );
+        }
+
+        if (builder != null) {
+            if (reportsSize == reports.length) {
+                dates = Arrays.copyOf(dates, reportsSize + 1);
+                reports = Arrays.copyOf(reports, reportsSize + 1);
+            }
+
+            dates[reportsSize] = currentDate;
+            reports[reportsSize] = builder.build();
+            reportsSize++;
+        }
+
+        return new DayReportList(Arrays.copyOf(dates, reportsSize), Arrays.copyOf(reports, reportsSize));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (other == null || getClass() != other.getClass()) return false;
+
+        DayReportList o = (DayReportList) other;
+
+        return Arrays.equals(dates, o.dates) && Arrays.equals(reports, o.reports);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(dates);
+        result = 31 * result + Arrays.hashCode(reports);
+
+        return result;
+    }
+
+    @Override
+    public void append(@NotNull StringBuilder sb) {
+        sb.append("{reports=[");
+
+        for (int i = 0; i < reports.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+
+            sb.append("{date=");
+            ShortDate.append(dates[i], sb);
+            sb.append(", report=");
+            reports[i].append(sb);
+            sb.append('}');
+        }
+
+        sb.append("]}");
+    }
+
+    private static final class Serializer implements ObjectSerializer<DayReportList> {
+        private final ObjectSerializer<DayReport> reportSerializer;
+
+        public Serializer(@NotNull ObjectSerializer<DayReport> reportSerializer) {
+            this.reportSerializer = reportSerializer;
+        }
+
+        @Override
+        public int getSerializedObjectSize(@NotNull DayReportList value) {
+            DayReport[] reports = value.reports;
+            int size = ValueWriter.varIntSize(reports.length) + 3 * reports.length;
+
+            for (DayReport report : reports) {
+                size += reportSerializer.getSerializedObjectSize(report);
+            }
+
+            return size;
+        }
+
+        @Override
+        public void writeObject(@NotNull DayReportList value, @NotNull ValueWriter writer) {
+            DayReport[] reports = value.reports;
+
+            writer.varInt(reports.length);
+
+            for (int i = 0; i < reports.length; i++) {
+                writer.int24(value.dates[i]);
+                reportSerializer.writeObject(reports[i], writer);
+            }
+        }
+
+        @NotNull
+        @Override
+        public DayReportList readObject(@NotNull ValueReader reader) throws ValidationException {
+            int length = reader.varInt();
+            if (length < 0) {
+                throw ValidationException.invalidValue("reports length", length);
+            }
+
+            int[] dates = new int[length];
+            DayReport[] reports = new DayReport[length];
+
+            for (int i = 0; i < length; i++) {
+                dates[i] = reader.int24();
+                reports[i] = reportSerializer.readObject(reader);
+            }
+
+            return new DayReportList(dates, reports);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.pelmenstar.projktSens.weather.models;
+
+import com.pelmenstar.projktSens.shared.time.ShortDateTime;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Iterates over records of {@link SegmentWeatherRepository} right in the mapped segment buffers, values aren't copied.
+ * Range of records can span several segments: records from {@code starts[i]} (inclusive) to {@code ends[i]} (exclusive)
+ * of {@code buffers[i]} are iterated in the order of buffers
+ */
+final class MappedWeatherPropertyIterable implements WeatherPropertyIterable {
+    /**
+     * Size of segment header: magic | 4 bytes, record size | 4 bytes, count of records | 4 bytes, reserved | 4 bytes
+     */
+    static final int HEADER_SIZE = 16;
+
+    /**
+     * Size of record: epoch second | 8 bytes, temperature | 4 bytes, humidity | 4 bytes, pressure | 4 bytes
+     */
+    static final int RECORD_SIZE = 20;
+
+    private final @NotNull ByteBuffer @NotNull [] buffers;
+    private final int @NotNull [] starts;
+    private final int @NotNull [] ends;
+    private final int size;
+
+    private int bufferIndex;
+    private int recordIndex;
+
+    private ByteBuffer current;
+    private int offset;
+
+    MappedWeatherPropertyIterable(
+            @NotNull ByteBuffer @NotNull [] buffers,
+            int @NotNull [] starts,
+            int @NotNull [] ends
+    ) {
+        this.buffers = buffers;
+        this.starts = starts;
+        this.ends = ends;
+
+        int size = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            size += ends[i] - starts[i];
+        }
+
+        this.size = size;
+
+        if (buffers.length > 0) {
+            // one before the first record, so that the first moveNext() moves to it
+            recordIndex = starts[0] - 1;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getUnits() {
+        return ValueUnitsPacked.CELSIUS_MM_OF_MERCURY;
+    }
+
+    @Override
+    public long getDateTime() {
+        return ShortDateTime.ofEpochSecond(current.getLong(offset));
+    }
+
+    @Override
+    public float getTemperature() {
+        return current.getFloat(offset + 8);
+    }
+
+    @Override
+    public float getHumidity() {
+        return current.getFloat(offset + 12);
+    }
+
+    @Override
+    public float getPressure() {
+        return current.getFloat(offset + 16);
+    }
+
+    @Override
+    public boolean moveNext() {
+        while (bufferIndex < buffers.length) {
+            recordIndex++;
+
+            if (recordIndex < ends[bufferIndex]) {
+                current = buffers[bufferIndex];
+                offset = recordOffset(recordIndex);
+
+                return true;
+            }
+
+            bufferIndex++;
+
+            if (bufferIndex < buffers.length) {
+                recordIndex = starts[bufferIndex] - 1;
+            }
+        }
+
+        return false;
+    }
+
+    static int recordOffset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+}
@@ -6,6 +6,7 @@ import com.pelmenstar.projktSens.shared.serialization.Serializable;
 import com.pelmenstar.projktSens.shared.serialization.ValidationException;
 import com.pelmenstar.projktSens.shared.serialization.ValueReader;
 import com.pelmenstar.projktSens.shared.serialization.ValueWriter;
+import com.pelmenstar.projktSens.shared.time.ShortDateTimeLong;
 
 import org.jetbrains.annotations.NotNull;
 
@@ -42,6 +43,17 @@ public final class ParameterStats extends AppendableToStringBuilder {
         this.amplitude = Math.abs(max.value - min.value);
     }
 
+    /**
+     * Returns stats of parameter, that isn't in parameters mask of the report (see {@link WeatherParameters}).
+     * All the values are 0, {@code dateTime} is needed only to make valid {@link ValueWithDate}
+     */
+    @NotNull
+    public static ParameterStats zero(@ShortDateTimeLong long dateTime) {
+        ValueWithDate value = new ValueWithDate(dateTime, 0f);
+
+        return new ParameterStats(value, value, 0f, 0f);
+    }
+
     @Override
     public boolean equals(Object other) {
         if (this == other) return true;
@@ -8,18 +8,39 @@ import com.pelmenstar.projktSens.shared.serialization.ValueReader;
 import com.pelmenstar.projktSens.shared.serialization.ValueWriter;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A data class which contains basic statistics information.
+ * Stats of parameters, that aren't in {@link ReportStats#parameters} mask, are zero and aren't serialized
+ * (see {@link ParameterStats#zero(long)}).
+ * Instances of {@link ReportStats} can be serialized in format described below: <br/>
+ * - units | 4 bytes. If {@link #UNITS_HAS_PARAMETERS} bit is set, the stats don't contain all the parameters <br/>
+ * - parameters | 1 byte, only if {@link #UNITS_HAS_PARAMETERS} bit is set <br/>
+ * - temperature, humidity, pressure stats, that are in the mask | {@link ParameterStats#SERIALIZED_OBJECT_SIZE} each <br/>
+ * So stats with all the parameters are serialized in the same way as before the mask was introduced.
  */
 public final class ReportStats extends AppendableToStringBuilder {
+    /**
+     * Serialized size of stats with all the parameters
+     */
     public static final int SERIALIZED_OBJECT_SIZE = 4 + 3 * ParameterStats.SERIALIZED_OBJECT_SIZE;
 
+    /**
+     * Bit of serialized units, that is never set in valid units and signals that parameters mask follows them
+     */
+    private static final int UNITS_HAS_PARAMETERS = 0x80000000;
+
     @NotNull
     public static final ObjectSerializer<ReportStats> SERIALIZER;
 
     public final int units;
 
+    /**
+     * Mask of parameters, that the stats contain (see {@link WeatherParameters})
+     */
+    public final int parameters;
+
     @NotNull
     public final ParameterStats temperature;
 
@@ -40,14 +61,35 @@ public final class ReportStats extends AppendableToStringBuilder {
                        @NotNull ParameterStats tempStats,
                        @NotNull ParameterStats humStats,
                        @NotNull ParameterStats pressStats) {
+        this(units, WeatherParameters.ALL, tempStats, humStats, pressStats);
+    }
+
+    public ReportStats(int units,
+                       int parameters,
+                       @NotNull ParameterStats tempStats,
+                       @NotNull ParameterStats humStats,
+                       @NotNull ParameterStats pressStats) {
+        if (!WeatherParameters.isValid(parameters)) {
+            throw ValidationException.invalidValue("parameters", parameters);
+        }
+
         int tempUnit = ValueUnitsPacked.getTemperatureUnit(units);
         int pressUnit = ValueUnitsPacked.getPressureUnit(units);
 
-        ensureParamStatsValid(tempStats, tempUnit, "temperature");
-        ensureParamStatsValid(humStats, ValueUnit.HUMIDITY, "humidity");
-        ensureParamStatsValid(pressStats, pressUnit, "pressure");
+        if (WeatherParameters.contains(parameters, WeatherParameters.TEMPERATURE)) {
+            ensureParamStatsValid(tempStats, tempUnit, "temperature");
+        }
+
+        if (WeatherParameters.contains(parameters, WeatherParameters.HUMIDITY)) {
+            ensureParamStatsValid(humStats, ValueUnit.HUMIDITY, "humidity");
+        }
+
+        if (WeatherParameters.contains(parameters, WeatherParameters.PRESSURE)) {
+            ensureParamStatsValid(pressStats, pressUnit, "pressure");
+        }
 
         this.units = units;
+        this.parameters = parameters;
         this.temperature = tempStats;
         this.humidity = humStats;
         this.pressure = pressStats;
@@ -70,26 +112,35 @@ public final class ReportStats extends AppendableToStringBuilder {
 
         ReportStats o = (ReportStats) other;
 
+        // stats of parameters, that aren't in the mask, are not compared
         return units == o.units &&
-                temperature.equals(o.temperature) &&
-                humidity.equals(o.humidity) &&
-                pressure.equals(o.pressure);
+                parameters == o.parameters &&
+                (!hasParameter(WeatherParameters.TEMPERATURE) || temperature.equals(o.temperature)) &&
+                (!hasParameter(WeatherParameters.HUMIDITY) || humidity.equals(o.humidity)) &&
+                (!hasParameter(WeatherParameters.PRESSURE) || pressure.equals(o.pressure));
     }
 
     @Override
     public int hashCode() {
         int result = units;
-        result = 31 * result + temperature.hashCode();
-        result = 31 * result + humidity.hashCode();
-        result = 31 * result + pressure.hashCode();
+        result = 31 * result + parameters;
+        result = 31 * result + (hasParameter(WeatherParameters.TEMPERATURE) ? temperature.hashCode() : 0);
+        result = 31 * result + (hasParameter(WeatherParameters.HUMIDITY) ? humidity.hashCode() : 0);
+        result = 31 * result + (hasParameter(WeatherParameters.PRESSURE) ? pressure.hashCode() : 0);
 
         return result;
     }
 
+    private boolean hasParameter(int parameter) {
+        return WeatherParameters.contains(parameters, parameter);
+    }
+
     @Override
     public void append(@NotNull StringBuilder sb) {
         sb.append("{units=");
         ValueUnitsPacked.append(units, sb);
+        sb.append(", parameters=");
+        sb.append(parameters);
         sb.append(", temperature=");
         temperature.append(sb);
         sb.append(", humidity=");
@@ -102,30 +153,83 @@ public final class ReportStats extends AppendableToStringBuilder {
     private static final class Serializer implements ObjectSerializer<ReportStats> {
         @Override
         public int getSerializedObjectSize(@NotNull ReportStats value) {
-            return SERIALIZED_OBJECT_SIZE;
+            int parameters = value.parameters;
+            if (parameters == WeatherParameters.ALL) {
+                return SERIALIZED_OBJECT_SIZE;
+            }
+
+            return 5 + WeatherParameters.count(parameters) * ParameterStats.SERIALIZED_OBJECT_SIZE;
         }
 
         @Override
         public void writeObject(@NotNull ReportStats value, @NotNull ValueWriter writer) {
-            writer.int32(value.units);
-            ParameterStats.SERIALIZER.writeObject(value.temperature, writer);
-            ParameterStats.SERIALIZER.writeObject(value.humidity, writer);
-            ParameterStats.SERIALIZER.writeObject(value.pressure, writer);
+            int parameters = value.parameters;
+
+            if (parameters == WeatherParameters.ALL) {
+                writer.int32(value.units);
+            } else {
+                writer.int32(value.units | UNITS_HAS_PARAMETERS);
+                writer.int8((byte) parameters);
+            }
+
+            if (WeatherParameters.contains(parameters, WeatherParameters.TEMPERATURE)) {
+                ParameterStats.SERIALIZER.writeObject(value.temperature, writer);
+            }
+
+            if (WeatherParameters.contains(parameters, WeatherParameters.HUMIDITY)) {
+                ParameterStats.SERIALIZER.writeObject(value.humidity, writer);
+            }
+
+            if (WeatherParameters.contains(parameters, WeatherParameters.PRESSURE)) {
+                ParameterStats.SERIALIZER.writeObject(value.pressure, writer);
+            }
         }
 
         @NotNull
         @Override
         public ReportStats readObject(@NotNull ValueReader reader) throws ValidationException {
             int units = reader.int32();
+            int parameters = WeatherParameters.ALL;
+
+            if ((units & UNITS_HAS_PARAMETERS) != 0) {
+                units &= ~UNITS_HAS_PARAMETERS;
+
+                parameters = reader.int8();
+                if (!WeatherParameters.isValid(parameters)) {
+                    throw ValidationException.invalidValue("parameters", parameters);
+                }
+            }
+
             if (!ValueUnitsPacked.isValid(units)) {
                 throw ValidationException.invalidValue("units", units);
             }
 
-            ParameterStats temp = ParameterStats.SERIALIZER.readObject(reader);
-            ParameterStats hum = ParameterStats.SERIALIZER.readObject(reader);
-            ParameterStats press = ParameterStats.SERIALIZER.readObject(reader);
+            ParameterStats temp = readParameterStats(reader, parameters, WeatherParameters.TEMPERATURE);
+            ParameterStats hum = readParameterStats(reader, parameters, WeatherParameters.HUMIDITY);
+            ParameterStats press = readParameterStats(reader, parameters, WeatherParameters.PRESSURE);
+
+            // date of zero stats is taken from any stats that were read
+            long dateTime = (temp != null ? temp : hum != null ? hum : press).min.dateTime;
+
+            return new ReportStats(
+                    units, parameters,
+                    temp != null ? temp : ParameterStats.zero(dateTime),
+                    hum != null ? hum : ParameterStats.zero(dateTime),
+                    press != null ? press : ParameterStats.zero(dateTime)
+            );
+        }
+
+        @Nullable
+        private static ParameterStats readParameterStats(
+                @NotNull ValueReader reader,
+                int parameters,
+                int parameter
+        ) throws ValidationException {
+            if (WeatherParameters.contains(parameters, parameter)) {
+                return ParameterStats.SERIALIZER.readObject(reader);
+            }
 
-            return new ReportStats(units, temp, hum, press);
+            return null;
         }
     }
 }
@@ -0,0 +1,147 @@
+package com.pelmenstar.projktSens.weather.models;
+
+import com.pelmenstar.projktSens.shared.Median;
+import com.pelmenstar.projktSens.shared.time.ShortDateTime;
+import com.pelmenstar.projktSens.shared.time.ShortDateTimeLong;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates weather values one by one and computes {@link ReportStats} on them.
+ * Values should be in {@link ValueUnit#CELSIUS} and {@link ValueUnit#MM_OF_MERCURY}.
+ * Parameters, that aren't in parameters mask (see {@link WeatherParameters}), aren't accumulated
+ */
+final class ReportStatsBuilder {
+    private static final class ParameterAccumulator {
+        private float[] values;
+        private int size;
+        private float sum;
+
+        private float min = Float.MAX_VALUE;
+        private long minDateTime = ShortDateTime.NONE;
+
+        private float max = -Float.MAX_VALUE;
+        private long maxDateTime = ShortDateTime.NONE;
+
+        ParameterAccumulator(int capacity) {
+            values = new float[Math.max(capacity, 1)];
+        }
+
+        void add(@ShortDateTimeLong long dateTime, float value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            values[size++] = value;
+            sum += value;
+
+            if (value < min) {
+                min = value;
+                minDateTime = dateTime;
+            }
+
+            if (value > max) {
+                max = value;
+                maxDateTime = dateTime;
+            }
+        }
+
+        @NotNull
+        ParameterStats build() {
+            float[] medianValues = size == values.length ? values : Arrays.copyOf(values, size);
+
+            return new ParameterStats(
+                    new ValueWithDate(minDateTime, min),
+                    new ValueWithDate(maxDateTime, max),
+                    sum * (1f / size),
+                    Median.compute(medianValues)
+            );
+        }
+    }
+
+    private final int parameters;
+
+    // null if parameter isn't in the mask
+    private final ParameterAccumulator temperature;
+    private final ParameterAccumulator humidity;
+    private final ParameterAccumulator pressure;
+
+    private int size;
+    private long firstDateTime;
+
+    /**
+     * @param capacity expected count of values, it's not a limit
+     */
+    ReportStatsBuilder(int capacity) {
+        this(capacity, WeatherParameters.ALL);
+    }
+
+    /**
+     * @param capacity   expected count of values, it's not a limit
+     * @param parameters mask of parameters to accumulate
+     */
+    ReportStatsBuilder(int capacity, int parameters) {
+        if (!WeatherParameters.isValid(parameters)) {
+            throw new IllegalArgumentException("parameters");
+        }
+
+        this.parameters = parameters;
+
+        temperature = createAccumulator(capacity, parameters, WeatherParameters.TEMPERATURE);
+        humidity = createAccumulator(capacity, parameters, WeatherParameters.HUMIDITY);
+        pressure = createAccumulator(capacity, parameters, WeatherParameters.PRESSURE);
+    }
+
+    @Nullable
+    private static ParameterAccumulator createAccumulator(int capacity, int parameters, int parameter) {
+        return WeatherParameters.contains(parameters, parameter) ? new ParameterAccumulator(capacity) : null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void add(@ShortDateTimeLong long dateTime, float temp, float hum, float press) {
+        if (size == 0) {
+            firstDateTime = dateTime;
+        }
+
+        size++;
+
+        if (temperature != null) {
+            temperature.add(dateTime, temp);
+        }
+
+        if (humidity != null) {
+            humidity.add(dateTime, hum);
+        }
+
+        if (pressure != null) {
+            pressure.add(dateTime, press);
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if no values were added
+     */
+    @NotNull
+    public ReportStats build() {
+        if (size() == 0) {
+            throw new IllegalStateException("Data is empty");
+        }
+
+        return new ReportStats(
+                ValueUnitsPacked.CELSIUS_MM_OF_MERCURY,
+                parameters,
+                buildParameter(temperature), buildParameter(humidity), buildParameter(pressure)
+        );
+    }
+
+    @NotNull
+    private ParameterStats buildParameter(@Nullable ParameterAccumulator accumulator) {
+        return accumulator != null ? accumulator.build() : ParameterStats.zero(firstDateTime);
+    }
+}
@@ -0,0 +1,405 @@
+package com.pelmenstar.projktSens.weather.models
+
+import com.pelmenstar.projktSens.shared.serialization.ValidationException
+import com.pelmenstar.projktSens.shared.time.ShortDate
+import com.pelmenstar.projktSens.shared.time.ShortDateInt
+import com.pelmenstar.projktSens.shared.time.ShortDateRange
+import com.pelmenstar.projktSens.shared.time.ShortDateTime
+import java.io.Closeable
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+/**
+ * Weather repository implementation that stores records of fixed size in append-only segment files in a directory.
+ * Segments are memory-mapped: records are written right to the mapped buffer and reports are computed
+ * by [MappedWeatherPropertyIterable] over the buffers, values aren't copied.
+ *
+ * Records are ordered by time, so records of the range are found by binary search.
+ * Because of that, values should be put in ascending order of time: value, that has the same time as
+ * the last stored one, is considered to be the same record and ignored, value, that is older, can't be put.
+ *
+ * Written records survive crash of the process, but not of the system, unless [flush] is called.
+ * Values are stored in [ValueUnit.CELSIUS] and [ValueUnit.MM_OF_MERCURY]
+ */
+class SegmentWeatherRepository private constructor(
+    private val directory: File,
+    private val segmentCapacity: Int
+) : WeatherRepository, Closeable {
+    private class Segment(val channel: FileChannel, val buffer: ByteBuffer, val capacity: Int) {
+        var count = buffer.getInt(COUNT_OFFSET)
+
+        fun epochSecondAt(index: Int): Long {
+            return buffer.getLong(MappedWeatherPropertyIterable.recordOffset(index))
+        }
+
+        /**
+         * Returns index of the first record, whose time is equal or greater than [epochSecond],
+         * or [count] if there's no such record
+         */
+        fun lowerBound(epochSecond: Long): Int {
+            var low = 0
+            var high = count
+
+            while (low < high) {
+                val mid = (low + high) ushr 1
+
+                if (epochSecondAt(mid) < epochSecond) {
+                    low = mid + 1
+                } else {
+                    high = mid
+                }
+            }
+
+            return low
+        }
+    }
+
+    // writers append to the last segment and readers iterate right over the buffers,
+    // so records can't be read while they're written
+    private val lock = ReentrantReadWriteLock()
+    private val segments = ArrayList<Segment>()
+
+    private val version = AtomicLong(System.currentTimeMillis())
+
+    override val dataVersion: Long
+        get() = version.get()
+
+    /**
+     * @throws IllegalArgumentException if some value is older than the last stored one.
+     * Values before it are stored and [dataVersion] is changed as they are
+     */
+    override suspend fun putMany(values: Array<WeatherInfo>) {
+        var isChanged = false
+
+        try {
+            lock.write {
+                for (weather in values) {
+                    if (append(weather)) {
+                        isChanged = true
+                    }
+                }
+            }
+        } finally {
+            if (isChanged) {
+                version.incrementAndGet()
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if value is older than the last stored one
+     */
+    override suspend fun put(weather: WeatherInfo) {
+        val isChanged = lock.write {
+            append(weather)
+        }
+
+        if (isChanged) {
+            version.incrementAndGet()
+        }
+    }
+
+    override suspend fun clear() {
+        try {
+            lock.write {
+                closeSegments()
+
+                segmentFiles().forEach { it.delete() }
+            }
+        } finally {
+            // segments might be already closed or deleted, even if something has failed
+            version.incrementAndGet()
+        }
+    }
+
+    /**
+     * Appends [weather] to the last segment.
+     * Returns false if [weather] has the same time as the last stored value, so it's ignored
+     */
+    private fun append(weather: WeatherInfo): Boolean {
+        val epochSecond = ShortDateTime.toEpochSecond(weather.dateTime)
+
+        var segment = segments.lastOrNull()
+
+        if (segment != null && segment.count > 0) {
+            val lastEpochSecond = segment.epochSecondAt(segment.count - 1)
+
+            if (epochSecond == lastEpochSecond) {
+                return false
+            }
+
+            require(epochSecond > lastEpochSecond) { "Value is older than the last stored one" }
+        }
+
+        if (segment == null || segment.count == segment.capacity) {
+            segment = createSegment(segments.size)
+            segments.add(segment)
+        }
+
+        val temp = UnitValue.getValue(
+            weather.temperature,
+            ValueUnitsPacked.getTemperatureUnit(weather.units),
+            ValueUnit.CELSIUS
+        )
+        val press = UnitValue.getValue(
+            weather.pressure,
+            ValueUnitsPacked.getPressureUnit(weather.units),
+            ValueUnit.MM_OF_MERCURY
+        )
+
+        val buffer = segment.buffer
+        val offset = MappedWeatherPropertyIterable.recordOffset(segment.count)
+
+        buffer.putLong(offset, epochSecond)
+        buffer.putFloat(offset + 8, temp)
+        buffer.putFloat(offset + 12, weather.humidity)
+        buffer.putFloat(offset + 16, press)
+
+        // count is written after the record, so that partially written record isn't read after crash
+        segment.count++
+        buffer.putInt(COUNT_OFFSET, segment.count)
+
+        return true
+    }
+
+    /**
+     * Writes changes of the last segment to the storage device
+     */
+    fun flush() {
+        lock.read {
+            (segments.lastOrNull()?.buffer as MappedByteBuffer?)?.force()
+        }
+    }
+
+    override suspend fun getDayReport(@ShortDateInt date: Int): DayReport? {
+        if (!ShortDate.isValid(date)) {
+            throw ValidationException.invalidValue("date", date)
+        }
+
+        return readRange(
+            ShortDateTime.startOfDayToEpochSecond(date),
+            ShortDateTime.endOfDayToEpochSecond(date)
+        ) { DayReport.create(it) }
+    }
+
+    override suspend fun getDayRangeReport(@ShortDateInt start: Int, @ShortDateInt end: Int): DayRangeReport? {
+        if (!ShortDate.isValid(start)) {
+            throw ValidationException.invalidValue("start", start)
+        }
+
+        if (!ShortDate.isValid(end)) {
+            throw ValidationException.invalidValue("end", end)
+        }
+
+        return readRange(
+            ShortDateTime.startOfDayToEpochSecond(start),
+            ShortDateTime.endOfDayToEpochSecond(end)
+        ) { DayRangeReport.create(it) }
+    }
+
+    override suspend fun getAvailableDateRange(): ShortDateRange? {
+        lock.read {
+            val first = segments.firstOrNull { it.count > 0 } ?: return null
+            val last = segments.last { it.count > 0 }
+
+            return ShortDateRange(
+                ShortDate.ofEpochSecond(first.epochSecondAt(0)),
+                ShortDate.ofEpochSecond(last.epochSecondAt(last.count - 1))
+            )
+        }
+    }
+
+    override suspend fun getLastWeather(): WeatherInfo? {
+        lock.read {
+            val segment = segments.lastOrNull { it.count > 0 } ?: return null
+            val buffer = segment.buffer
+            val offset = MappedWeatherPropertyIterable.recordOffset(segment.count - 1)
+
+            return WeatherInfo(
+                ValueUnitsPacked.CELSIUS_MM_OF_MERCURY,
+                ShortDateTime.ofEpochSecond(buffer.getLong(offset)),
+                buffer.getFloat(offset + 8),
+                buffer.getFloat(offset + 12),
+                buffer.getFloat(offset + 16)
+            )
+        }
+    }
+
+    /**
+     * Invokes [block] with records, whose time is in range between [startEpoch] and [endEpoch] (inclusive),
+     * or returns null if there are no such records
+     */
+    private inline fun <T> readRange(startEpoch: Long, endEpoch: Long, block: (WeatherPropertyIterable) -> T): T? {
+        lock.read {
+            val buffers = ArrayList<ByteBuffer>()
+            val starts = ArrayList<Int>()
+            val ends = ArrayList<Int>()
+
+            // there are not many segments, so they're checked one by one and records are binary searched in them
+            for (segment in segments) {
+                val count = segment.count
+                if (count == 0 || segment.epochSecondAt(count - 1) < startEpoch) {
+                    continue
+                }
+
+                if (segment.epochSecondAt(0) > endEpoch) {
+                    break
+                }
+
+                val from = segment.lowerBound(startEpoch)
+                val to = segment.lowerBound(endEpoch + 1)
+
+                if (from < to) {
+                    buffers.add(segment.buffer)
+                    starts.add(from)
+                    ends.add(to)
+                }
+            }
+
+            if (buffers.isEmpty()) {
+                return null
+            }
+
+            return block(
+                MappedWeatherPropertyIterable(
+                    buffers.toTypedArray(),
+                    starts.toIntArray(),
+                    ends.toIntArray()
+                )
+            )
+        }
+    }
+
+    private fun segmentFiles(): List<File> {
+        val files = directory.listFiles { file -> SEGMENT_FILE_NAME.matches(file.name) } ?: return emptyList()
+
+        return files.sortedBy { file -> SEGMENT_FILE_NAME.matchEntire(file.name)!!.groupValues[1].toInt() }
+    }
+
+    private fun loadSegments() {
+        for (file in segmentFiles()) {
+            segments.add(openSegment(file))
+        }
+    }
+
+    private fun openSegment(file: File): Segment {
+        val channel = RandomAccessFile(file, "rw").channel
+
+        try {
+            val size = channel.size()
+            val capacity = (size - MappedWeatherPropertyIterable.HEADER_SIZE) / MappedWeatherPropertyIterable.RECORD_SIZE
+
+            if (capacity <= 0 || capacity > Int.MAX_VALUE) {
+                throw IOException("Invalid size of segment file $file")
+            }
+
+            val buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size).order(ByteOrder.LITTLE_ENDIAN)
+            val segment = Segment(channel, buffer, capacity.toInt())
+
+            if (buffer.getInt(MAGIC_OFFSET) != MAGIC ||
+                buffer.getInt(RECORD_SIZE_OFFSET) != MappedWeatherPropertyIterable.RECORD_SIZE ||
+                segment.count < 0 || segment.count > segment.capacity
+            ) {
+                throw IOException("Invalid header of segment file $file")
+            }
+
+            return segment
+        } catch (e: Exception) {
+            channel.close()
+
+            throw e
+        }
+    }
+
+    private fun createSegment(index: Int): Segment {
+        val file = File(directory, segmentFileName(index))
+        val channel = RandomAccessFile(file, "rw").channel
+
+        try {
+            val size = MappedWeatherPropertyIterable.recordOffset(segmentCapacity).toLong()
+
+            // file is extended to the mapped size, space of records is filled by zeros only when they're written
+            val buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size).order(ByteOrder.LITTLE_ENDIAN)
+            buffer.putInt(MAGIC_OFFSET, MAGIC)
+            buffer.putInt(RECORD_SIZE_OFFSET, MappedWeatherPropertyIterable.RECORD_SIZE)
+            buffer.putInt(COUNT_OFFSET, 0)
+
+            return Segment(channel, buffer, segmentCapacity)
+        } catch (e: Exception) {
+            channel.close()
+
+            throw e
+        }
+    }
+
+    private fun closeSegments() {
+        for (segment in segments) {
+            segment.channel.close()
+        }
+
+        segments.clear()
+    }
+
+    /**
+     * Closes segment files. Repository can't be used after that
+     */
+    override fun close() {
+        lock.write {
+            closeSegments()
+        }
+    }
+
+    companion object {
+        const val DEFAULT_SEGMENT_CAPACITY = 64 * 1024
+
+        // segment is mapped by one buffer, which can't be larger than Int.MAX_VALUE
+        const val MAX_SEGMENT_CAPACITY =
+            (Int.MAX_VALUE - MappedWeatherPropertyIterable.HEADER_SIZE) / MappedWeatherPropertyIterable.RECORD_SIZE
+
+        private const val MAGIC = 0x31475357 // "WSG1"
+
+        private const val MAGIC_OFFSET = 0
+        private const val RECORD_SIZE_OFFSET = 4
+        private const val COUNT_OFFSET = 8
+
+        private val SEGMENT_FILE_NAME = Regex("segment-(\\d+)\\.dat")
+
+        private fun segmentFileName(index: Int): String {
+            return "segment-$index.dat"
+        }
+
+        /**
+         * Opens repository in [directory], which is created if it doesn't exist.
+         * New segments contain [segmentCapacity] records, existing segments keep their capacity
+         */
+        @JvmStatic
+        fun open(directory: File, segmentCapacity: Int = DEFAULT_SEGMENT_CAPACITY): SegmentWeatherRepository {
+            require(segmentCapacity in 1..MAX_SEGMENT_CAPACITY) { "segmentCapacity" }
+
+            if (!directory.isDirectory && !directory.mkdirs()) {
+                throw IOException("Can't create directory $directory")
+            }
+
+            val repo = SegmentWeatherRepository(directory, segmentCapacity)
+
+            try {
+                repo.loadSegments()
+            } catch (e: Exception) {
+                repo.close()
+
+                throw e
+            }
+
+            return repo
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.pelmenstar.projktSens.weather.models;
+
+import com.pelmenstar.projktSens.shared.AppendableToStringBuilder;
+import com.pelmenstar.projktSens.shared.serialization.ObjectSerializer;
+import com.pelmenstar.projktSens.shared.serialization.Serializable;
+import com.pelmenstar.projktSens.shared.serialization.ValidationException;
+import com.pelmenstar.projktSens.shared.serialization.ValueReader;
+import com.pelmenstar.projktSens.shared.serialization.ValueWriter;
+import com.pelmenstar.projktSens.shared.time.ShortDateTime;
+import com.pelmenstar.projktSens.shared.time.ShortDateTimeLong;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * A page of stored weather records, ordered by time. Records share the same units, so they are stored as packed arrays
+ * instead of array of {@link WeatherInfo}.
+ * Instances of this class can be serialized in format described below: <br/>
+ * - units | 4 bytes <br/>
+ * - hasMore | 1 byte <br/>
+ * - count | varint <br/>
+ * - epoch second of first record | 8 bytes (only if count is not 0) <br/>
+ * - records: <br/>
+ * -- difference between epoch seconds of the record and previous one | varint (absent for the first record) <br/>
+ * -- temperature | 4 bytes <br/>
+ * -- humidity | 4 bytes <br/>
+ * -- pressure | 4 bytes <br/>
+ * Usually record takes 13-15 bytes against 21 bytes of {@link WeatherInfo}
+ */
+public final class WeatherInfoPage extends AppendableToStringBuilder {
+    @NotNull
+    public static final ObjectSerializer<WeatherInfoPage> SERIALIZER;
+
+    public final int units;
+
+    /**
+     * Determines whether there are more records after the last one in the page
+     */
+    public final boolean hasMore;
+
+    private final long @NotNull [] epochSeconds;
+    private final float @NotNull [] temperatures;
+    private final float @NotNull [] humidities;
+    private final float @NotNull [] pressures;
+
+    static {
+        SERIALIZER = new Serializer();
+
+        // not necessary but can affect to performance
+        Serializable.registerSerializer(WeatherInfoPage.class, SERIALIZER);
+    }
+
+    /**
+     * Note that arrays aren't copied and shouldn't be changed after the page is created.
+     * {@code epochSeconds} should be sorted in ascending order
+     */
+    public WeatherInfoPage(
+            int units,
+            long @NotNull [] epochSeconds,
+            float @NotNull [] temperatures,
+            float @NotNull [] humidities,
+            float @NotNull [] pressures,
+            boolean hasMore
+    ) {
+        if (!ValueUnitsPacked.isValid(units)) {
+            throw ValidationException.invalidValue("units", units);
+        }
+
+        int size = epochSeconds.length;
+        if (temperatures.length != size || humidities.length != size || pressures.length != size) {
+            throw new IllegalArgumentException("Arrays should have the same length");
+        }
+
+        for (int i = 1; i < size; i++) {
+            long diff = epochSeconds[i] - epochSeconds[i - 1];
+
+            if (diff < 0 || diff > Integer.MAX_VALUE) {
+                throw ValidationException.invalidValue("epochSeconds", epochSeconds[i]);
+            }
+        }
+
+        this.units = units;
+        this.epochSeconds = epochSeconds;
+        this.temperatures = temperatures;
+        this.humidities = humidities;
+        this.pressures = pressures;
+        this.hasMore = hasMore;
+    }
+
+    public int size() {
+        return epochSeconds.length;
+    }
+
+    public long getEpochSecond(int index) {
+        return epochSeconds[index];
+    }
+
+    @ShortDateTimeLong
+    public long getDateTime(int index) {
+        return ShortDateTime.ofEpochSecond(epochSeconds[index]);
+    }
+
+    public float getTemperature(int index) {
+        return temperatures[index];
+    }
+
+    public float getHumidity(int index) {
+        return humidities[index];
+    }
+
+    public float getPressure(int index) {
+        return pressures[index];
+    }
+
+    /**
+     * Returns epoch second of the last record, which should be used to request the next page.
+     *
+     * @throws IllegalStateException if page is empty
+     */
+    public long getLastEpochSecond() {
+        int size = epochSeconds.length;
+        if (size == 0) {
+            throw new IllegalStateException("Page is empty");
+        }
+
+        return epochSeconds[size - 1];
+    }
+
+    @NotNull
+    public WeatherInfo get(int index) {
+        return new WeatherInfo(
+                units,
+                getDateTime(index),
+                temperatures[index], humidities[index], pressures[index]
+        );
+    }
+
+    @NotNull
+    public WeatherInfo @NotNull [] toArray() {
+        WeatherInfo[] result = new WeatherInfo[epochSeconds.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = get(i);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns {@link WeatherPropertyIterable} over the records of the page, no {@link WeatherInfo} is created
+     */
+    @NotNull
+    public WeatherPropertyIterable iterable() {
+        return new PageWeatherPropertyIterable(this);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (other == null || getClass() != other.getClass()) return false;
+
+        WeatherInfoPage o = (WeatherInfoPage) other;
+
+        return units == o.units &&
+                hasMore == o.hasMore &&
+                Arrays.equals(epochSeconds, o.epochSeconds) &&
+                Arrays.equals(temperatures, o.temperatures) &&
+                Arrays.equals(humidities, o.humidities) &&
+                Arrays.equals(pressures, o.pressures);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = units;
+        result = 31 * result + (hasMore ? 1 : 0);
+        result = 31 * result + Arrays.hashCode(epochSeconds);
+        result = 31 * result + Arrays.hashCode(temperatures);
+        result = 31 * result + Arrays.hashCode(humidities);
+        result = 31 * result + Arrays.hashCode(pressures);
+
+        return result;
+    }
+
+    @Override
+    public void append(@NotNull StringBuilder sb) {
+        sb.append("{units=");
+        ValueUnitsPacked.append(units, sb);
+        sb.append(", size=");
+        sb.append(epochSeconds.length);
+        sb.append(", hasMore=");
+        sb.append(hasMore);
+        sb.append('}');
+    }
+
+    /**
+     * Builds {@link WeatherInfoPage} from records added one by one in ascending order of time
+     */
+    public static final class Builder {
+        private final int units;
+
+        private long[] epochSeconds;
+        private float[] temperatures;
+        private float[] humidities;
+        private float[] pressures;
+        private int size;
+
+        /**
+         * @param capacity expected count of records, it's not a limit
+         */
+        public Builder(int units, int capacity) {
+            this.units = units;
+
+            int cap = Math.max(capacity, 1);
+            epochSeconds = new long[cap];
+            temperatures = new float[cap];
+            humidities = new float[cap];
+            pressures = new float[cap];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void add(long epochSecond, float temperature, float humidity, float pressure) {
+            if (size == epochSeconds.length) {
+                int newCap = size * 2;
+
+                epochSeconds = Arrays.copyOf(epochSeconds, newCap);
+                temperatures = Arrays.copyOf(temperatures, newCap);
+                humidities = Arrays.copyOf(humidities, newCap);
+                pressures = Arrays.copyOf(pressures, newCap);
+            }
+
+            epochSeconds[size] = epochSecond;
+            temperatures[size] = temperature;
+            humidities[size] = humidity;
+            pressures[size] = pressure;
+            size++;
+        }
+
+        @NotNull
+        public WeatherInfoPage build(boolean hasMore) {
+            return new WeatherInfoPage(
+                    units,
+                    Arrays.copyOf(epochSeconds, size),
+                    Arrays.copyOf(temperatures, size),
+                    Arrays.copyOf(humidities, size),
+                    Arrays.copyOf(pressures, size),
+                    hasMore
+            );
+        }
+    }
+
+    private static final class PageWeatherPropertyIterable implements WeatherPropertyIterable {
+        private final WeatherInfoPage page;
+        private int index = -1;
+
+        public PageWeatherPropertyIterable(@NotNull WeatherInfoPage page) {
+            this.page = page;
+        }
+
+        @Override
+        public int size() {
+            return page.size();
+        }
+
+        @Override
+        public int getUnits() {
+            return page.units;
+        }
+
+        @Override
+        public long getDateTime() {
+            return page.getDateTime(index);
+        }
+
+        @Override
+        public float getTemperature() {
+            return page.temperatures[index];
+        }
+
+        @Override
+        public float getHumidity() {
+            return page.humidities[index];
+        }
+
+        @Override
+        public float getPressure() {
+            return page.pressures[index];
+        }
+
+        @Override
+        public boolean moveNext() {
+            if (index + 1 < page.size()) {
+                index++;
+
+                return true;
+            } else {
+                return false;
+            }
+        }
+    }
+
+    private static final class Serializer implements ObjectSerializer<WeatherInfoPage> {
+        @Override
+        public int getSerializedObjectSize(@NotNull WeatherInfoPage value) {
+            long[] epochSeconds = value.epochSeconds;
+            int size = epochSeconds.length;
+
+            int result = 5 + ValueWriter.varIntSize(size);
+
+            if (size > 0) {
+                result += 8 + size * 12;
+
+                for (int i = 1; i < size; i++) {
+                    result += ValueWriter.varIntSize((int) (epochSeconds[i] - epochSeconds[i - 1]));
+                }
+            }
+
+            return result;
+        }
+
+        @Override
+        public void writeObject(@NotNull WeatherInfoPage value, @NotNull ValueWriter writer) {
+            long[] epochSeconds = value.epochSeconds;
+            int size = epochSeconds.length;
+
+            writer.int32(value.units);
+            writer.int8(value.hasMore ? (byte) 1 : 0);
+            writer.varInt(size);
+
+            if (size > 0) {
+                writer.int64(epochSeconds[0]);
+            }
+
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    writer.varInt((int) (epochSeconds[i] - epochSeconds[i - 1]));
+                }
+
+                writer.float32(value.temperatures[i]);
+                writer.float32(value.humidities[i]);
+                writer.float32(value.pressures[i]);
+            }
+        }
+
+        @NotNull
+        @Override
+        public WeatherInfoPage readObject(@NotNull ValueReader reader) throws ValidationException {
+            int units = reader.int32();
+            boolean hasMore = reader.int8() != 0;
+            int size = reader.varInt();
+
+            if (size < 0) {
+                throw ValidationException.invalidValue("size", size);
+            }
+
+            long[] epochSeconds = new long[size];
+            float[] temperatures = new float[size];
+            float[] humidities = new float[size];
+            float[] pressures = new float[size];
+
+            long epochSecond = size > 0 ? reader.int64() : 0;
+
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    epochSecond += reader.varInt();
+                }
+
+                epochSeconds[i] = epochSecond;
+                temperatures[i] = reader.float32();
+                humidities[i] = reader.float32();
+                pressures[i] = reader.float32();
+            }
+
+            return new WeatherInfoPage(units, epochSeconds, temperatures, humidities, pressures, hasMore);
+        }
+    }
+}
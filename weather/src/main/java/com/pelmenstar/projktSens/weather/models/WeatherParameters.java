@@ -0,0 +1,37 @@
+package com.pelmenstar.projktSens.weather.models;
+
+/**
+ * Contains bits of weather parameters mask, that selects which parameters a report contains.
+ * Values of parameters, that aren't in the mask, are 0 and aren't serialized.
+ */
+public final class WeatherParameters {
+    public static final int TEMPERATURE = 1;
+    public static final int HUMIDITY = 1 << 1;
+    public static final int PRESSURE = 1 << 2;
+
+    public static final int ALL = TEMPERATURE | HUMIDITY | PRESSURE;
+
+    private WeatherParameters() {
+    }
+
+    /**
+     * Determines whether {@code parameters} is non-empty mask of known parameters
+     */
+    public static boolean isValid(int parameters) {
+        return parameters != 0 && (parameters & ~ALL) == 0;
+    }
+
+    /**
+     * Determines whether {@code parameters} mask contains {@code parameter}
+     */
+    public static boolean contains(int parameters, int parameter) {
+        return (parameters & parameter) != 0;
+    }
+
+    /**
+     * Returns count of parameters in {@code parameters} mask
+     */
+    public static int count(int parameters) {
+        return Integer.bitCount(parameters & ALL);
+    }
+}
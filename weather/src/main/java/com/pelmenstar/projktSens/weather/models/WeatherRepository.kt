@@ -5,6 +5,13 @@ package com.pelmenstar.projktSens.weather.models
  * The only difference is that [WeatherRepository] is mutable (is able to add and remove data)
  */
 interface WeatherRepository : WeatherDataSource {
+    /**
+     * Version of the data, that is increased on every change made by [put], [putMany] or [clear].
+     * Initial version should be unique for the repository instance (for example, based on current time),
+     * so that versions, given out before restart, aren't confused with new ones.
+     */
+    val dataVersion: Long
+
     suspend fun putMany(values: Array<WeatherInfo>)
     suspend fun put(weather: WeatherInfo)
     suspend fun clear()
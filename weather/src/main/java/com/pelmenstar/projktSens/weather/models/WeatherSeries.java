@@ -0,0 +1,411 @@
+package com.pelmenstar.projktSens.weather.models;
+
+import com.pelmenstar.projktSens.shared.AppendableToStringBuilder;
+import com.pelmenstar.projktSens.shared.serialization.ObjectSerializer;
+import com.pelmenstar.projktSens.shared.serialization.Serializable;
+import com.pelmenstar.projktSens.shared.serialization.ValidationException;
+import com.pelmenstar.projktSens.shared.serialization.ValueReader;
+import com.pelmenstar.projktSens.shared.serialization.ValueWriter;
+import com.pelmenstar.projktSens.shared.time.ShortDateTime;
+import com.pelmenstar.projktSens.shared.time.ShortDateTimeLong;
+import com.pelmenstar.projktSens.shared.time.TimeConstants;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Weather aggregated to buckets of {@link #bucketSeconds} seconds. Bucket starts at epoch second, that is multiple
+ * of {@link #bucketSeconds}, buckets without weather records are omitted.
+ * Size of series depends only on its time range and bucket width, not on how often weather is sampled,
+ * so it's suitable for charts.
+ * Instances of this class can be serialized in format described below: <br/>
+ * - units | 4 bytes <br/>
+ * - bucketSeconds | 4 bytes <br/>
+ * - points.length | varint <br/>
+ * - start epoch second of first point | 8 bytes (only if there are points) <br/>
+ * - points: <br/>
+ * -- count of buckets between the point and previous one | varint (absent for the first point) <br/>
+ * -- min, max and average temperature | 12 bytes <br/>
+ * -- min, max and average humidity | 12 bytes <br/>
+ * -- min, max and average pressure | 12 bytes <br/>
+ */
+public final class WeatherSeries extends AppendableToStringBuilder {
+    /**
+     * Minimal width of bucket, weather is never sampled more frequently
+     */
+    public static final int MIN_BUCKET_SECONDS = 60;
+
+    /**
+     * Maximal width of bucket, wider buckets should be computed by {@link DayRangeReport}
+     */
+    public static final int MAX_BUCKET_SECONDS = TimeConstants.SECONDS_IN_DAY;
+
+    @NotNull
+    public static final ObjectSerializer<WeatherSeries> SERIALIZER;
+
+    public final int units;
+    public final int bucketSeconds;
+
+    public final @NotNull Point @NotNull [] points;
+
+    static {
+        SERIALIZER = new Serializer();
+
+        // not necessary but can affect to performance
+        Serializable.registerSerializer(WeatherSeries.class, SERIALIZER);
+    }
+
+    /**
+     * Aggregated weather of one bucket
+     */
+    public static final class Point extends AppendableToStringBuilder {
+        public final long startEpochSecond;
+
+        public final float minTemperature;
+        public final float maxTemperature;
+        public final float avgTemperature;
+
+        public final float minHumidity;
+        public final float maxHumidity;
+        public final float avgHumidity;
+
+        public final float minPressure;
+        public final float maxPressure;
+        public final float avgPressure;
+
+        public Point(long startEpochSecond,
+                     float minTemperature, float maxTemperature, float avgTemperature,
+                     float minHumidity, float maxHumidity, float avgHumidity,
+                     float minPressure, float maxPressure, float avgPressure) {
+            this.startEpochSecond = startEpochSecond;
+
+            this.minTemperature = minTemperature;
+            this.maxTemperature = maxTemperature;
+            this.avgTemperature = avgTemperature;
+
+            this.minHumidity = minHumidity;
+            this.maxHumidity = maxHumidity;
+            this.avgHumidity = avgHumidity;
+
+            this.minPressure = minPressure;
+            this.maxPressure = maxPressure;
+            this.avgPressure = avgPressure;
+        }
+
+        @ShortDateTimeLong
+        public long getStartDateTime() {
+            return ShortDateTime.ofEpochSecond(startEpochSecond);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (other == null || getClass() != other.getClass()) return false;
+
+            Point o = (Point) other;
+
+            return startEpochSecond == o.startEpochSecond &&
+                    minTemperature == o.minTemperature && maxTemperature == o.maxTemperature && avgTemperature == o.avgTemperature &&
+                    minHumidity == o.minHumidity && maxHumidity == o.maxHumidity && avgHumidity == o.avgHumidity &&
+                    minPressure == o.minPressure && maxPressure == o.maxPressure && avgPressure == o.avgPressure;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Long.hashCode(startEpochSecond);
+            result = 31 * result + Float.floatToIntBits(minTemperature);
+            result = 31 * result + Float.floatToIntBits(maxTemperature);
+            result = 31 * result + Float.floatToIntBits(avgTemperature);
+
+            result = 31 * result + Float.floatToIntBits(minHumidity);
+            result = 31 * result + Float.floatToIntBits(maxHumidity);
+            result = 31 * result + Float.floatToIntBits(avgHumidity);
+
+            result = 31 * result + Float.floatToIntBits(minPressure);
+            result = 31 * result + Float.floatToIntBits(maxPressure);
+            result = 31 * result + Float.floatToIntBits(avgPressure);
+
+            return result;
+        }
+
+        @Override
+        public void append(@NotNull StringBuilder sb) {
+            sb.append("{startEpochSecond=");
+            sb.append(startEpochSecond);
+
+            sb.append(", minTemperature=");
+            sb.append(minTemperature);
+            sb.append(", maxTemperature=");
+            sb.append(maxTemperature);
+            sb.append(", avgTemperature=");
+            sb.append(avgTemperature);
+
+            sb.append(", minHumidity=");
+            sb.append(minHumidity);
+            sb.append(", maxHumidity=");
+            sb.append(maxHumidity);
+            sb.append(", avgHumidity=");
+            sb.append(avgHumidity);
+
+            sb.append(", minPressure=");
+            sb.append(minPressure);
+            sb.append(", maxPressure=");
+            sb.append(maxPressure);
+            sb.append(", avgPressure=");
+            sb.append(avgPressure);
+
+            sb.append('}');
+        }
+    }
+
+    /**
+     * Note that {@code points} aren't copied and shouldn't be changed after the series is created.
+     * Points should be ordered by time and start at bucket boundaries
+     */
+    public WeatherSeries(int units, int bucketSeconds, @NotNull Point @NotNull [] points) {
+        if (!ValueUnitsPacked.isValid(units)) {
+            throw ValidationException.invalidValue("units", units);
+        }
+
+        if (!isValidBucketSeconds(bucketSeconds)) {
+            throw ValidationException.invalidValue("bucketSeconds", bucketSeconds);
+        }
+
+        long prevStart = Long.MIN_VALUE;
+
+        for (Point point : points) {
+            long start = point.startEpochSecond;
+
+            if (start % bucketSeconds != 0 || start <= prevStart) {
+                throw ValidationException.invalidValue("point start", start);
+            }
+
+            prevStart = start;
+        }
+
+        this.units = units;
+        this.bucketSeconds = bucketSeconds;
+        this.points = points;
+    }
+
+    public static boolean isValidBucketSeconds(int bucketSeconds) {
+        return bucketSeconds >= MIN_BUCKET_SECONDS && bucketSeconds <= MAX_BUCKET_SECONDS;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (other == null || getClass() != other.getClass()) return false;
+
+        WeatherSeries o = (WeatherSeries) other;
+
+        return units == o.units &&
+                bucketSeconds == o.bucketSeconds &&
+                Arrays.equals(points, o.points);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = units;
+        result = 31 * result + bucketSeconds;
+        result = 31 * result + Arrays.hashCode(points);
+
+        return result;
+    }
+
+    @Override
+    public void append(@NotNull StringBuilder sb) {
+        sb.append("{units=");
+        ValueUnitsPacked.append(units, sb);
+        sb.append(", bucketSeconds=");
+        sb.append(bucketSeconds);
+        sb.append(", points=");
+        sb.append(Arrays.toString(points));
+        sb.append('}');
+    }
+
+    /**
+     * Aggregates weather records, that are added one by one in ascending order of time, to buckets.
+     * Only one bucket is accumulated at once, so records can be read directly from a cursor
+     */
+    public static final class Builder {
+        private final int units;
+        private final int bucketSeconds;
+
+        private Point[] points;
+        private int size;
+
+        private long bucket = Long.MIN_VALUE;
+        private int count;
+
+        private float minTemp, maxTemp;
+        private float minHum, maxHum;
+        private float minPress, maxPress;
+
+        private double tempSum, humSum, pressSum;
+
+        /**
+         * @param capacity expected count of points, it's not a limit
+         */
+        public Builder(int units, int bucketSeconds, int capacity) {
+            if (!isValidBucketSeconds(bucketSeconds)) {
+                throw new IllegalArgumentException("bucketSeconds");
+            }
+
+            this.units = units;
+            this.bucketSeconds = bucketSeconds;
+
+            points = new Point[Math.max(capacity, 1)];
+        }
+
+        public void add(long epochSecond, float temperature, float humidity, float pressure) {
+            long recordBucket = Math.floorDiv(epochSecond, bucketSeconds);
+
+            if (recordBucket != bucket) {
+                if (recordBucket < bucket) {
+                    throw new IllegalArgumentException("Records should be added in ascending order of time");
+                }
+
+                finishBucket();
+
+                bucket = recordBucket;
+
+                minTemp = maxTemp = temperature;
+                minHum = maxHum = humidity;
+                minPress = maxPress = pressure;
+            } else {
+                minTemp = Math.min(minTemp, temperature);
+                maxTemp = Math.max(maxTemp, temperature);
+
+                minHum = Math.min(minHum, humidity);
+                maxHum = Math.max(maxHum, humidity);
+
+                minPress = Math.min(minPress, pressure);
+                maxPress = Math.max(maxPress, pressure);
+            }
+
+            tempSum += temperature;
+            humSum += humidity;
+            pressSum += pressure;
+            count++;
+        }
+
+        private void finishBucket() {
+            if (count == 0) {
+                return;
+            }
+
+            if (size == points.length) {
+                points = Arrays.copyOf(points, size * 2);
+            }
+
+            points[size++] = new Point(
+                    bucket * bucketSeconds,
+                    minTemp, maxTemp, (float) (tempSum / count),
+                    minHum, maxHum, (float) (humSum / count),
+                    minPress, maxPress, (float) (pressSum / count)
+            );
+
+            count = 0;
+            tempSum = humSum = pressSum = 0;
+        }
+
+        @NotNull
+        public WeatherSeries build() {
+            finishBucket();
+
+            return new WeatherSeries(units, bucketSeconds, Arrays.copyOf(points, size));
+        }
+    }
+
+    private static final class Serializer implements ObjectSerializer<WeatherSeries> {
+        private static final int POINT_VALUES_SIZE = 36;
+
+        @Override
+        public int getSerializedObjectSize(@NotNull WeatherSeries value) {
+            Point[] points = value.points;
+            int length = points.length;
+
+            int size = 8 + ValueWriter.varIntSize(length);
+
+            if (length > 0) {
+                size += 8 + length * POINT_VALUES_SIZE;
+
+                for (int i = 1; i < length; i++) {
+                    size += ValueWriter.varIntSize(getBucketDelta(points, i, value.bucketSeconds));
+                }
+            }
+
+            return size;
+        }
+
+        @Override
+        public void writeObject(@NotNull WeatherSeries value, @NotNull ValueWriter writer) {
+            Point[] points = value.points;
+            int length = points.length;
+
+            writer.int32(value.units);
+            writer.int32(value.bucketSeconds);
+            writer.varInt(length);
+
+            if (length > 0) {
+                writer.int64(points[0].startEpochSecond);
+            }
+
+            for (int i = 0; i < length; i++) {
+                Point p = points[i];
+
+                if (i > 0) {
+                    writer.varInt(getBucketDelta(points, i, value.bucketSeconds));
+                }
+
+                writer.float32(p.minTemperature);
+                writer.float32(p.maxTemperature);
+                writer.float32(p.avgTemperature);
+
+                writer.float32(p.minHumidity);
+                writer.float32(p.maxHumidity);
+                writer.float32(p.avgHumidity);
+
+                writer.float32(p.minPressure);
+                writer.float32(p.maxPressure);
+                writer.float32(p.avgPressure);
+            }
+        }
+
+        @NotNull
+        @Override
+        public WeatherSeries readObject(@NotNull ValueReader reader) throws ValidationException {
+            int units = reader.int32();
+            int bucketSeconds = reader.int32();
+            int length = reader.varInt();
+
+            if (length < 0) {
+                throw ValidationException.invalidValue("points length", length);
+            }
+
+            Point[] points = new Point[length];
+            long start = length > 0 ? reader.int64() : 0;
+
+            for (int i = 0; i < length; i++) {
+                if (i > 0) {
+                    start += (long) reader.varInt() * bucketSeconds;
+                }
+
+                points[i] = new Point(
+                        start,
+                        reader.float32(), reader.float32(), reader.float32(),
+                        reader.float32(), reader.float32(), reader.float32(),
+                        reader.float32(), reader.float32(), reader.float32()
+                );
+            }
+
+            return new WeatherSeries(units, bucketSeconds, points);
+        }
+
+        private static int getBucketDelta(@NotNull Point @NotNull [] points, int index, int bucketSeconds) {
+            return (int) ((points[index].startEpochSecond - points[index - 1].startEpochSecond) / bucketSeconds);
+        }
+    }
+}
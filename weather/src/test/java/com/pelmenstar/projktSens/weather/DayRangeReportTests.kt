@@ -1,9 +1,15 @@
 package com.pelmenstar.projktSens.weather
 
+import com.pelmenstar.projktSens.shared.time.ShortDate
+import com.pelmenstar.projktSens.shared.time.ShortDateTime
 import com.pelmenstar.projktSens.weather.models.DayRangeReport
 import com.pelmenstar.projktSens.weather.models.ValueUnit
 import com.pelmenstar.projktSens.weather.models.ValueUnitsPacked
+import com.pelmenstar.projktSens.weather.models.WeatherInfo
+import com.pelmenstar.projktSens.weather.models.WeatherParameters
 import org.junit.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
 
 class DayRangeReportTests {
     @Test
@@ -22,6 +28,113 @@ class DayRangeReportTests {
         }
     }
 
+    @Test
+    fun compactSerializer_readWrite() {
+        TestData.use {
+            val header = TestData.reportHeader(ValueUnitsPacked.CELSIUS_MM_OF_MERCURY)
+            val startDate = ShortDate.create(2021, 1, 1)
+            val data = Array(90) { i ->
+                DayRangeReport.Entry(
+                    ShortDate.plusDays(startDate, i),
+                    TestData.quantizedValue(ValueUnit.CELSIUS),
+                    TestData.quantizedValue(ValueUnit.CELSIUS),
+
+                    TestData.quantizedValue(ValueUnit.HUMIDITY),
+                    TestData.quantizedValue(ValueUnit.HUMIDITY),
+
+                    TestData.quantizedValue(ValueUnit.MM_OF_MERCURY),
+                    TestData.quantizedValue(ValueUnit.MM_OF_MERCURY)
+                )
+            }
+            val report = DayRangeReport(data, header)
+
+            SerializerTestUtil.readWrite(report, DayRangeReport.COMPACT_SERIALIZER)
+
+            val rawSize = DayRangeReport.SERIALIZER.getSerializedObjectSize(report)
+            val compactSize = DayRangeReport.COMPACT_SERIALIZER.getSerializedObjectSize(report)
+            assertTrue(compactSize < rawSize)
+        }
+    }
+
+    @Test
+    fun chunkSerializer_readWrite() {
+        TestData.use {
+            val chunk = DayRangeReport.EntryChunk(Array(20) { randomEntry(ValueUnit.CELSIUS, ValueUnit.MM_OF_MERCURY) })
+
+            SerializerTestUtil.readWrite(chunk)
+        }
+    }
+
+    @Test
+    fun create_lastDayIsIncluded() {
+        val startDate = ShortDate.create(2021, 1, 1)
+        val data = Array(6) { i ->
+            WeatherInfo(
+                ValueUnitsPacked.CELSIUS_MM_OF_MERCURY,
+                ShortDateTime.create(ShortDate.plusDays(startDate, i / 2), i * 60),
+                -10f - i,
+                50f + i,
+                750f + i
+            )
+        }
+
+        val report = DayRangeReport.create(data)
+        assertEquals(3, report.entries.size)
+
+        val last = report.entries[2]
+        assertEquals(ShortDate.plusDays(startDate, 2), last.date)
+        assertEquals(-15f, last.minTemperature)
+        assertEquals(-14f, last.maxTemperature)
+        assertEquals(-15f, report.stats.temperature.min.value)
+        assertEquals(-10f, report.stats.temperature.max.value)
+    }
+
+    @Test
+    fun projection_readWrite() {
+        TestData.use {
+            val startDate = ShortDate.create(2021, 1, 1)
+            val data = TestData.weather(startDate, IntArray(30) { it }, 8, 3600)
+            val fullReport = DayRangeReport.create(data)
+            val report = DayRangeReport.create(data, WeatherParameters.HUMIDITY)
+
+            assertEquals(fullReport.stats.humidity, report.stats.humidity)
+            assertEquals(fullReport.entries[0].maxHumidity, report.entries[0].maxHumidity)
+            assertEquals(0f, report.entries[0].maxTemperature)
+
+            SerializerTestUtil.readWrite(report)
+            SerializerTestUtil.readWrite(report, DayRangeReport.COMPACT_SERIALIZER)
+
+            assertTrue(DayRangeReport.SERIALIZER.getSerializedObjectSize(report) < DayRangeReport.SERIALIZER.getSerializedObjectSize(fullReport))
+            assertTrue(DayRangeReport.COMPACT_SERIALIZER.getSerializedObjectSize(report) < DayRangeReport.COMPACT_SERIALIZER.getSerializedObjectSize(fullReport))
+        }
+    }
+
+    @Test
+    fun builder_takeEntriesInChunks() {
+        TestData.use {
+            val startDate = ShortDate.create(2021, 1, 1)
+            val data = TestData.weather(startDate, IntArray(30) { it }, 8, 3600)
+            val expected = DayRangeReport.create(data)
+
+            val builder = DayRangeReport.Builder(data.size)
+            val entries = ArrayList<DayRangeReport.Entry>()
+
+            for (info in data) {
+                builder.add(info.dateTime, info.units, info.temperature, info.humidity, info.pressure)
+
+                if (builder.pendingEntriesCount == 4) {
+                    entries.addAll(builder.takeEntries())
+                }
+            }
+            builder.finishDay()
+            entries.addAll(builder.takeEntries())
+
+            assertEquals(30, entries.size)
+            assertEquals(expected.entries.toList(), entries)
+            assertEquals(expected.stats, builder.buildStats())
+        }
+    }
+
     private fun randomEntry(tempUnit: Int, pressUnit: Int): DayRangeReport.Entry {
         return DayRangeReport.Entry(
             TestData.shortDate(),
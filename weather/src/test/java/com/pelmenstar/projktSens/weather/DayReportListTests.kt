@@ -0,0 +1,51 @@
+package com.pelmenstar.projktSens.weather
+
+import com.pelmenstar.projktSens.shared.time.ShortDate
+import com.pelmenstar.projktSens.shared.time.ShortDateTime
+import com.pelmenstar.projktSens.weather.models.ArrayWeatherPropertyIterable
+import com.pelmenstar.projktSens.weather.models.DayReport
+import com.pelmenstar.projktSens.weather.models.DayReportList
+import com.pelmenstar.projktSens.weather.models.WeatherInfo
+import org.junit.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+
+class DayReportListTests {
+    private val startDate = ShortDate.create(2021, 1, 1)
+
+    // 3 days of data with the second day missing
+    private fun createData(): Array<WeatherInfo> {
+        return TestData.hourlyWeather(startDate, intArrayOf(0, 2, 3))
+    }
+
+    @Test
+    fun create_isSameAsReportsOfEachDay() {
+        TestData.use {
+            val data = createData()
+            val list = DayReportList.create(ArrayWeatherPropertyIterable(data))
+
+            assertEquals(3, list.size())
+
+            for (i in 0 until list.size()) {
+                val date = list.getDate(i)
+                val dayData = data.filter { ShortDateTime.getDate(it.dateTime) == date }.toTypedArray()
+
+                assertEquals(DayReport.create(dayData), list.get(i))
+                assertEquals(list.get(i), list.getByDate(date))
+            }
+
+            assertNull(list.getByDate(ShortDate.plusDays(startDate, 1)))
+        }
+    }
+
+    @Test
+    fun serializer_readWrite() {
+        TestData.use {
+            val list = DayReportList.create(ArrayWeatherPropertyIterable(createData()))
+
+            SerializerTestUtil.readWrite(list)
+            SerializerTestUtil.readWrite(list, DayReportList.COMPACT_SERIALIZER)
+            SerializerTestUtil.readWrite(DayReportList(IntArray(0), emptyArray()))
+        }
+    }
+}
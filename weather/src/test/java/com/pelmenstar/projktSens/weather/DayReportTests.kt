@@ -1,9 +1,13 @@
 package com.pelmenstar.projktSens.weather
 
+import com.pelmenstar.projktSens.shared.time.ShortDate
 import com.pelmenstar.projktSens.weather.models.DayReport
 import com.pelmenstar.projktSens.weather.models.ValueUnit
 import com.pelmenstar.projktSens.weather.models.ValueUnitsPacked
+import com.pelmenstar.projktSens.weather.models.WeatherParameters
 import org.junit.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
 
 class DayReportTests {
     @Test
@@ -22,6 +26,89 @@ class DayReportTests {
         }
     }
 
+    @Test
+    fun compactSerializer_readWrite() {
+        TestData.use {
+            val header = TestData.reportHeader(ValueUnitsPacked.CELSIUS_MM_OF_MERCURY)
+            val data = Array(144) { i ->
+                DayReport.Entry(
+                    i * 600,
+                    TestData.quantizedValue(ValueUnit.CELSIUS),
+                    TestData.quantizedValue(ValueUnit.HUMIDITY),
+                    TestData.quantizedValue(ValueUnit.MM_OF_MERCURY)
+                )
+            }
+            val report = DayReport(data, header)
+
+            SerializerTestUtil.readWrite(report, DayReport.COMPACT_SERIALIZER)
+
+            val rawSize = DayReport.SERIALIZER.getSerializedObjectSize(report)
+            val compactSize = DayReport.COMPACT_SERIALIZER.getSerializedObjectSize(report)
+            assertTrue(compactSize < rawSize)
+        }
+    }
+
+    @Test
+    fun chunkSerializer_readWrite() {
+        TestData.use {
+            val rawChunk = DayReport.EntryChunk(Array(20) { randomEntry(ValueUnit.CELSIUS, ValueUnit.MM_OF_MERCURY) })
+            SerializerTestUtil.readWrite(rawChunk)
+
+            val compactChunk = DayReport.EntryChunk(Array(20) { i ->
+                DayReport.Entry(
+                    i * 600,
+                    TestData.quantizedValue(ValueUnit.CELSIUS),
+                    TestData.quantizedValue(ValueUnit.HUMIDITY),
+                    TestData.quantizedValue(ValueUnit.MM_OF_MERCURY)
+                )
+            })
+            SerializerTestUtil.readWrite(compactChunk, DayReport.EntryChunk.COMPACT_SERIALIZER)
+        }
+    }
+
+    @Test
+    fun projection_readWrite() {
+        TestData.use {
+            val date = ShortDate.create(2021, 6, 1)
+            val data = TestData.weather(date, intArrayOf(0), 144, 600)
+            val fullReport = DayReport.create(data)
+            val report = DayReport.create(data, WeatherParameters.TEMPERATURE or WeatherParameters.PRESSURE)
+
+            assertEquals(fullReport.stats.temperature, report.stats.temperature)
+            assertEquals(0f, report.entries[0].humidity)
+
+            SerializerTestUtil.readWrite(report)
+            SerializerTestUtil.readWrite(report, DayReport.COMPACT_SERIALIZER)
+
+            assertTrue(DayReport.SERIALIZER.getSerializedObjectSize(report) < DayReport.SERIALIZER.getSerializedObjectSize(fullReport))
+            assertTrue(DayReport.COMPACT_SERIALIZER.getSerializedObjectSize(report) < DayReport.COMPACT_SERIALIZER.getSerializedObjectSize(fullReport))
+        }
+    }
+
+    @Test
+    fun builder_takeEntriesInChunks() {
+        TestData.use {
+            val date = ShortDate.create(2021, 6, 1)
+            val data = TestData.weather(date, intArrayOf(0), 100, 600)
+            val expected = DayReport.create(data)
+
+            val builder = DayReport.Builder(data.size)
+            val entries = ArrayList<DayReport.Entry>()
+
+            for (info in data) {
+                builder.add(info.dateTime, info.units, info.temperature, info.humidity, info.pressure)
+
+                if (builder.pendingEntriesCount == 16) {
+                    entries.addAll(builder.takeEntries())
+                }
+            }
+            entries.addAll(builder.takeEntries())
+
+            assertEquals(expected.entries.toList(), entries)
+            assertEquals(expected.stats, builder.buildStats())
+        }
+    }
+
     private fun randomEntry(tempUnit: Int, pressUnit: Int): DayReport.Entry {
         return DayReport.Entry(
             TestData.shortTime(),
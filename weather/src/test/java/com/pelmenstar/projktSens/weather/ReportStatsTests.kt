@@ -1,6 +1,12 @@
 package com.pelmenstar.projktSens.weather
 
+import com.pelmenstar.projktSens.shared.serialization.ValueReader
+import com.pelmenstar.projktSens.shared.serialization.ValueWriter
+import com.pelmenstar.projktSens.weather.models.ReportStats
+import com.pelmenstar.projktSens.weather.models.ValueUnitsPacked
+import com.pelmenstar.projktSens.weather.models.WeatherParameters
 import org.junit.Test
+import kotlin.test.assertEquals
 
 class ReportStatsTests {
     @Test
@@ -13,4 +19,32 @@ class ReportStatsTests {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    fun serializer_allParameters_noMask() {
+        TestData.use {
+            val units = ValueUnitsPacked.CELSIUS_MM_OF_MERCURY
+            val header = TestData.reportHeader(units)
+            val buffer = ByteArray(ReportStats.SERIALIZER.getSerializedObjectSize(header))
+
+            ReportStats.SERIALIZER.writeObject(header, ValueWriter(buffer))
+
+            assertEquals(ReportStats.SERIALIZED_OBJECT_SIZE, buffer.size)
+            assertEquals(units, ValueReader(buffer).int32())
+        }
+    }
+
+    @Test
+    fun serializer_projection_readWrite() {
+        TestData.use {
+            val units = ValueUnitsPacked.CELSIUS_MM_OF_MERCURY
+            val header = TestData.reportHeader(units)
+
+            for (parameters in 1 until WeatherParameters.ALL) {
+                val projected = ReportStats(units, parameters, header.temperature, header.humidity, header.pressure)
+
+                SerializerTestUtil.readWrite(projected)
+            }
+        }
+    }
+}
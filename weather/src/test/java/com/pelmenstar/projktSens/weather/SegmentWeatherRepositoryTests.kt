@@ -0,0 +1,166 @@
+package com.pelmenstar.projktSens.weather
+
+import com.pelmenstar.projktSens.shared.time.ShortDate
+import com.pelmenstar.projktSens.shared.time.ShortDateRange
+import com.pelmenstar.projktSens.shared.time.ShortDateTime
+import com.pelmenstar.projktSens.weather.models.DayRangeReport
+import com.pelmenstar.projktSens.weather.models.DayReport
+import com.pelmenstar.projktSens.weather.models.SegmentWeatherRepository
+import com.pelmenstar.projktSens.weather.models.WeatherInfo
+import kotlinx.coroutines.runBlocking
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertNotEquals
+import kotlin.test.assertNull
+
+class SegmentWeatherRepositoryTests {
+    private val startDate = ShortDate.create(2021, 1, 1)
+
+    // 4 days of data with the third day missing
+    private fun createData(): Array<WeatherInfo> {
+        return TestData.hourlyWeather(startDate, intArrayOf(0, 1, 3))
+    }
+
+    private inline fun withDirectory(block: (File) -> Unit) {
+        val directory = Files.createTempDirectory("segments").toFile()
+
+        try {
+            block(directory)
+        } finally {
+            directory.deleteRecursively()
+        }
+    }
+
+    private fun dayData(data: Array<WeatherInfo>, dayOffset: Int): Array<WeatherInfo> {
+        val date = ShortDate.plusDays(startDate, dayOffset)
+
+        return data.filter { ShortDateTime.getDate(it.dateTime) == date }.toTypedArray()
+    }
+
+    @Test
+    fun reports_areSameAsOnValues() {
+        TestData.use {
+            withDirectory { directory ->
+                val data = createData()
+
+                // small segments, so that days span several of them
+                SegmentWeatherRepository.open(directory, 10).use { repo ->
+                    runBlocking {
+                        repo.putMany(data)
+
+                        for (day in intArrayOf(0, 1, 3)) {
+                            val date = ShortDate.plusDays(startDate, day)
+
+                            assertEquals(DayReport.create(dayData(data, day)), repo.getDayReport(date))
+                        }
+
+                        assertNull(repo.getDayReport(ShortDate.plusDays(startDate, 2)))
+                        assertNull(repo.getDayReport(ShortDate.plusDays(startDate, 10)))
+
+                        val rangeData = dayData(data, 1) + dayData(data, 3)
+                        assertEquals(
+                            DayRangeReport.create(rangeData),
+                            repo.getDayRangeReport(ShortDate.plusDays(startDate, 1), ShortDate.plusDays(startDate, 5))
+                        )
+
+                        assertEquals(
+                            ShortDateRange(startDate, ShortDate.plusDays(startDate, 3)),
+                            repo.getAvailableDateRange()
+                        )
+                        assertEquals(data.last(), repo.getLastWeather())
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    fun records_areKeptAfterReopen() {
+        TestData.use {
+            withDirectory { directory ->
+                val data = createData()
+
+                SegmentWeatherRepository.open(directory, 16).use { repo ->
+                    runBlocking {
+                        repo.putMany(data.copyOfRange(0, 30))
+                    }
+                }
+
+                // segments, created before, keep their capacity
+                SegmentWeatherRepository.open(directory, 7).use { repo ->
+                    runBlocking {
+                        for (i in 30 until data.size) {
+                            repo.put(data[i])
+                        }
+
+                        assertEquals(DayReport.create(dayData(data, 1)), repo.getDayReport(ShortDate.plusDays(startDate, 1)))
+                        assertEquals(data.last(), repo.getLastWeather())
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    fun put_requiresAscendingTime() {
+        TestData.use {
+            withDirectory { directory ->
+                val data = createData()
+
+                SegmentWeatherRepository.open(directory).use { repo ->
+                    runBlocking {
+                        repo.put(data[1])
+
+                        // the same time is the same record
+                        repo.put(data[1])
+                        assertEquals(DayReport.create(arrayOf(data[1])), repo.getDayReport(startDate))
+
+                        assertFailsWith<IllegalArgumentException> { repo.put(data[0]) }
+
+                        repo.clear()
+                        assertNull(repo.getLastWeather())
+                        assertNull(repo.getAvailableDateRange())
+
+                        repo.put(data[0])
+                        assertEquals(data[0], repo.getLastWeather())
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    fun dataVersion_changesWhenRecordsAreStored() {
+        TestData.use {
+            withDirectory { directory ->
+                val data = createData()
+
+                SegmentWeatherRepository.open(directory).use { repo ->
+                    runBlocking {
+                        repo.put(data[1])
+                        var version = repo.dataVersion
+
+                        // ignored record doesn't change the data
+                        repo.put(data[1])
+                        assertEquals(version, repo.dataVersion)
+
+                        // records before the rejected one are stored
+                        assertFailsWith<IllegalArgumentException> { repo.putMany(arrayOf(data[2], data[3], data[0])) }
+                        assertEquals(data[3], repo.getLastWeather())
+                        assertNotEquals(version, repo.dataVersion)
+
+                        version = repo.dataVersion
+                        assertFailsWith<IllegalArgumentException> { repo.putMany(arrayOf(data[0])) }
+                        assertEquals(version, repo.dataVersion)
+
+                        repo.clear()
+                        assertNotEquals(version, repo.dataVersion)
+                    }
+                }
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.pelmenstar.projktSens.weather
 
+import com.pelmenstar.projktSens.shared.serialization.ObjectSerializer
 import com.pelmenstar.projktSens.shared.serialization.Serializable
 import com.pelmenstar.projktSens.shared.serialization.ValueReader
 import com.pelmenstar.projktSens.shared.serialization.ValueWriter
@@ -8,8 +9,10 @@ import kotlin.test.assertTrue
 
 object SerializerTestUtil {
     inline fun <reified T : Any> readWrite(value: T) {
-        val serializer = Serializable.getSerializer(T::class.java)
+        readWrite(value, Serializable.getSerializer(T::class.java))
+    }
 
+    fun <T : Any> readWrite(value: T, serializer: ObjectSerializer<T>) {
         val buffer = ByteArray(serializer.getSerializedObjectSize(value))
 
         val writer = ValueWriter(buffer)
@@ -81,4 +81,40 @@ object TestData {
             paramStats(pressUnit)
         )
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns value that is not changed by quantization of compact serializers
+     */
+    fun quantizedValue(unit: Int): Float {
+        return (Math.round(value(unit) * 100.0) / 100.0).toFloat()
+    }
+
+    /**
+     * Returns weather in [ValueUnitsPacked.CELSIUS_MM_OF_MERCURY] with quantized values (see [quantizedValue]):
+     * [recordsPerDay] records [stepSeconds] apart from the start of each day, that is [dayOffsets] days after [startDate].
+     * Records are in ascending order of time if [dayOffsets] are ascending
+     */
+    fun weather(
+        @ShortDateInt startDate: Int,
+        dayOffsets: IntArray,
+        recordsPerDay: Int,
+        stepSeconds: Int
+    ): Array<WeatherInfo> {
+        return Array(dayOffsets.size * recordsPerDay) { i ->
+            WeatherInfo(
+                ValueUnitsPacked.CELSIUS_MM_OF_MERCURY,
+                ShortDateTime.create(ShortDate.plusDays(startDate, dayOffsets[i / recordsPerDay]), (i % recordsPerDay) * stepSeconds),
+                quantizedValue(ValueUnit.CELSIUS),
+                quantizedValue(ValueUnit.HUMIDITY),
+                quantizedValue(ValueUnit.MM_OF_MERCURY)
+            )
+        }
+    }
+
+    /**
+     * Returns weather of every hour of each day, that is [dayOffsets] days after [startDate] (see [weather])
+     */
+    fun hourlyWeather(@ShortDateInt startDate: Int, dayOffsets: IntArray): Array<WeatherInfo> {
+        return weather(startDate, dayOffsets, 24, TimeConstants.SECONDS_IN_HOUR)
+    }
+}
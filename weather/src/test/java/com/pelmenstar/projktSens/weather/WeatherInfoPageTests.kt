@@ -0,0 +1,66 @@
+package com.pelmenstar.projktSens.weather
+
+import com.pelmenstar.projktSens.shared.time.ShortDateTime
+import com.pelmenstar.projktSens.weather.models.DayRangeReport
+import com.pelmenstar.projktSens.weather.models.ValueUnitsPacked
+import com.pelmenstar.projktSens.weather.models.WeatherInfoPage
+import org.junit.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+class WeatherInfoPageTests {
+    private fun createPage(size: Int, hasMore: Boolean): WeatherInfoPage {
+        val builder = WeatherInfoPage.Builder(ValueUnitsPacked.CELSIUS_MM_OF_MERCURY, 1)
+        val start = ShortDateTime.toEpochSecond(ShortDateTime.create(2021, 1, 1, 0))
+
+        for (i in 0 until size) {
+            builder.add(start + i * 3600L, i.toFloat(), 50f + i % 40, 750f + i % 10)
+        }
+
+        return builder.build(hasMore)
+    }
+
+    @Test
+    fun serializer_readWrite() {
+        SerializerTestUtil.readWrite(createPage(0, false))
+        SerializerTestUtil.readWrite(createPage(1, false))
+        SerializerTestUtil.readWrite(createPage(100, true))
+    }
+
+    @Test
+    fun toArray_isSameAsGet() {
+        val page = createPage(10, false)
+        val array = page.toArray()
+
+        assertEquals(page.size(), array.size)
+        for (i in array.indices) {
+            assertEquals(page.get(i), array[i])
+            assertEquals(ShortDateTime.ofEpochSecond(page.getEpochSecond(i)), array[i].dateTime)
+        }
+
+        assertEquals(page.getEpochSecond(9), page.lastEpochSecond)
+    }
+
+    @Test
+    fun iterable_reportIsSameAsOnArray() {
+        val page = createPage(24 * 3, false)
+
+        assertEquals(DayRangeReport.create(page.toArray()), DayRangeReport.create(page.iterable()))
+    }
+
+    @Test
+    fun constructor_throwsWhenNotSorted() {
+        val units = ValueUnitsPacked.CELSIUS_MM_OF_MERCURY
+
+        assertFailsWith<Exception> {
+            WeatherInfoPage(units, longArrayOf(10, 5), FloatArray(2), FloatArray(2), FloatArray(2), false)
+        }
+    }
+
+    @Test
+    fun lastEpochSecond_throwsWhenEmpty() {
+        assertFailsWith<IllegalStateException> {
+            createPage(0, false).lastEpochSecond
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.pelmenstar.projktSens.weather
+
+import com.pelmenstar.projktSens.shared.time.ShortDateTime
+import com.pelmenstar.projktSens.weather.models.ValueUnitsPacked
+import com.pelmenstar.projktSens.weather.models.WeatherSeries
+import org.junit.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+class WeatherSeriesTests {
+    private val start = ShortDateTime.toEpochSecond(ShortDateTime.create(2021, 1, 1, 0))
+
+    private fun createSeries(recordCount: Int, recordInterval: Int, bucketSeconds: Int): WeatherSeries {
+        val builder = WeatherSeries.Builder(ValueUnitsPacked.CELSIUS_MM_OF_MERCURY, bucketSeconds, 1)
+
+        for (i in 0 until recordCount) {
+            builder.add(start + i.toLong() * recordInterval, i.toFloat(), 50f + i % 40, 750f + i % 10)
+        }
+
+        return builder.build()
+    }
+
+    @Test
+    fun serializer_readWrite() {
+        SerializerTestUtil.readWrite(createSeries(0, 60, 3600))
+        SerializerTestUtil.readWrite(createSeries(1, 60, 3600))
+        SerializerTestUtil.readWrite(createSeries(24 * 60, 60, 300))
+    }
+
+    @Test
+    fun builder_aggregatesBuckets() {
+        val series = createSeries(6, 600, 3600)
+        assertEquals(1, series.points.size)
+
+        val point = series.points[0]
+        assertEquals(start, point.startEpochSecond)
+        assertEquals(0f, point.minTemperature)
+        assertEquals(5f, point.maxTemperature)
+        assertEquals(2.5f, point.avgTemperature)
+        assertEquals(752.5f, point.avgPressure)
+    }
+
+    @Test
+    fun builder_sizeDoesNotDependOnSamplingRate() {
+        val rare = createSeries(24, 3600, 6 * 3600)
+        val frequent = createSeries(24 * 60, 60, 6 * 3600)
+
+        assertEquals(4, rare.points.size)
+        assertEquals(rare.points.size, frequent.points.size)
+        assertEquals(
+            WeatherSeries.SERIALIZER.getSerializedObjectSize(rare),
+            WeatherSeries.SERIALIZER.getSerializedObjectSize(frequent)
+        )
+    }
+
+    @Test
+    fun builder_skipsEmptyBuckets() {
+        val builder = WeatherSeries.Builder(ValueUnitsPacked.CELSIUS_MM_OF_MERCURY, 3600, 2)
+        builder.add(start, 1f, 50f, 750f)
+        builder.add(start + 5 * 3600, 2f, 50f, 750f)
+
+        val series = builder.build()
+        assertEquals(listOf(start, start + 5 * 3600), series.points.map { it.startEpochSecond })
+
+        SerializerTestUtil.readWrite(series)
+    }
+
+    @Test
+    fun builder_throwsWhenNotSorted() {
+        val builder = WeatherSeries.Builder(ValueUnitsPacked.CELSIUS_MM_OF_MERCURY, 3600, 2)
+        builder.add(start + 3600, 1f, 50f, 750f)
+
+        assertFailsWith<IllegalArgumentException> {
+            builder.add(start, 1f, 50f, 750f)
+        }
+    }
+}